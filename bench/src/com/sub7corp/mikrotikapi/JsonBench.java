@@ -0,0 +1,74 @@
+package com.sub7corp.mikrotikapi;
+
+import com.sub7corp.mikrotikapi.core.HotspotFixtures;
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.util.TableWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result serialization over a hotspot users table:
+ * mkResultToJson end to end (object, table and TSV layouts), and org.json
+ * toString on a prebuilt tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBench {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rows;
+
+    private MkClient.MkResult result;
+    private JSONArray tree;
+
+    @Setup
+    public void setup() {
+        result = HotspotFixtures.userResult(rows);
+        tree = new JSONArray();
+        for (HashMap<String, String> rec : result.getRecords()) {
+            JSONObject row = new JSONObject();
+            for (Map.Entry<String, String> e : rec.entrySet()) row.put(e.getKey(), e.getValue());
+            tree.put(row);
+        }
+    }
+
+    @Benchmark
+    public String mkResultToJson() {
+        return MikrotikApiExtension.mkResultToJson(result);
+    }
+
+    @Benchmark
+    public String mkResultToTable() {
+        return MikrotikApiExtension.mkResultToJson(result, TableWriter.TABLE);
+    }
+
+    @Benchmark
+    public String mkResultToTsv() {
+        return MikrotikApiExtension.mkResultToJson(result, TableWriter.TSV);
+    }
+
+    @Benchmark
+    public String orgJsonToString() {
+        return tree.toString();
+    }
+}
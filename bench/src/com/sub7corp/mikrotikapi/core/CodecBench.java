@@ -0,0 +1,98 @@
+package com.sub7corp.mikrotikapi.core;
+
+import com.sub7corp.mikrotikapi.util.HexUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Length prefix encode/decode: MkCodec (stream and array forms) vs the
+ * HexUtils wrappers.
+ * Lengths follow a hotspot reply mix: mostly 1-byte, some 2-byte,
+ * rare 3/4-byte (exports, file contents).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBench {
+
+    private static final int COUNT = 4096;
+
+    private int[] lengths;
+    private ByteArrayOutputStream sink;
+    private final byte[] scratch = new byte[5];
+    private byte[] encoded;
+    private ByteArrayInputStream source;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rnd = new Random(7);
+        lengths = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            int p = rnd.nextInt(1000);
+            if (p < 900) lengths[i] = rnd.nextInt(0x80);
+            else if (p < 990) lengths[i] = 0x80 + rnd.nextInt(0x4000 - 0x80);
+            else if (p < 998) lengths[i] = 0x4000 + rnd.nextInt(0x200000 - 0x4000);
+            else lengths[i] = 0x200000 + rnd.nextInt(0x1000000);
+        }
+
+        sink = new ByteArrayOutputStream(COUNT * 5);
+        for (int len : lengths) MkCodec.writeLength(sink, len);
+        encoded = sink.toByteArray();
+        source = new ByteArrayInputStream(encoded);
+    }
+
+    @Benchmark
+    public int codecEncodeStream() throws IOException {
+        sink.reset();
+        int total = 0;
+        for (int len : lengths) total += MkCodec.writeLength(sink, len);
+        return total;
+    }
+
+    @Benchmark
+    public int codecEncodeArray() {
+        int total = 0;
+        for (int len : lengths) total += MkCodec.encodeLength(len, scratch, 0);
+        return total;
+    }
+
+    @Benchmark
+    public void hexUtilsEncode(Blackhole bh) {
+        for (int len : lengths) bh.consume(HexUtils.encodeLength(len));
+    }
+
+    @Benchmark
+    public long codecDecode() throws IOException {
+        source.reset();
+        long total = 0;
+        for (int i = 0; i < COUNT; i++) total += MkCodec.readLength(source);
+        return total;
+    }
+
+    @Benchmark
+    public long hexUtilsDecode() throws IOException {
+        source.reset();
+        long total = 0;
+        for (int i = 0; i < COUNT; i++) total += HexUtils.decodeLength(source);
+        return total;
+    }
+}
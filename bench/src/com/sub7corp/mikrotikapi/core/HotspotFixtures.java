@@ -0,0 +1,104 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic hotspot tables shaped like real /ip/hotspot/active/print and
+ * /ip/hotspot/user/print replies. Seeded, so every run sees the same data.
+ */
+public final class HotspotFixtures {
+
+    private static final String[] SERVERS = {"hotspot1", "hotspot2", "hs-lobby"};
+    private static final String[] PROFILES = {"default", "1h-2M", "1d-5M", "7d-10M", "30d-20M"};
+    private static final String[] LOGIN_BY = {"http-chap", "http-pap", "cookie", "mac"};
+
+    private HotspotFixtures() {}
+
+    /** One active-session row as the word list of a "!re" sentence. */
+    public static List<String> activeWords(int i, Random rnd) {
+        List<String> w = new ArrayList<>(16);
+        w.add("!re");
+        w.add("=.id=*" + Integer.toHexString(0x100 + i).toUpperCase());
+        w.add("=server=" + SERVERS[i % SERVERS.length]);
+        w.add("=user=v" + (100000 + i));
+        w.add("=domain=");
+        w.add("=address=10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF));
+        w.add("=mac-address=" + mac(i));
+        w.add("=login-by=" + LOGIN_BY[i % LOGIN_BY.length]);
+        w.add("=uptime=" + (rnd.nextInt(23) + 1) + "h" + rnd.nextInt(60) + "m" + rnd.nextInt(60) + "s");
+        w.add("=idle-time=" + rnd.nextInt(60) + "s");
+        w.add("=keepalive-timeout=2m");
+        w.add("=bytes-in=" + (long) (rnd.nextDouble() * 4_000_000_000L));
+        w.add("=bytes-out=" + (long) (rnd.nextDouble() * 400_000_000L));
+        w.add("=packets-in=" + rnd.nextInt(5_000_000));
+        w.add("=packets-out=" + rnd.nextInt(500_000));
+        w.add("=radius=false");
+        return w;
+    }
+
+    /** One hotspot user row as the word list of a "!re" sentence. */
+    public static List<String> userWords(int i, Random rnd) {
+        List<String> w = new ArrayList<>(12);
+        w.add("!re");
+        w.add("=.id=*" + Integer.toHexString(0x100 + i).toUpperCase());
+        w.add("=server=all");
+        w.add("=name=v" + (100000 + i));
+        w.add("=password=" + Integer.toString(rnd.nextInt(1 << 30), 36));
+        w.add("=profile=" + PROFILES[i % PROFILES.length]);
+        w.add("=limit-uptime=" + (1 + i % 30) + "d");
+        w.add("=uptime=" + rnd.nextInt(48) + "h" + rnd.nextInt(60) + "m");
+        w.add("=bytes-in=" + rnd.nextInt(Integer.MAX_VALUE));
+        w.add("=bytes-out=" + rnd.nextInt(Integer.MAX_VALUE));
+        w.add("=comment=vc-" + (i / 100) + "-batch");
+        w.add("=dynamic=false");
+        w.add("=disabled=" + (i % 17 == 0 ? "true" : "false"));
+        return w;
+    }
+
+    /** Sentences in the "\n"-joined form MkConnection.readSentence returns. */
+    public static String[] activeSentences(int rows) {
+        Random rnd = new Random(42);
+        String[] out = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            StringBuilder sb = new StringBuilder(256);
+            for (String word : activeWords(i, rnd)) sb.append(word).append('\n');
+            out[i] = sb.toString();
+        }
+        return out;
+    }
+
+    /** Flat line stream for MkResponse.parseLine, ending with "!done". */
+    public static String[] activeLines(int rows) {
+        Random rnd = new Random(42);
+        List<String> lines = new ArrayList<>(rows * 16 + 1);
+        for (int i = 0; i < rows; i++) lines.addAll(activeWords(i, rnd));
+        lines.add("!done");
+        return lines.toArray(new String[0]);
+    }
+
+    /** A finished MkResult holding a users table. */
+    public static MkClient.MkResult userResult(int rows) {
+        Random rnd = new Random(42);
+        MkClient.MkResult r = new MkClient.MkResult();
+        for (int i = 0; i < rows; i++) {
+            StringBuilder sb = new StringBuilder(256);
+            for (String word : userWords(i, rnd)) sb.append(word).append('\n');
+            r.addRecord(MkClient.parseRecord(sb.toString()));
+        }
+        r.setSuccess(true);
+        return r;
+    }
+
+    /** Records only, for serializer benchmarks. */
+    public static List<HashMap<String, String>> userRecords(int rows) {
+        return userResult(rows).getRecords();
+    }
+
+    private static String mac(int i) {
+        return String.format("02:00:%02X:%02X:%02X:%02X",
+                (i >> 24) & 0xFF, (i >> 16) & 0xFF, (i >> 8) & 0xFF, i & 0xFF);
+    }
+}
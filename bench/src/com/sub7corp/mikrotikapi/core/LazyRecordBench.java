@@ -0,0 +1,75 @@
+package com.sub7corp.mikrotikapi.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Active table from word bytes to "read two fields per row":
+ * eager (String per word + parseRecord HashMap) vs lazy MkRecord.
+ * Run with -prof gc to compare allocation per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LazyRecordBench {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    // rows x words, UTF-8 bodies as they come off the socket
+    private byte[][][] words;
+    private final MkRecord.Builder builder = new MkRecord.Builder();
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        words = new byte[rows][][];
+        for (int i = 0; i < rows; i++) {
+            List<String> w = HotspotFixtures.activeWords(i, rnd);
+            words[i] = new byte[w.size()][];
+            for (int j = 0; j < w.size(); j++) words[i][j] = w.get(j).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public void eager(Blackhole bh) {
+        StringBuilder sb = new StringBuilder(256);
+        for (byte[][] row : words) {
+            sb.setLength(0);
+            for (byte[] w : row) sb.append(new String(w, StandardCharsets.UTF_8)).append('\n');
+            HashMap<String, String> r = MkClient.parseRecord(sb.toString());
+            bh.consume(r.get("user"));
+            bh.consume(r.get("bytes-in"));
+        }
+    }
+
+    @Benchmark
+    public void lazy(Blackhole bh) {
+        for (byte[][] row : words) {
+            MkRecord.Builder b = builder.reset();
+            for (byte[] w : row) b.word(w, 0, w.length);
+            MkRecord r = b.build();
+            bh.consume(r.get("user"));
+            bh.consume(r.get("bytes-in"));
+        }
+    }
+}
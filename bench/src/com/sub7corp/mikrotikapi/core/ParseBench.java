@@ -0,0 +1,53 @@
+package com.sub7corp.mikrotikapi.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record parsing over an active-sessions table:
+ * MkClient.parseRecord (per sentence) and MkResponse.parseLine (per word).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBench {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rows;
+
+    private String[] sentences;
+    private String[] lines;
+
+    @Setup
+    public void setup() {
+        sentences = HotspotFixtures.activeSentences(rows);
+        lines = HotspotFixtures.activeLines(rows);
+    }
+
+    @Benchmark
+    public void clientParseRecord(Blackhole bh) {
+        for (String s : sentences) bh.consume(MkClient.parseRecord(s));
+    }
+
+    @Benchmark
+    public MkResponse responseParseLine() {
+        MkResponse r = new MkResponse();
+        for (String line : lines) r.parseLine(line);
+        return r;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sub7corp.mikrotikapi.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a voucher "user/add": generic params (trim + prefix + encode
+ * every word) vs a prepared template (values only).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBench {
+
+    private static final int COUNT = 1024;
+
+    private final MkSentenceEncoder encoder = new MkSentenceEncoder();
+    private final MkTemplate template = MkClient.prepare(
+            "/ip/hotspot/user/add", "name", "password", "profile", "limit-uptime");
+
+    private String[] names;
+    private String[] passwords;
+
+    @Setup
+    public void setup() {
+        names = new String[COUNT];
+        passwords = new String[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            names[i] = "v" + (100000 + i);
+            passwords[i] = Integer.toString(0x10000 + i * 7919, 36);
+        }
+    }
+
+    @Benchmark
+    public int params() {
+        int total = 0;
+        for (int i = 0; i < COUNT; i++) {
+            MkClient.encode(encoder.reset(), "/ip/hotspot/user/add",
+                    "name=" + names[i], "password=" + passwords[i],
+                    "profile=1h-voucher", "limit-uptime=1h");
+            total += encoder.end().size();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int template() {
+        int total = 0;
+        for (int i = 0; i < COUNT; i++) {
+            template.encode(encoder.reset(), names[i], passwords[i], "1h-voucher", "1h");
+            total += encoder.end().size();
+        }
+        return total;
+    }
+}
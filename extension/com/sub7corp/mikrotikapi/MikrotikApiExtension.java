@@ -4,15 +4,43 @@ import com.google.appinventor.components.annotations.*;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.runtime.*;
 
+import com.sub7corp.mikrotikapi.api.ActiveApi;
+import com.sub7corp.mikrotikapi.api.HotspotApi;
+import com.sub7corp.mikrotikapi.api.LivePing;
+import com.sub7corp.mikrotikapi.api.Reconciler;
 import com.sub7corp.mikrotikapi.core.MkClient;
 import com.sub7corp.mikrotikapi.core.MkConnection;
+import com.sub7corp.mikrotikapi.core.MkDiff;
+import com.sub7corp.mikrotikapi.core.MkHeartbeat;
+import com.sub7corp.mikrotikapi.core.MkInternPool;
+import com.sub7corp.mikrotikapi.core.MkMetrics;
+import com.sub7corp.mikrotikapi.core.MkTimeoutException;
+import com.sub7corp.mikrotikapi.stats.PingStats;
+import com.sub7corp.mikrotikapi.stats.TrafficStore;
+import com.sub7corp.mikrotikapi.model.ActiveSessionView;
+import com.sub7corp.mikrotikapi.model.ApiResult;
+import com.sub7corp.mikrotikapi.model.BulkResult;
+import com.sub7corp.mikrotikapi.store.ActiveTable;
+import com.sub7corp.mikrotikapi.store.OpQueue;
+import com.sub7corp.mikrotikapi.store.SnapshotStore;
+import com.sub7corp.mikrotikapi.store.SnapshotSync;
+import com.sub7corp.mikrotikapi.store.SpillTable;
+import com.sub7corp.mikrotikapi.util.HashRing;
+import com.sub7corp.mikrotikapi.util.TableWriter;
 import com.sub7corp.mikrotikapi.util.ThreadUtils;
+import com.sub7corp.mikrotikapi.util.UiDispatcher;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * MikroTik API Extension (RouterOS 6/7)
@@ -32,6 +60,9 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
     // ====== Runtime ======
     private final Form form;
 
+    // Events reach the UI thread in per-frame batches
+    private final UiDispatcher uiDispatcher;
+
     private MkConnection connection;
     private MkClient client;
 
@@ -47,12 +78,68 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
     private int soTimeoutMs = 8000;
     private int connectTimeoutMs = 8000;
 
+    // Per-command deadlines (0 = socket timeout only); user edits fail fast
+    private int commandTimeoutMs = 0;
+    private int interactiveTimeoutMs = 3000;
+
+    // Record layout in print results: json (objects), table or tsv
+    private String resultFormat = TableWriter.JSON;
+
+    // Columns whose values are shared across rows (empty = off); new pool per connection
+    private String internColumns = String.join(",", MkInternPool.DEFAULT_COLUMNS);
+
+    // Last PrintPaged result; rows past the heap budget live in a temp file
+    private int printMemoryKb = 2048;
+    private volatile SpillTable pagedResult;
+    // spill files older than this component are left from earlier runs;
+    // deleted on the first PrintPaged
+    private final long createdAt = System.currentTimeMillis();
+    private volatile boolean spillSwept;
+
     // MkConnection has allowInsecureSSL (trust all)
     private boolean allowInsecureSSL = true;
 
+    // Idle heartbeat (0 = off) and reconnect on a missed beat
+    private int heartbeatIntervalMs = 15000;
+    private int heartbeatTimeoutMs = 3000;
+    private boolean autoReconnect = true;
+    private MkHeartbeat heartbeat;
+
+    // Snapshot diff for HotspotActiveDelta (keeps previous active table)
+    private final MkDiff activeDiff = new MkDiff();
+
+    // Running PingLive, for PingStop
+    private volatile LivePing livePing;
+
+    // Indexed copy of the last active print, for ActiveQuery
+    private final ActiveTable activeTable = new ActiveTable();
+
+    // Per-user traffic history fed by TrafficSample
+    private final TrafficStore traffic = new TrafficStore();
+
+    // On-device users snapshot (opened on first use, per router)
+    private SnapshotStore usersStore;
+    private String usersStoreHost;
+    // password is never written to the device, so it is not watched either
+    private static final String[] USER_WATCH = {
+            "name", "profile", "disabled", "comment", "limit-uptime", "limit-bytes-total"};
+
+    // Offline write-ahead queue for user mutations (per router)
+    private boolean offlineQueue = false;
+    private OpQueue opQueue;
+    private String opQueueHost;
+
+    // Last ring built by ShardOwner (rebuilt only when the router list changes)
+    private HashRing shardRing;
+    private String shardRingKey;
+
+    // Core metrics, kept across reconnects
+    private final MkMetrics metrics = new MkMetrics();
+
     public MikrotikApiExtension(ComponentContainer container) {
         super(container.$form());
         this.form = container.$form();
+        this.uiDispatcher = new UiDispatcher(form, 16, 64);
     }
 
     // =========================================================
@@ -85,6 +172,21 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         EventDispatcher.dispatchEvent(this, "OnError", code, message, details);
     }
 
+    @SimpleEvent(description = "Delta event: rows that appeared since the previous snapshot (JSON array of full rows).")
+    public void OnRowsAdded(String action, String json) {
+        EventDispatcher.dispatchEvent(this, "OnRowsAdded", action, json);
+    }
+
+    @SimpleEvent(description = "Delta event: rows that disappeared since the previous snapshot (JSON array of .id values).")
+    public void OnRowsRemoved(String action, String json) {
+        EventDispatcher.dispatchEvent(this, "OnRowsRemoved", action, json);
+    }
+
+    @SimpleEvent(description = "Delta event: rows that changed since the previous snapshot (JSON array of .id + changed fields only).")
+    public void OnRowsChanged(String action, String json) {
+        EventDispatcher.dispatchEvent(this, "OnRowsChanged", action, json);
+    }
+
     // =========================================================
     // PROPERTIES (get/set blocks)
     // =========================================================
@@ -137,12 +239,79 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
     @SimpleProperty(description = "Connect timeout (ms).")
     public void ConnectTimeoutMs(int value) { connectTimeoutMs = Math.max(1000, value); }
 
+    @SimpleProperty(description = "Deadline (ms) for Execute and list blocks. On expiry the command is cancelled on the router and OnError gets code TIMEOUT; the connection stays open. 0 = socket timeout only.")
+    public int CommandTimeoutMs() { return commandTimeoutMs; }
+
+    @SimpleProperty(description = "Deadline (ms) for Execute and list blocks. On expiry the command is cancelled on the router and OnError gets code TIMEOUT; the connection stays open. 0 = socket timeout only.")
+    public void CommandTimeoutMs(int value) { commandTimeoutMs = Math.max(0, value); }
+
+    @SimpleProperty(description = "Deadline (ms) for hotspot user create/remove/enable/disable. Expiry reports code TIMEOUT. 0 = socket timeout only.")
+    public int InteractiveTimeoutMs() { return interactiveTimeoutMs; }
+
+    @SimpleProperty(description = "Deadline (ms) for hotspot user create/remove/enable/disable. Expiry reports code TIMEOUT. 0 = socket timeout only.")
+    public void InteractiveTimeoutMs(int value) { interactiveTimeoutMs = Math.max(0, value); }
+
+    @SimpleProperty(description = "When not connected, queue hotspot user create/remove/enable/disable on the device instead of failing; the queue is replayed after the next Connect.")
+    public boolean OfflineQueue() { return offlineQueue; }
+
+    @SimpleProperty(description = "When not connected, queue hotspot user create/remove/enable/disable on the device instead of failing; the queue is replayed after the next Connect.")
+    public void OfflineQueue(boolean value) { offlineQueue = value; }
+
+    @SimpleProperty(description = "Layout of the records in print results: 'json' (one object per row, default), 'table' (columns once, rows as value lists) or 'tsv' (tab separated text in the 'tsv' field). table and tsv are much smaller for large prints.")
+    public String ResultFormat() { return resultFormat; }
+
+    @SimpleProperty(description = "Layout of the records in print results: 'json' (one object per row, default), 'table' (columns once, rows as value lists) or 'tsv' (tab separated text in the 'tsv' field). table and tsv are much smaller for large prints.")
+    public void ResultFormat(String value) {
+        String f = TableWriter.format(value);
+        if (f == null) {
+            ui(() -> OnError("BAD_ARGUMENT", "Unknown result format: " + value, "Use json, table or tsv."));
+            return;
+        }
+        resultFormat = f;
+    }
+
+    @SimpleProperty(description = "Heap budget (KB) for PrintPaged rows. Rows beyond it are written to a temporary file on the device and read back page by page. 0 = every row goes to the file.")
+    public int PrintMemoryKb() { return printMemoryKb; }
+
+    @SimpleProperty(description = "Heap budget (KB) for PrintPaged rows. Rows beyond it are written to a temporary file on the device and read back page by page. 0 = every row goes to the file.")
+    public void PrintMemoryKb(int value) { printMemoryKb = Math.max(0, value); }
+
+    @SimpleProperty(description = "Comma separated columns whose values repeat across rows (profile, server, disabled...). Each distinct value is kept once per connection instead of once per row; each column holds at most 1024 values, so unique fields are passed through. Empty = off. Applies from the next Connect.")
+    public String InternColumns() { return internColumns; }
+
+    @SimpleProperty(description = "Comma separated columns whose values repeat across rows (profile, server, disabled...). Each distinct value is kept once per connection instead of once per row; each column holds at most 1024 values, so unique fields are passed through. Empty = off. Applies from the next Connect.")
+    public void InternColumns(String value) { internColumns = value != null ? value.trim() : ""; }
+
+    @SimpleProperty(description = "Minimum time (ms) between batches of events delivered to the UI. Updates that supersede each other (list refreshes, ping replies per target) are merged within a batch. 0 = deliver every event at once.")
+    public int UiFrameMs() { return uiDispatcher.getFrameMs(); }
+
+    @SimpleProperty(description = "Minimum time (ms) between batches of events delivered to the UI. Updates that supersede each other (list refreshes, ping replies per target) are merged within a batch. 0 = deliver every event at once.")
+    public void UiFrameMs(int value) { uiDispatcher.setFrameMs(value); }
+
     @SimpleProperty(description = "Allow insecure SSL (trust all / self-signed).")
     public boolean AllowInsecureSSL() { return allowInsecureSSL; }
 
     @SimpleProperty(description = "Allow insecure SSL (trust all / self-signed).")
     public void AllowInsecureSSL(boolean value) { allowInsecureSSL = value; }
 
+    @SimpleProperty(description = "Idle heartbeat interval (ms). A cheap command is sent when the link was idle this long; 0 disables.")
+    public int HeartbeatIntervalMs() { return heartbeatIntervalMs; }
+
+    @SimpleProperty(description = "Idle heartbeat interval (ms). A cheap command is sent when the link was idle this long; 0 disables.")
+    public void HeartbeatIntervalMs(int value) { heartbeatIntervalMs = value <= 0 ? 0 : Math.max(1000, value); }
+
+    @SimpleProperty(description = "How long to wait for a heartbeat reply (ms) before the connection is treated as dead.")
+    public int HeartbeatTimeoutMs() { return heartbeatTimeoutMs; }
+
+    @SimpleProperty(description = "How long to wait for a heartbeat reply (ms) before the connection is treated as dead.")
+    public void HeartbeatTimeoutMs(int value) { heartbeatTimeoutMs = Math.max(500, value); }
+
+    @SimpleProperty(description = "Reconnect automatically when the heartbeat detects a dead connection.")
+    public boolean AutoReconnect() { return autoReconnect; }
+
+    @SimpleProperty(description = "Reconnect automatically when the heartbeat detects a dead connection.")
+    public void AutoReconnect(boolean value) { autoReconnect = value; }
+
     // =========================================================
     // INTERNAL HELPERS
     // =========================================================
@@ -152,7 +321,12 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
     }
 
     private void ui(Runnable r) {
-        ThreadUtils.runOnUi(form, r);
+        uiDispatcher.post(r);
+    }
+
+    /** Like ui(), but a newer event with the same key replaces this one if it was not delivered yet. */
+    private void uiLatest(String key, Runnable r) {
+        uiDispatcher.postLatest(key, r);
     }
 
     private boolean isReady() {
@@ -166,42 +340,93 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         });
     }
 
-    private String esc(String s) {
+    /** TIMEOUT for a missed command deadline, otherwise the block's own code. */
+    private static String codeFor(Exception e, String fallback) {
+        return e instanceof MkTimeoutException ? "TIMEOUT" : fallback;
+    }
+
+    private static String esc(String s) {
         if (s == null) return "";
         return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
     }
 
-    private String mkResultToJson(MkClient.MkResult r) {
+    static String mkResultToJson(MkClient.MkResult r) {
+        return mkResultToJson(r, TableWriter.JSON);
+    }
+
+    /**
+     * Result envelope with the records in the given TableWriter format,
+     * written in one pass straight into the output text.
+     */
+    static String mkResultToJson(MkClient.MkResult r, String format) {
+        if (r == null) return "{\"ok\":false,\"message\":\"null result\"}";
         try {
-            JSONObject o = new JSONObject();
-            if (r == null) {
-                o.put("ok", false);
-                o.put("message", "null result");
-                return o.toString();
-            }
-            o.put("ok", r.isSuccess() && !r.isError());
-            o.put("success", r.isSuccess());
-            o.put("error", r.isError());
-            o.put("message", r.getMessage() != null ? r.getMessage() : "");
-
-            JSONArray arr = new JSONArray();
-            List<HashMap<String, String>> records = r.getRecords();
-            if (records != null) {
-                for (HashMap<String, String> rec : records) {
-                    JSONObject row = new JSONObject();
-                    if (rec != null) {
-                        for (String k : rec.keySet()) {
-                            row.put(k, rec.get(k));
-                        }
+            StringBuilder sb = new StringBuilder(128 + r.getRecords().size() * 96);
+            sb.append("{\"ok\":").append(r.isSuccess() && !r.isError())
+                    .append(",\"success\":").append(r.isSuccess())
+                    .append(",\"error\":").append(r.isError())
+                    .append(",\"message\":");
+            TableWriter.string(sb, r.getMessage());
+            if (!TableWriter.JSON.equals(format)) sb.append(",\"format\":\"").append(format).append('"');
+            sb.append(',');
+            TableWriter.writeMembers(sb, r.getRecords(), format);
+            return sb.append('}').toString();
+        } catch (Exception e) {
+            return "{\"ok\":false,\"message\":\"serialize_failed\",\"details\":\"" + esc(e.toString()) + "\"}";
+        }
+    }
+
+    /** Print result in the ResultFormat property's format. */
+    private String resultJson(MkClient.MkResult r) {
+        return mkResultToJson(r, resultFormat);
+    }
+
+    private static JSONArray recordsToJson(List<HashMap<String, String>> records) {
+        JSONArray arr = new JSONArray();
+        if (records != null) {
+            for (HashMap<String, String> rec : records) {
+                JSONObject row = new JSONObject();
+                if (rec != null) {
+                    for (String k : rec.keySet()) {
+                        row.put(k, rec.get(k));
                     }
-                    arr.put(row);
                 }
+                arr.put(row);
             }
-            o.put("records", arr);
-            return o.toString();
-        } catch (Exception e) {
-            return "{\"ok\":false,\"message\":\"serialize_failed\",\"details\":\"" + esc(e.toString()) + "\"}";
         }
+        return arr;
+    }
+
+    private void emitDelta(String action, MkDiff.Delta d) {
+        emitDelta(action, action, d.getAdded(), d.getRemoved(), d.getChanged(), "");
+    }
+
+    /**
+     * Row events under rowsAction, then the summary in OnResult(action);
+     * extra is appended to the summary object (",\"key\":value...").
+     */
+    private void emitDelta(String action, String rowsAction,
+                           List<HashMap<String, String>> addedRows, List<String> removedIds,
+                           List<HashMap<String, String>> changedRows, String extra) {
+        final String added = addedRows.isEmpty() ? null : recordsToJson(addedRows).toString();
+        final String changed = changedRows.isEmpty() ? null : recordsToJson(changedRows).toString();
+        String removed = null;
+        if (!removedIds.isEmpty()) {
+            JSONArray ids = new JSONArray();
+            for (String id : removedIds) ids.put(id);
+            removed = ids.toString();
+        }
+        final String removedJson = removed;
+        final String summary = "{\"ok\":true,\"added\":" + addedRows.size()
+                + ",\"removed\":" + removedIds.size()
+                + ",\"changed\":" + changedRows.size() + extra + "}";
+
+        ui(() -> {
+            if (added != null) OnRowsAdded(rowsAction, added);
+            if (removedJson != null) OnRowsRemoved(rowsAction, removedJson);
+            if (changed != null) OnRowsChanged(rowsAction, changed);
+            OnResult(action, true, summary);
+        });
     }
 
     private String firstIdFromResult(MkClient.MkResult r) {
@@ -222,39 +447,76 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
 
     @SimpleFunction(description = "Connect using current properties (Host/User/Pass/UseSsl). Non-blocking.")
     public void Connect() {
-        final String action = "CONNECT";
-        ThreadUtils.runAsync(() -> {
+        ThreadUtils.runAsync(() -> connectNow("CONNECT"));
+    }
+
+    /** Blocking connect + login; runs on a worker thread. */
+    private void connectNow(final String action) {
+        try {
+            // Clean previous
+            stopHeartbeat();
             try {
-                // Clean previous
-                try {
-                    if (connection != null && connection.isConnected()) connection.disconnect();
-                } catch (Exception ignored) {}
+                if (connection != null) {
+                    metrics.reconnect();
+                    if (connection.isConnected()) connection.disconnect();
+                }
+            } catch (Exception ignored) {}
 
-                connection = new MkConnection();
-                connection.setSoTimeoutMs(soTimeoutMs);
-                connection.setConnectTimeoutMs(connectTimeoutMs);
-                connection.setAllowInsecureSSL(allowInsecureSSL);
+            connection = new MkConnection();
+            connection.setMetrics(metrics);
+            connection.setSoTimeoutMs(soTimeoutMs);
+            connection.setConnectTimeoutMs(connectTimeoutMs);
+            connection.setAllowInsecureSSL(allowInsecureSSL);
+            List<String> interned = nameList(internColumns);
+            if (!interned.isEmpty()) {
+                connection.setInternPool(new MkInternPool(interned,
+                        MkInternPool.DEFAULT_MAX_PER_COLUMN, MkInternPool.DEFAULT_MAX_VALUE_LENGTH));
+            }
 
-                int p = currentPort();
-                connection.connect(host, p, useSsl);
+            int p = currentPort();
+            connection.connect(host, p, useSsl);
 
-                boolean ok = connection.login(username, password);
-                if (!ok) {
-                    fail(action, "LOGIN_FAILED", "Login failed (credentials or API permissions).", "");
-                    return;
-                }
+            boolean ok = connection.login(username, password);
+            if (!ok) {
+                fail(action, "LOGIN_FAILED", "Login failed (credentials or API permissions).", "");
+                return;
+            }
 
-                client = new MkClient(connection);
+            client = new MkClient(connection);
+            startHeartbeat();
 
-                ui(() -> {
-                    OnConnected(host, p, useSsl);
-                    OnResult(action, true, "{\"ok\":true,\"connected\":true,\"host\":\"" + esc(host) + "\",\"port\":" + p + ",\"ssl\":" + (useSsl ? "true" : "false") + "}");
-                });
+            ui(() -> {
+                OnConnected(host, p, useSsl);
+                OnResult(action, true, "{\"ok\":true,\"connected\":true,\"host\":\"" + esc(host) + "\",\"port\":" + p + ",\"ssl\":" + (useSsl ? "true" : "false") + "}");
+            });
 
-            } catch (Exception e) {
-                fail(action, "CONNECT_FAILED", "Failed to connect/login.", e.toString());
+            if (offlineQueue && opQueue().size() > 0) replayQueue();
+
+        } catch (Exception e) {
+            fail(action, codeFor(e, "CONNECT_FAILED"), "Failed to connect/login.", e.toString());
+        }
+    }
+
+    private synchronized void startHeartbeat() {
+        stopHeartbeat();
+        if (heartbeatIntervalMs <= 0 || client == null) return;
+
+        final MkConnection conn = connection;
+        heartbeat = new MkHeartbeat(client, conn, heartbeatIntervalMs, heartbeatTimeoutMs, cause -> {
+            // only react if this is still the live connection
+            if (conn != connection) return;
+            fail("HEARTBEAT", "HEARTBEAT_LOST", "Router stopped answering; connection closed.", cause.toString());
+            ui(this::OnDisconnected);
+            if (autoReconnect) {
+                ThreadUtils.runAsync(() -> connectNow("RECONNECT"));
             }
         });
+        heartbeat.start();
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) heartbeat.stop();
+        heartbeat = null;
     }
 
     @SimpleFunction(description = "Disconnect. Non-blocking.")
@@ -262,6 +524,7 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         final String action = "DISCONNECT";
         ThreadUtils.runAsync(() -> {
             try {
+                stopHeartbeat();
                 if (connection != null) {
                     try { connection.disconnect(); } catch (Exception ignored) {}
                 }
@@ -273,7 +536,7 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                     OnResult(action, true, "{\"ok\":true,\"disconnected\":true}");
                 });
             } catch (Exception e) {
-                fail(action, "DISCONNECT_FAILED", "Failed to disconnect.", e.toString());
+                fail(action, codeFor(e, "DISCONNECT_FAILED"), "Failed to disconnect.", e.toString());
             }
         });
     }
@@ -304,11 +567,33 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                 return;
             }
             try {
-                MkClient.MkResult r = client.execute(p, params);
-                final String json = mkResultToJson(r);
+                MkClient.MkResult r = client.execute(commandTimeoutMs, p, params);
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "EXECUTE_FAILED", "Failed executing command.", e.toString());
+                fail(action, codeFor(e, "EXECUTE_FAILED"), "Failed executing command.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Execute raw API command with its own deadline (ms). On expiry the command is cancelled on the router, OnError gets code TIMEOUT and the connection stays usable. Result in OnResult('EXECUTE',...). Non-blocking.")
+    public void ExecuteWithTimeout(String path, String paramsCsv, int timeoutMs) {
+        final String action = "EXECUTE";
+        final String p = path != null ? path.trim() : "";
+        final String[] params = splitCsv(paramsCsv);
+        final long deadline = Math.max(0, timeoutMs);
+
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                MkClient.MkResult r = client.execute(deadline, p, params);
+                final String json = resultJson(r);
+                ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "EXECUTE_FAILED"), "Failed executing command.", e.toString());
             }
         });
     }
@@ -326,24 +611,80 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         final String lu = limitUptime != null ? limitUptime.trim() : "";
 
         ThreadUtils.runAsync(() -> {
+            if (queueIfOffline(action, OpQueue.CREATE, u, pw, pr.isEmpty() ? null : pr, lu.isEmpty() ? null : lu)) return;
             if (!isReady()) {
                 fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
                 return;
             }
             try {
                 // /ip/hotspot/user/add =name=U =password=PW =profile=PR =limit-uptime=1h
-                MkClient.MkResult r = client.execute(
-                        "/ip/hotspot/user/add",
-                        "name=" + u,
-                        "password=" + pw,
-                        (pr.isEmpty() ? null : "profile=" + pr),
-                        (lu.isEmpty() ? null : "limit-uptime=" + lu)
+                MkClient.MkResult r = client.execute(interactiveTimeoutMs, HotspotApi.USER_ADD,
+                        u,
+                        pw,
+                        (pr.isEmpty() ? null : pr),
+                        (lu.isEmpty() ? null : lu)
                 );
 
-                final String json = mkResultToJson(r);
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_CREATE_FAILED", "Failed creating hotspot user.", e.toString());
+                fail(action, codeFor(e, "HOTSPOT_CREATE_FAILED"), "Failed creating hotspot user.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Create many Hotspot users at once (e.g. vouchers). One user per line: name,password[,profile[,limitUptime]]; columns are positional, so an empty one is kept (v1,,1h-2M has no password). Commands are pipelined. Non-blocking. Result in OnResult('HOTSPOT_CREATE_BULK',...) with created, failed and errors.")
+    public void HotspotCreateUsers(String usersLines) {
+        final String action = "HOTSPOT_CREATE_BULK";
+        final List<String[]> rows = new ArrayList<>();
+        if (usersLines != null) {
+            for (String line : usersLines.split("\n")) {
+                // positional: "v1,,1h-2M" is an empty password, not profile 1h-2M
+                String[] f = line.split(",", -1);
+                String name = f[0].trim();
+                if (name.isEmpty()) continue;
+                rows.add(new String[]{
+                        name,
+                        f.length > 1 ? f[1] : "",
+                        f.length > 2 && !f[2].trim().isEmpty() ? f[2].trim() : null,
+                        f.length > 3 && !f[3].trim().isEmpty() ? f[3].trim() : null
+                });
+            }
+        }
+
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                MkClient.MkResult[] results = client.executeBatch(HotspotApi.USER_ADD, rows, HotspotApi.BATCH_WINDOW);
+
+                int created = 0;
+                int failed = 0;
+                JSONArray errors = new JSONArray();
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i].isSuccess()) {
+                        created++;
+                        continue;
+                    }
+                    failed++;
+                    JSONObject err = new JSONObject();
+                    err.put("name", rows.get(i)[0]);
+                    err.put("message", results[i].getMessage());
+                    errors.put(err);
+                }
+
+                final boolean ok = failed == 0;
+                JSONObject o = new JSONObject();
+                o.put("ok", ok);
+                o.put("created", created);
+                o.put("failed", failed);
+                o.put("errors", errors);
+                final String json = o.toString();
+                ui(() -> OnResult(action, ok, json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "HOTSPOT_CREATE_FAILED"), "Failed creating hotspot users.", e.toString());
             }
         });
     }
@@ -354,24 +695,25 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         final String u = name != null ? name.trim() : "";
 
         ThreadUtils.runAsync(() -> {
+            if (queueIfOffline(action, OpQueue.REMOVE, u)) return;
             if (!isReady()) {
                 fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
                 return;
             }
             try {
                 // find id
-                MkClient.MkResult pr = client.execute("/ip/hotspot/user/print", "?name=" + u);
+                MkClient.MkResult pr = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/print", "?name=" + u);
                 String id = firstIdFromResult(pr);
                 if (id == null || id.isEmpty()) {
                     ui(() -> OnResult(action, false, "{\"ok\":false,\"message\":\"user_not_found\",\"user\":\"" + esc(u) + "\"}"));
                     return;
                 }
 
-                MkClient.MkResult r = client.execute("/ip/hotspot/user/remove", ".id=" + id);
-                final String json = mkResultToJson(r);
+                MkClient.MkResult r = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/remove", ".id=" + id);
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_REMOVE_FAILED", "Failed removing hotspot user.", e.toString());
+                fail(action, codeFor(e, "HOTSPOT_REMOVE_FAILED"), "Failed removing hotspot user.", e.toString());
             }
         });
     }
@@ -382,23 +724,24 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         final String u = name != null ? name.trim() : "";
 
         ThreadUtils.runAsync(() -> {
+            if (queueIfOffline(action, OpQueue.DISABLE, u)) return;
             if (!isReady()) {
                 fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
                 return;
             }
             try {
-                MkClient.MkResult pr = client.execute("/ip/hotspot/user/print", "?name=" + u);
+                MkClient.MkResult pr = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/print", "?name=" + u);
                 String id = firstIdFromResult(pr);
                 if (id == null || id.isEmpty()) {
                     ui(() -> OnResult(action, false, "{\"ok\":false,\"message\":\"user_not_found\",\"user\":\"" + esc(u) + "\"}"));
                     return;
                 }
 
-                MkClient.MkResult r = client.execute("/ip/hotspot/user/disable", ".id=" + id);
-                final String json = mkResultToJson(r);
+                MkClient.MkResult r = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/disable", ".id=" + id);
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_DISABLE_FAILED", "Failed disabling hotspot user.", e.toString());
+                fail(action, codeFor(e, "HOTSPOT_DISABLE_FAILED"), "Failed disabling hotspot user.", e.toString());
             }
         });
     }
@@ -409,27 +752,102 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
         final String u = name != null ? name.trim() : "";
 
         ThreadUtils.runAsync(() -> {
+            if (queueIfOffline(action, OpQueue.ENABLE, u)) return;
             if (!isReady()) {
                 fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
                 return;
             }
             try {
-                MkClient.MkResult pr = client.execute("/ip/hotspot/user/print", "?name=" + u);
+                MkClient.MkResult pr = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/print", "?name=" + u);
                 String id = firstIdFromResult(pr);
                 if (id == null || id.isEmpty()) {
                     ui(() -> OnResult(action, false, "{\"ok\":false,\"message\":\"user_not_found\",\"user\":\"" + esc(u) + "\"}"));
                     return;
                 }
 
-                MkClient.MkResult r = client.execute("/ip/hotspot/user/enable", ".id=" + id);
-                final String json = mkResultToJson(r);
+                MkClient.MkResult r = client.execute(interactiveTimeoutMs, "/ip/hotspot/user/enable", ".id=" + id);
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_ENABLE_FAILED", "Failed enabling hotspot user.", e.toString());
+                fail(action, codeFor(e, "HOTSPOT_ENABLE_FAILED"), "Failed enabling hotspot user.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Kick the active sessions of many users at once (names separated by commas or new lines). One lookup plus a few id-list commands. Non-blocking. Result in OnResult('HOTSPOT_KICK_MANY',...) with done, notFound, failed.")
+    public void HotspotKickUsers(String names) {
+        final List<String> list = nameList(names);
+        runBulk("HOTSPOT_KICK_MANY", () -> new ActiveApi(client).kickUsers(list));
+    }
+
+    @SimpleFunction(description = "Disable many Hotspot users at once (names separated by commas or new lines). Non-blocking. Result in OnResult('HOTSPOT_DISABLE_MANY',...).")
+    public void HotspotDisableUsers(String names) {
+        final List<String> list = nameList(names);
+        runBulk("HOTSPOT_DISABLE_MANY", () -> bulkData(new HotspotApi(client).disableUsers(list)));
+    }
+
+    @SimpleFunction(description = "Enable many Hotspot users at once (names separated by commas or new lines). Non-blocking. Result in OnResult('HOTSPOT_ENABLE_MANY',...).")
+    public void HotspotEnableUsers(String names) {
+        final List<String> list = nameList(names);
+        runBulk("HOTSPOT_ENABLE_MANY", () -> bulkData(new HotspotApi(client).enableUsers(list)));
+    }
+
+    @SimpleFunction(description = "Remove many Hotspot users at once (names separated by commas or new lines). Non-blocking. Result in OnResult('HOTSPOT_REMOVE_MANY',...).")
+    public void HotspotRemoveUsers(String names) {
+        final List<String> list = nameList(names);
+        runBulk("HOTSPOT_REMOVE_MANY", () -> bulkData(new HotspotApi(client).removeUsers(list)));
+    }
+
+    private interface BulkCall {
+        BulkResult run() throws Exception;
+    }
+
+    private void runBulk(String action, BulkCall call) {
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                BulkResult r = call.run();
+                JSONArray failed = new JSONArray();
+                for (Map.Entry<String, String> e : r.getFailed().entrySet()) {
+                    JSONObject f = new JSONObject();
+                    f.put("name", e.getKey());
+                    f.put("message", e.getValue());
+                    failed.put(f);
+                }
+                final boolean ok = r.getFailed().isEmpty();
+                JSONObject o = new JSONObject();
+                o.put("ok", ok);
+                o.put("done", r.getDone());
+                o.put("notFound", namesToJson(r.getNotFound()));
+                o.put("failed", failed);
+                final String json = o.toString();
+                ui(() -> OnResult(action, ok, json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "BULK_FAILED"), "Bulk operation failed.", e.toString());
             }
         });
     }
 
+    private static BulkResult bulkData(ApiResult r) throws IOException {
+        if (!r.isSuccess()) throw new IOException(r.getError().getMessage());
+        return (BulkResult) r.getData();
+    }
+
+    /** Names separated by commas and/or new lines, trimmed, duplicates dropped. */
+    private static List<String> nameList(String names) {
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        if (names != null) {
+            for (String n : names.split("[,\\n]")) {
+                n = n.trim();
+                if (!n.isEmpty()) out.add(n);
+            }
+        }
+        return new ArrayList<>(out);
+    }
+
     @SimpleFunction(description = "List active hotspot sessions. Non-blocking. Result in OnResult('HOTSPOT_ACTIVE',...).")
     public void HotspotActive() {
         final String action = "HOTSPOT_ACTIVE";
@@ -439,15 +857,180 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                 return;
             }
             try {
-                MkClient.MkResult r = client.execute("/ip/hotspot/active/print");
-                final String json = mkResultToJson(r);
-                ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/ip/hotspot/active/print");
+                if (r != null && r.isSuccess()) activeTable.load(r.getRecords());
+                final String json = resultJson(r);
+                uiLatest(action, () -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_ACTIVE_FAILED", "Failed listing active hotspot sessions.", e.toString());
+                fail(action, codeFor(e, "HOTSPOT_ACTIVE_FAILED"), "Failed listing active hotspot sessions.", e.toString());
             }
         });
     }
 
+    @SimpleFunction(description = "Refresh active hotspot sessions and emit only the difference against the previous refresh (OnRowsAdded/OnRowsRemoved/OnRowsChanged). Summary in OnResult('HOTSPOT_ACTIVE_DELTA',...). Non-blocking.")
+    public void HotspotActiveDelta() {
+        final String action = "HOTSPOT_ACTIVE_DELTA";
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/ip/hotspot/active/print");
+                if (r == null || r.isError()) {
+                    final String json = resultJson(r);
+                    ui(() -> OnResult(action, false, json));
+                    return;
+                }
+                activeTable.load(r.getRecords());
+                emitDelta(action, activeDiff.update(r));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "HOTSPOT_ACTIVE_DELTA_FAILED"), "Failed refreshing active hotspot sessions.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Forget the previous active snapshot; next HotspotActiveDelta reports every session as added.")
+    public void HotspotActiveDeltaReset() {
+        activeDiff.reset();
+    }
+
+    @SimpleFunction(description = "Query active sessions through in-memory indexes, e.g. 'user=alice', 'mac-address=AA:BB:CC:DD:EE:FF', 'bytes-total>2G & uptime>=1h', 'top 10 by bytes-total'. Uses the last HotspotActive/HotspotActiveDelta print, or a fresh one when refresh is true. Non-blocking. Result in OnResult('ACTIVE_QUERY',...).")
+    public void ActiveQuery(String query, boolean refresh) {
+        final String action = "ACTIVE_QUERY";
+        ThreadUtils.runAsync(() -> {
+            try {
+                List<ActiveSessionView> rows = queryActive(query, refresh);
+                JSONArray arr = new JSONArray();
+                for (ActiveSessionView v : rows) {
+                    JSONObject o = new JSONObject();
+                    for (Map.Entry<String, String> e : v.getRecord().entrySet()) o.put(e.getKey(), e.getValue());
+                    arr.put(o);
+                }
+                JSONObject o = new JSONObject();
+                o.put("ok", true);
+                o.put("count", rows.size());
+                o.put("ageMs", System.currentTimeMillis() - activeTable.getLoadedAt());
+                o.put("records", arr);
+                final String json = o.toString();
+                ui(() -> OnResult(action, true, json));
+            } catch (IllegalArgumentException e) {
+                fail(action, "BAD_QUERY", e.getMessage(), query);
+            } catch (Exception e) {
+                fail(action, codeFor(e, "ACTIVE_QUERY_FAILED"), "Failed querying active sessions.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Kick every active session matching an ActiveQuery expression (e.g. 'bytes-total>2G'), in a few id-list commands. An empty query (or a bare 'top N') is rejected with BAD_QUERY. refresh re-reads the active list first. Non-blocking. Result in OnResult('ACTIVE_KICK_WHERE',...) with kicked and failed.")
+    public void ActiveKickWhere(String query, boolean refresh) {
+        final String action = "ACTIVE_KICK_WHERE";
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                // an empty query matches every session: never kick all by accident
+                if (!ActiveTable.hasClauses(query)) {
+                    fail(action, "BAD_QUERY", "Query needs at least one clause.", query);
+                    return;
+                }
+                List<String> ids = new ArrayList<>();
+                for (ActiveSessionView v : queryActive(query, refresh)) ids.add(v.getId());
+                Map<String, String> failed = client.executeForIds("/ip/hotspot/active/remove", ids);
+
+                JSONArray arr = new JSONArray();
+                for (Map.Entry<String, String> e : failed.entrySet()) {
+                    JSONObject f = new JSONObject();
+                    f.put(".id", e.getKey());
+                    f.put("message", e.getValue());
+                    arr.put(f);
+                }
+                final boolean ok = failed.isEmpty();
+                JSONObject o = new JSONObject();
+                o.put("ok", ok);
+                o.put("kicked", ids.size() - failed.size());
+                o.put("failed", arr);
+                final String json = o.toString();
+                ui(() -> OnResult(action, ok, json));
+            } catch (IllegalArgumentException e) {
+                fail(action, "BAD_QUERY", e.getMessage(), query);
+            } catch (Exception e) {
+                fail(action, codeFor(e, "ACTIVE_KICK_FAILED"), "Failed kicking active sessions.", e.toString());
+            }
+        });
+    }
+
+    /** Queries the active table, re-reading it first if asked or never loaded. */
+    private List<ActiveSessionView> queryActive(String query, boolean refresh) throws IOException {
+        if (refresh || activeTable.getLoadedAt() == 0) {
+            if (!isReady()) throw new IOException("Not connected. Call Connect first.");
+            MkClient.MkResult r = client.execute(commandTimeoutMs, "/ip/hotspot/active/print");
+            if (r.isError()) throw new IOException(r.getMessage());
+            activeTable.load(r.getRecords());
+        }
+        return activeTable.query(query);
+    }
+
+    // =========================================================
+    // TRAFFIC (per-user throughput)
+    // =========================================================
+
+    @SimpleFunction(description = "Sample active hotspot counters into the per-session traffic history. Call on a timer. Result in OnResult('TRAFFIC_SAMPLE',...). Non-blocking.")
+    public void TrafficSample() {
+        final String action = "TRAFFIC_SAMPLE";
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/ip/hotspot/active/print",
+                        ".proplist=.id,user,mac-address,uptime,bytes-in,bytes-out,packets-in,packets-out");
+                if (r == null || r.isError()) {
+                    final String json = resultJson(r);
+                    ui(() -> OnResult(action, false, json));
+                    return;
+                }
+                traffic.ingest(r, System.currentTimeMillis());
+                final String json = "{\"ok\":true,\"sessions\":" + traffic.sessionCount() + "}";
+                ui(() -> OnResult(action, true, json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "TRAFFIC_SAMPLE_FAILED"), "Failed sampling active traffic.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Average bytes/sec for a user over the last windowSeconds (e.g. 60, 300, 900), all of its sessions added up. Returns JSON {in,out,total,uptime,spanSeconds}; spanSeconds is the time the samples actually cover.")
+    public String TrafficRate(String user, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        long w = Math.max(1, windowSeconds) * 1000L;
+        String u = user != null ? user.trim() : "";
+        return "{\"user\":\"" + esc(u) + "\""
+                + ",\"in\":" + Math.round(traffic.rate(u, TrafficStore.BYTES_IN, w, now))
+                + ",\"out\":" + Math.round(traffic.rate(u, TrafficStore.BYTES_OUT, w, now))
+                + ",\"total\":" + Math.round(traffic.rate(u, TrafficStore.BYTES_TOTAL, w, now))
+                + ",\"uptime\":" + traffic.uptimeSeconds(u)
+                + ",\"spanSeconds\":" + traffic.span(u, w, now) / 1000 + "}";
+    }
+
+    @SimpleFunction(description = "Top N users by total bytes/sec over the last windowSeconds, each user's sessions added up. Returns JSON array [{user,rate}].")
+    public String TrafficTopTalkers(int n, int windowSeconds) {
+        int count = Math.max(0, n);
+        String[] users = new String[count];
+        double[] rates = new double[count];
+        int found = traffic.topN(TrafficStore.BYTES_TOTAL, Math.max(1, windowSeconds) * 1000L,
+                System.currentTimeMillis(), users, rates);
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < found; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"user\":\"").append(esc(users[i])).append("\",\"rate\":").append(Math.round(rates[i])).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
     @SimpleFunction(description = "List hotspot users. Non-blocking. Result in OnResult('HOTSPOT_USERS',...).")
     public void HotspotUsers() {
         final String action = "HOTSPOT_USERS";
@@ -457,15 +1040,404 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                 return;
             }
             try {
-                MkClient.MkResult r = client.execute("/ip/hotspot/user/print");
-                final String json = mkResultToJson(r);
-                ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/ip/hotspot/user/print");
+                final String json = resultJson(r);
+                uiLatest(action, () -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "HOTSPOT_USERS_FAILED"), "Failed listing hotspot users.", e.toString());
+            }
+        });
+    }
+
+    // =========================================================
+    // RECONCILE (desired state)
+    // =========================================================
+
+    @SimpleFunction(description = "Make the router's hotspot users match usersLines (one 'name,password,profile,limit-uptime,comment' per line; empty columns are left as they are). Only the differences are sent, pipelined. prune removes users not listed; dryRun only reports. Non-blocking. Result in OnResult('HOTSPOT_RECONCILE',...).")
+    public void HotspotReconcileUsers(String usersLines, boolean prune, boolean dryRun) {
+        final List<Map<String, String>> desired = desiredRows(usersLines,
+                "password", "profile", "limit-uptime", "comment");
+        reconcile("HOTSPOT_RECONCILE", desired, prune, dryRun, false);
+    }
+
+    @SimpleFunction(description = "Make the router's hotspot user profiles match profilesLines (one 'name,rate-limit,session-timeout,shared-users' per line; empty columns are left as they are). prune removes profiles not listed (never 'default'); dryRun only reports. Non-blocking. Result in OnResult('PROFILE_RECONCILE',...).")
+    public void ProfileReconcile(String profilesLines, boolean prune, boolean dryRun) {
+        final List<Map<String, String>> desired = desiredRows(profilesLines,
+                "rate-limit", "session-timeout", "shared-users");
+        reconcile("PROFILE_RECONCILE", desired, prune, dryRun, true);
+    }
+
+    private void reconcile(String action, List<Map<String, String>> desired, boolean prune, boolean dryRun, boolean profiles) {
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            try {
+                Reconciler rc = (profiles ? Reconciler.profiles(client) : Reconciler.users(client)).prune(prune);
+                Reconciler.Plan plan = rc.plan(desired);
+
+                JSONObject o = new JSONObject();
+                o.put("dryRun", dryRun);
+                o.put("unchanged", plan.getUnchanged());
+                boolean ok = true;
+                if (dryRun) {
+                    JSONArray sets = new JSONArray();
+                    for (Map<String, String> m : plan.getSets()) {
+                        JSONObject s = new JSONObject();
+                        for (Map.Entry<String, String> e : m.entrySet()) s.put(e.getKey(), e.getValue());
+                        sets.put(s);
+                    }
+                    o.put("add", namesToJson(plan.getAdds()));
+                    o.put("set", sets);
+                    o.put("remove", namesToJson(plan.getRemoves()));
+                } else {
+                    Reconciler.Result r = rc.apply(plan);
+                    JSONArray failed = new JSONArray();
+                    for (String[] f : r.getFailed()) {
+                        JSONObject e = new JSONObject();
+                        e.put("op", f[0]);
+                        e.put("name", f[1]);
+                        e.put("message", f[2]);
+                        failed.put(e);
+                    }
+                    ok = r.getFailed().isEmpty();
+                    o.put("added", r.getAdded());
+                    o.put("updated", r.getUpdated());
+                    o.put("removed", r.getRemoved());
+                    o.put("failed", failed);
+                }
+                o.put("ok", ok);
+                final boolean success = ok;
+                final String json = o.toString();
+                ui(() -> OnResult(action, success, json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "RECONCILE_FAILED"), "Failed reconciling router state.", e.toString());
+            }
+        });
+    }
+
+    /** CSV lines to desired rows: column 0 is the name, then the given fields. */
+    private static List<Map<String, String>> desiredRows(String lines, String... columns) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        if (lines == null) return rows;
+        for (String line : lines.split("\n")) {
+            // positional columns, so empty ones are kept (unlike splitCsv)
+            String[] f = line.split(",", -1);
+            String name = f[0].trim();
+            if (name.isEmpty()) continue;
+            Map<String, String> row = new HashMap<>();
+            row.put("name", name);
+            for (int i = 0; i < columns.length && i + 1 < f.length; i++) {
+                String v = f[i + 1].trim();
+                if (!v.isEmpty()) row.put(columns[i], v);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static JSONArray namesToJson(List<String> names) {
+        JSONArray arr = new JSONArray();
+        for (String n : names) arr.put(n);
+        return arr;
+    }
+
+    // =========================================================
+    // SHARDING (several routers)
+    // =========================================================
+
+    @SimpleFunction(description = "Which router owns this voucher/user, by consistent hashing over routersCsv (stable router ids, e.g. hosts). Adding or removing one router only moves the users it gains or loses. Returns the router id, or empty text if the list is empty.")
+    public String ShardOwner(String name, String routersCsv) {
+        String[] routers = splitCsv(routersCsv);
+        if (routers.length == 0) return "";
+        HashRing ring;
+        synchronized (this) {
+            String key = String.join(",", routers);
+            if (shardRing == null || !key.equals(shardRingKey)) {
+                shardRing = new HashRing(new LinkedHashSet<>(Arrays.asList(routers)).toArray(new String[0]));
+                shardRingKey = key;
+            }
+            ring = shardRing;
+        }
+        return ring.nodeFor(name != null ? name.trim() : "");
+    }
+
+    // =========================================================
+    // SNAPSHOT (on-device users cache)
+    // =========================================================
+
+    @SimpleFunction(description = "Show the last-known hotspot users at once from the on-device snapshot (OnResult('HOTSPOT_USERS_CACHED',...)), then, if connected, sync only what changed: OnRowsAdded/OnRowsRemoved/OnRowsChanged('HOTSPOT_USERS',...) and a summary in OnResult('HOTSPOT_USERS_SYNC',...). Non-blocking.")
+    public void HotspotUsersCached() {
+        final String action = "HOTSPOT_USERS_SYNC";
+        ThreadUtils.runAsync(() -> {
+            try {
+                SnapshotStore store = usersStore();
+                JSONObject o = new JSONObject();
+                o.put("ok", true);
+                o.put("cached", true);
+                o.put("records", recordsToJson(store.rows()));
+                final String cached = o.toString();
+                ui(() -> OnResult("HOTSPOT_USERS_CACHED", true, cached));
+
+                if (!isReady()) {
+                    fail(action, "NOT_CONNECTED", "Not connected. Showing cached users only.", "");
+                    return;
+                }
+                SnapshotSync.Result r = SnapshotSync.sync(client, store, "/ip/hotspot/user/print", USER_WATCH);
+                emitDelta(action, "HOTSPOT_USERS", r.getAdded(), r.getRemoved(), r.getChanged(),
+                        ",\"fetched\":" + r.getFetched() + ",\"full\":" + r.isFull() + ",\"total\":" + store.size());
+            } catch (Exception e) {
+                fail(action, codeFor(e, "SNAPSHOT_FAILED"), "Failed syncing users snapshot.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Look up a hotspot user by name in the on-device snapshot. Returns the row as JSON, or empty text if unknown.")
+    public String SnapshotFindUser(String name) {
+        try {
+            HashMap<String, String> row = usersStore().findByName(name != null ? name.trim() : "");
+            if (row == null) return "";
+            JSONObject o = new JSONObject();
+            for (String k : row.keySet()) o.put(k, row.get(k));
+            return o.toString();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    @SimpleFunction(description = "Delete the on-device users snapshot for the current Host.")
+    public void SnapshotClear() {
+        try {
+            try {
+                usersStore().clear();
+            } catch (IOException unreadable) {
+                // the store can't even be opened: remove its files directly
+                synchronized (this) {
+                    if (usersStore != null) usersStore.close();
+                    usersStore = null;
+                    SnapshotStore.delete(usersStoreDir(), usersStoreTable());
+                }
+            }
+        } catch (Exception e) {
+            fail("SNAPSHOT_CLEAR", "SNAPSHOT_FAILED", "Failed clearing snapshot.", e.toString());
+        }
+    }
+
+    /** Store for the current Host, reopened when Host changes. */
+    private synchronized SnapshotStore usersStore() throws IOException {
+        if (usersStore != null && host.equals(usersStoreHost)) return usersStore;
+        if (usersStore != null) usersStore.close();
+
+        usersStore = null; // stays null if open fails
+        usersStore = new SnapshotStore(usersStoreDir(), usersStoreTable(), "name").omit("password").open();
+        usersStoreHost = host;
+        return usersStore;
+    }
+
+    private File usersStoreDir() {
+        return new File(form.getFilesDir(), "mikrotik-snapshots");
+    }
+
+    private String usersStoreTable() {
+        return "hotspot-users-" + host.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    // =========================================================
+    // OFFLINE QUEUE
+    // =========================================================
+
+    @SimpleFunction(description = "Send queued offline operations now (pipelined). Runs automatically after Connect. Result in OnResult('QUEUE_REPLAY',...) with applied, alreadyApplied, failed and remaining. Non-blocking.")
+    public void QueueReplay() {
+        ThreadUtils.runAsync(this::replayQueue);
+    }
+
+    @SimpleFunction(description = "Queued offline operations as JSON array [{key,kind,name,createdAt}].")
+    public String QueuePending() {
+        JSONArray arr = new JSONArray();
+        try {
+            for (OpQueue.Op op : opQueue().pending()) {
+                JSONObject o = new JSONObject();
+                o.put("key", op.getKey());
+                o.put("kind", op.getKind());
+                o.put("name", op.getName());
+                o.put("createdAt", op.getCreatedAt());
+                arr.put(o);
+            }
+        } catch (Exception ignored) {}
+        return arr.toString();
+    }
+
+    @SimpleFunction(description = "Drop all queued offline operations for the current Host.")
+    public void QueueClear() {
+        try {
+            opQueue().clear();
+        } catch (Exception e) {
+            fail("QUEUE_CLEAR", "QUEUE_FAILED", "Failed clearing offline queue.", e.toString());
+        }
+    }
+
+    /** Queues the op when offline and OfflineQueue is on; true if queued. */
+    private boolean queueIfOffline(String action, String kind, String... args) {
+        if (!offlineQueue || isReady()) return false;
+        try {
+            boolean added = opQueue().enqueue(null, kind, args);
+            final String json = "{\"ok\":true,\"queued\":true,\"duplicate\":" + !added
+                    + ",\"pending\":" + opQueue().size() + "}";
+            ui(() -> OnResult(action, true, json));
+        } catch (Exception e) {
+            fail(action, "QUEUE_FAILED", "Failed queueing operation.", e.toString());
+        }
+        return true;
+    }
+
+    private void replayQueue() {
+        final String action = "QUEUE_REPLAY";
+        if (!isReady()) {
+            fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+            return;
+        }
+        try {
+            OpQueue.ReplayResult r = opQueue().replay(client);
+            JSONArray failed = new JSONArray();
+            for (String[] f : r.getFailed()) {
+                JSONObject o = new JSONObject();
+                o.put("key", f[0]);
+                o.put("kind", f[1]);
+                o.put("name", f[2]);
+                o.put("message", f[3]);
+                failed.put(o);
+            }
+            JSONObject o = new JSONObject();
+            o.put("ok", r.getFailed().isEmpty());
+            o.put("applied", r.getApplied());
+            o.put("alreadyApplied", r.getAlreadyApplied());
+            o.put("failed", failed);
+            o.put("remaining", r.getRemaining());
+            final boolean ok = r.getFailed().isEmpty();
+            final String json = o.toString();
+            ui(() -> OnResult(action, ok, json));
+        } catch (Exception e) {
+            fail(action, codeFor(e, "QUEUE_REPLAY_FAILED"), "Offline queue replay stopped; remaining ops stay queued.", e.toString());
+        }
+    }
+
+    /** Queue for the current Host, reopened when Host changes. */
+    private synchronized OpQueue opQueue() throws IOException {
+        if (opQueue != null && host.equals(opQueueHost)) return opQueue;
+        if (opQueue != null) opQueue.close();
+
+        File dir = new File(form.getFilesDir(), "mikrotik-queue");
+        opQueue = new OpQueue(new File(dir, "ops-" + host.replaceAll("[^A-Za-z0-9._-]", "_") + ".wal")).open();
+        opQueueHost = host;
+        return opQueue;
+    }
+
+    // =========================================================
+    // PAGED PRINT (memory-bounded)
+    // =========================================================
+
+    @SimpleFunction(description = "Run a print (path + optional params, e.g. '/ip/hotspot/user/print') keeping at most PrintMemoryKb of rows in memory; the rest goes to a temporary file. Read it with PageRows / PageSearch. Result in OnResult('PRINT_PAGED',...) with total, spilled, memoryBytes and fileBytes. Non-blocking.")
+    public void PrintPaged(String path, String paramsCsv) {
+        final String action = "PRINT_PAGED";
+        final String p = path != null ? path.trim() : "";
+        final String[] params = splitCsv(paramsCsv);
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            File dir = new File(form.getFilesDir(), "mikrotik-spill");
+            if (!spillSwept) {
+                // files from earlier runs that died before PageClear / onDelete
+                spillSwept = true;
+                SpillTable.deleteStale(dir, createdAt);
+            }
+            SpillTable table = new SpillTable(dir, printMemoryKb * 1024L);
+            try {
+                table.load(client, p, params);
+                SpillTable old = pagedResult;
+                pagedResult = table;
+                if (old != null) old.close();
+
+                JSONObject o = new JSONObject();
+                o.put("ok", true);
+                o.put("total", table.size());
+                o.put("spilled", table.isSpilled());
+                o.put("memoryBytes", table.getMemoryBytes());
+                o.put("fileBytes", table.getFileBytes());
+                final String json = o.toString();
+                ui(() -> OnResult(action, true, json));
+            } catch (Exception e) {
+                try {
+                    table.close();
+                } catch (IOException ignored) {}
+                fail(action, codeFor(e, "PRINT_PAGED_FAILED"), "Failed running paged print.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Rows [offset, offset + limit) of the last PrintPaged, in ResultFormat; limit is capped at 1000. Result in OnResult('PAGE_ROWS',...) with offset and total. Non-blocking.")
+    public void PageRows(int offset, int limit) {
+        final String action = "PAGE_ROWS";
+        ThreadUtils.runAsync(() -> {
+            SpillTable table = pagedResult;
+            if (table == null) {
+                fail(action, "NO_RESULT", "No paged result. Call PrintPaged first.", "");
+                return;
+            }
+            try {
+                int n = Math.min(limit, SpillTable.MAX_ROWS);
+                final String json = pageJson(table.page(Math.max(0, offset), n), Math.max(0, offset), table.size(), null);
+                ui(() -> OnResult(action, true, json));
             } catch (Exception e) {
-                fail(action, "HOTSPOT_USERS_FAILED", "Failed listing hotspot users.", e.toString());
+                fail(action, "PAGE_ROWS_FAILED", "Failed reading paged result.", e.toString());
             }
         });
     }
 
+    @SimpleFunction(description = "Rows of the last PrintPaged whose column key contains text (case-insensitive; empty key = any column), scanning from row offset, at most limit (0 or over 1000 = 1000), in ResultFormat. Result in OnResult('PAGE_SEARCH',...) with next: the offset to search on from, or -1 at the end. Non-blocking.")
+    public void PageSearch(String key, String text, int offset, int limit) {
+        final String action = "PAGE_SEARCH";
+        ThreadUtils.runAsync(() -> {
+            SpillTable table = pagedResult;
+            if (table == null) {
+                fail(action, "NO_RESULT", "No paged result. Call PrintPaged first.", "");
+                return;
+            }
+            try {
+                int from = Math.max(0, offset);
+                SpillTable.Found found = table.search(key != null ? key.trim() : "", text, from, limit);
+                final String json = pageJson(found.rows, from, table.size(), found.next);
+                ui(() -> OnResult(action, true, json));
+            } catch (Exception e) {
+                fail(action, "PAGE_SEARCH_FAILED", "Failed searching paged result.", e.toString());
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Drop the last PrintPaged result and delete its temporary file.")
+    public void PageClear() {
+        SpillTable table = pagedResult;
+        pagedResult = null;
+        try {
+            if (table != null) table.close();
+        } catch (IOException ignored) {}
+    }
+
+    /** @param next resume offset for a search, null for a plain page */
+    private String pageJson(List<HashMap<String, String>> rows, int offset, int total, Integer next) throws IOException {
+        StringBuilder sb = new StringBuilder(128 + rows.size() * 96);
+        sb.append("{\"ok\":true,\"offset\":").append(offset)
+                .append(",\"total\":").append(total)
+                .append(",\"count\":").append(rows.size());
+        if (next != null) sb.append(",\"next\":").append(next);
+        if (!TableWriter.JSON.equals(resultFormat)) sb.append(",\"format\":\"").append(resultFormat).append('"');
+        sb.append(',');
+        TableWriter.writeMembers(sb, rows, resultFormat);
+        return sb.append('}').toString();
+    }
+
     // =========================================================
     // SYSTEM LOGICAL BLOCKS
     // =========================================================
@@ -479,11 +1451,11 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                 return;
             }
             try {
-                MkClient.MkResult r = client.execute("/system/identity/print");
-                final String json = mkResultToJson(r);
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/system/identity/print");
+                final String json = resultJson(r);
                 ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "SYSTEM_IDENTITY_FAILED", "Failed reading identity.", e.toString());
+                fail(action, codeFor(e, "SYSTEM_IDENTITY_FAILED"), "Failed reading identity.", e.toString());
             }
         });
     }
@@ -497,15 +1469,98 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
                 return;
             }
             try {
-                MkClient.MkResult r = client.execute("/system/resource/print");
-                final String json = mkResultToJson(r);
-                ui(() -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
+                MkClient.MkResult r = client.execute(commandTimeoutMs, "/system/resource/print");
+                final String json = resultJson(r);
+                uiLatest(action, () -> OnResult(action, r != null && r.isSuccess() && !r.isError(), json));
             } catch (Exception e) {
-                fail(action, "SYSTEM_RESOURCE_FAILED", "Failed reading resource.", e.toString());
+                fail(action, codeFor(e, "SYSTEM_RESOURCE_FAILED"), "Failed reading resource.", e.toString());
             }
         });
     }
 
+    // =========================================================
+    // METRICS
+    // =========================================================
+
+    @SimpleFunction(description = "Metrics snapshot as JSON: bytes/sentences on wire, in-flight, traps, reconnects and per-path latency (queue wait, round-trip, parse; microseconds).")
+    public String MetricsSnapshot() {
+        try {
+            return metrics.toJson().toString();
+        } catch (Exception e) {
+            return "{\"ok\":false,\"message\":\"serialize_failed\",\"details\":\"" + esc(e.toString()) + "\"}";
+        }
+    }
+
+    @SimpleFunction(description = "Reset all metrics counters.")
+    public void MetricsReset() {
+        metrics.reset();
+    }
+
+    // =========================================================
+    // LIVE PING
+    // =========================================================
+
+    @SimpleFunction(description = "Ping one or more targets (comma separated) from the router, all at once. Every reply arrives in OnResult('PING_REPLY',...) with running min/avg/max/jitter (ms) and loss (%); final stats per target in OnResult('PING_LIVE',...). intervalMs 0 = 1 s. Non-blocking.")
+    public void PingLive(String targetsCsv, int count, int intervalMs) {
+        final String action = "PING_LIVE";
+        final List<String> targets = nameList(targetsCsv);
+        ThreadUtils.runAsync(() -> {
+            if (!isReady()) {
+                fail(action, "NOT_CONNECTED", "Not connected. Call Connect first.", "");
+                return;
+            }
+            if (targets.isEmpty()) {
+                fail(action, "BAD_ARGUMENT", "No ping targets.", "");
+                return;
+            }
+            LivePing ping = new LivePing(client);
+            livePing = ping;
+            try {
+                List<PingStats> stats = ping.run(targets, count, intervalMs, (target, seq, rttUs, st) -> {
+                    JSONObject o = pingJson(st);
+                    o.put("seq", seq);
+                    o.put("lost", rttUs < 0);
+                    o.put("rtt", rttUs < 0 ? -1 : rttUs / 1000.0);
+                    final String json = o.toString();
+                    // running stats: a newer reply for the target carries everything
+                    uiLatest("PING_REPLY:" + target, () -> OnResult("PING_REPLY", true, json));
+                    return true;
+                });
+
+                JSONArray arr = new JSONArray();
+                for (PingStats st : stats) arr.put(pingJson(st));
+                JSONObject o = new JSONObject();
+                o.put("ok", true);
+                o.put("targets", arr);
+                final String json = o.toString();
+                ui(() -> OnResult(action, true, json));
+            } catch (Exception e) {
+                fail(action, codeFor(e, "PING_FAILED"), "Live ping failed.", e.toString());
+            } finally {
+                if (livePing == ping) livePing = null;
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Stop a running PingLive early; final stats still arrive in OnResult('PING_LIVE',...).")
+    public void PingStop() {
+        LivePing ping = livePing;
+        if (ping != null) ping.stop();
+    }
+
+    private static JSONObject pingJson(PingStats st) {
+        JSONObject o = new JSONObject();
+        o.put("target", st.getTarget());
+        o.put("sent", st.getSent());
+        o.put("received", st.getReceived());
+        o.put("loss", st.getLossPercent());
+        o.put("min", st.getMinUs() < 0 ? -1 : st.getMinUs() / 1000.0);
+        o.put("avg", st.getAvgUs() < 0 ? -1 : st.getAvgUs() / 1000.0);
+        o.put("max", st.getMaxUs() < 0 ? -1 : st.getMaxUs() / 1000.0);
+        o.put("jitter", st.getJitterUs() / 1000.0);
+        return o;
+    }
+
     // =========================================================
     // CSV PARAM PARSER (for Execute block)
     // =========================================================
@@ -539,6 +1594,7 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
     @Override
     public void onDelete() {
         try {
+            stopHeartbeat();
             try {
                 if (connection != null && connection.isConnected()) {
                     connection.disconnect();
@@ -546,6 +1602,10 @@ public class MikrotikApiExtension extends AndroidNonvisibleComponent {
             } catch (Exception ignored) {}
             connection = null;
             client = null;
+            if (usersStore != null) usersStore.close();
+            if (opQueue != null) opQueue.close();
+            PageClear();
+            uiDispatcher.shutdown();
         } catch (Exception ignored) {}
         super.onDelete();
     }
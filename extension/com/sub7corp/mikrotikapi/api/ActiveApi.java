@@ -1,10 +1,17 @@
 package com.sub7corp.mikrotikapi.api;
 
 import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+import com.sub7corp.mikrotikapi.model.ActiveSessionView;
+import com.sub7corp.mikrotikapi.model.BulkResult;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Hotspot Active Sessions API
@@ -23,6 +30,15 @@ public class ActiveApi {
         return client.execute("/ip/hotspot/active/print");
     }
 
+    /** Active sessions as typed views (counters parsed lazily, cached). */
+    public List<ActiveSessionView> listActiveViews() throws IOException {
+        MkClient.MkResult res = listActive();
+        if (res.isError()) {
+            throw new IOException("Active list failed: " + res.getMessage());
+        }
+        return ActiveSessionView.wrap(res.getRecords());
+    }
+
     /**
      * Remove active session by .id
      * /ip/hotspot/active/remove .id=*X
@@ -36,12 +52,13 @@ public class ActiveApi {
      * Returns null if not found
      */
     public String findActiveIdByUser(String username) throws IOException {
-        MkClient.MkResult res = listActive();
-        List<HashMap<String, String>> records = res.getRecords();
+        if (username == null) return null;
+
+        // lazy rows: only "user" is compared (as bytes) and one ".id" decoded
+        MkClient.MkResult res = client.executeLazy("/ip/hotspot/active/print", "=.proplist=.id,user");
 
-        for (HashMap<String, String> r : records) {
-            String user = r.get("user");
-            if (user != null && user.equals(username)) {
+        for (MkRecord r : res.getRows()) {
+            if (r.valueEquals("user", username)) {
                 return r.get(".id");
             }
         }
@@ -59,4 +76,43 @@ public class ActiveApi {
         }
         return removeActiveById(id);
     }
+
+    /**
+     * Remove many active sessions by .id in as few commands as possible
+     * (comma-separated id lists, pipelined).
+     * Returns id -> message for the ids that failed.
+     */
+    public Map<String, String> removeActiveByIds(Collection<String> ids) throws IOException {
+        return client.executeForIds("/ip/hotspot/active/remove", ids);
+    }
+
+    /**
+     * Kick every active session of the given users: one projected print
+     * resolves all of them, then the ids go out as a few id lists.
+     * Users with several sessions lose all of them.
+     */
+    public BulkResult kickUsers(Collection<String> usernames) throws IOException {
+        Map<String, List<String>> byUser = client.resolveIds("/ip/hotspot/active/print", "user", usernames);
+
+        List<String> notFound = new ArrayList<>();
+        for (String u : usernames) {
+            if (!byUser.containsKey(u)) notFound.add(u);
+        }
+
+        List<String> ids = new ArrayList<>();
+        Map<String, String> userOf = new HashMap<>();
+        for (Map.Entry<String, List<String>> e : byUser.entrySet()) {
+            for (String id : e.getValue()) {
+                ids.add(id);
+                userOf.put(id, e.getKey());
+            }
+        }
+
+        Map<String, String> failedIds = removeActiveByIds(ids);
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : failedIds.entrySet()) {
+            failed.put(userOf.get(e.getKey()), e.getValue());
+        }
+        return new BulkResult(ids.size() - failedIds.size(), notFound, failed);
+    }
 }
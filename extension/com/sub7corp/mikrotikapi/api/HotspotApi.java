@@ -1,15 +1,34 @@
 package com.sub7corp.mikrotikapi.api;
 
 import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
 import com.sub7corp.mikrotikapi.model.ApiError;
 import com.sub7corp.mikrotikapi.model.ApiResult;
+import com.sub7corp.mikrotikapi.model.BulkResult;
+import com.sub7corp.mikrotikapi.model.HotspotUserView;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
 public class HotspotApi {
 
+    /**
+     * The one prepared user add, shared by every create path:
+     * {name, password, profile, limit-uptime, comment}. Pre-encoded once;
+     * each call only encodes the values, and null or missing trailing
+     * values leave their key out.
+     */
+    public static final MkTemplate USER_ADD = MkClient.prepare(
+            "/ip/hotspot/user/add", "name", "password", "profile", "limit-uptime", "comment");
+
+    /** Commands in flight at once for bulk creation. */
+    public static final int BATCH_WINDOW = 32;
+
     private final MkClient client;
 
     public HotspotApi(MkClient client) {
@@ -26,13 +45,7 @@ public class HotspotApi {
             String comment
     ) {
         try {
-            MkClient.MkResult res = client.execute(
-                    "/ip/hotspot/user/add",
-                    "=name=" + username,
-                    "=password=" + password,
-                    "=profile=" + profile,
-                    "=comment=" + comment
-            );
+            MkClient.MkResult res = client.execute(USER_ADD, username, password, profile, null, comment);
 
             if (res.isError()) {
                 return ApiResult.error(
@@ -49,6 +62,46 @@ public class HotspotApi {
         }
     }
 
+    // =========================
+    // CREATE USERS (BULK)
+    // =========================
+
+    /**
+     * Creates many users in one pipelined batch.
+     * Each row is {name, password, profile, limitUptime, comment} (see
+     * USER_ADD); null fields are left out.
+     * Data: {created, failed, errors: [{name, message}]}.
+     */
+    public ApiResult createUsers(List<String[]> rows) {
+        try {
+            MkClient.MkResult[] results = client.executeBatch(USER_ADD, rows, BATCH_WINDOW);
+
+            int created = 0;
+            List<Map<String, String>> errors = new ArrayList<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].isSuccess()) {
+                    created++;
+                } else {
+                    Map<String, String> err = new HashMap<>();
+                    err.put("name", rows.get(i).length > 0 ? rows.get(i)[0] : "");
+                    err.put("message", results[i].getMessage());
+                    errors.add(err);
+                }
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("created", created);
+            data.put("failed", errors.size());
+            data.put("errors", errors);
+            return ApiResult.success(data);
+
+        } catch (Exception e) {
+            return ApiResult.error(
+                    new ApiError("HOTSPOT_CREATE_EXCEPTION", e.getMessage())
+            );
+        }
+    }
+
     // =========================
     // REMOVE USER
     // =========================
@@ -74,6 +127,59 @@ public class HotspotApi {
         }
     }
 
+    // =========================
+    // BULK REMOVE / ENABLE / DISABLE
+    // =========================
+
+    /**
+     * Many users at once: names are resolved in one projected print and
+     * sent as comma-separated id lists, so hundreds of users cost a few
+     * round trips. Data is a BulkResult.
+     */
+    public ApiResult removeUsers(Collection<String> usernames) {
+        return bulk("/ip/hotspot/user/remove", usernames, "HOTSPOT_REMOVE_EXCEPTION");
+    }
+
+    public ApiResult disableUsers(Collection<String> usernames) {
+        return bulk("/ip/hotspot/user/disable", usernames, "HOTSPOT_DISABLE_EXCEPTION");
+    }
+
+    public ApiResult enableUsers(Collection<String> usernames) {
+        return bulk("/ip/hotspot/user/enable", usernames, "HOTSPOT_ENABLE_EXCEPTION");
+    }
+
+    private ApiResult bulk(String path, Collection<String> usernames, String errorCode) {
+        try {
+            Map<String, List<String>> byName = client.resolveIds("/ip/hotspot/user/print", "name", usernames);
+
+            List<String> notFound = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            Map<String, String> nameOf = new HashMap<>();
+            for (String u : new LinkedHashSet<>(usernames)) {
+                List<String> found = byName.get(u);
+                if (found == null) {
+                    notFound.add(u);
+                    continue;
+                }
+                for (String id : found) {
+                    ids.add(id);
+                    nameOf.put(id, u);
+                }
+            }
+
+            Map<String, String> failed = new LinkedHashMap<>();
+            for (Map.Entry<String, String> e : client.executeForIds(path, ids).entrySet()) {
+                failed.put(nameOf.get(e.getKey()), e.getValue());
+            }
+            return ApiResult.success(new BulkResult(ids.size() - failed.size(), notFound, failed));
+
+        } catch (Exception e) {
+            return ApiResult.error(
+                    new ApiError(errorCode, e.getMessage())
+            );
+        }
+    }
+
     // =========================
     // LIST USERS
     // =========================
@@ -99,6 +205,20 @@ public class HotspotApi {
         }
     }
 
+    // =========================
+    // LIST USERS (TYPED)
+    // =========================
+
+    /** Same as listUsers, data is a List of HotspotUserView. */
+    public ApiResult listUserViews() {
+        ApiResult res = listUsers();
+        if (!res.isSuccess()) return res;
+
+        @SuppressWarnings("unchecked")
+        List<HashMap<String, String>> users = (List<HashMap<String, String>>) res.getData();
+        return ApiResult.success(HotspotUserView.wrap(users));
+    }
+
     // =========================
     // DISCONNECT ACTIVE USER
     // =========================
@@ -0,0 +1,88 @@
+package com.sub7corp.mikrotikapi.api;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+import com.sub7corp.mikrotikapi.stats.PingStats;
+import com.sub7corp.mikrotikapi.util.RouterOsValues;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming /ping from the router to one or more targets.
+ *
+ * All targets run at once on one connection; each reply is reported as
+ * soon as it arrives together with the target's running PingStats, so a
+ * 100-probe check shows results from the first second. stop() (or a
+ * listener returning false) ends the probes early.
+ */
+public class LivePing {
+
+    public interface Listener {
+        /**
+         * @param rttUs round trip in microseconds, -1 if the probe was lost
+         * @return false to stop probing this target
+         */
+        boolean onReply(String target, int seq, long rttUs, PingStats stats);
+    }
+
+    private final MkClient client;
+    private volatile boolean stopped;
+
+    public LivePing(MkClient client) {
+        this.client = client;
+    }
+
+    /** Ends every target at its next reply. */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Blocks until all targets are done, stopped or failed.
+     * @param intervalMs between probes, 0 = router default (1 s)
+     * @return final stats per target, in the order given
+     */
+    public List<PingStats> run(List<String> targets, int count, int intervalMs, Listener listener) throws IOException {
+        final List<PingStats> stats = new ArrayList<>(targets.size());
+        final int[] lastSeq = new int[targets.size()];
+        List<String[]> commands = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            stats.add(new PingStats(targets.get(i)));
+            lastSeq[i] = -1;
+            commands.add(new String[]{
+                    "/ping",
+                    "=address=" + targets.get(i),
+                    "=count=" + Math.max(1, count),
+                    intervalMs > 0 ? "=interval=" + intervalMs + "ms" : null
+            });
+        }
+
+        client.stream(commands, new MkClient.StreamListener() {
+            @Override
+            public boolean onRecord(int index, MkRecord r) {
+                if (stopped) return false;
+
+                // RouterOS may repeat a seq (e.g. a late reply); count it once
+                int seq = (int) RouterOsValues.parseLong(r.get("seq"), -1);
+                if (seq < 0 || seq <= lastSeq[index]) return true;
+                lastSeq[index] = seq;
+
+                long rtt = r.has("time") ? RouterOsValues.parseDurationMicros(r.get("time"), -1) : -1;
+                PingStats s = stats.get(index);
+                s.add(rtt);
+                return listener == null || listener.onReply(s.getTarget(), seq, rtt, s);
+            }
+
+            @Override
+            public void onDone(int index, String error) {
+                if (error != null && stats.get(index).getSent() == 0) {
+                    // nothing sent at all: bad address or no route
+                    stats.get(index).add(-1);
+                }
+            }
+        });
+        return stats;
+    }
+}
@@ -1,8 +1,10 @@
 package com.sub7corp.mikrotikapi.api;
 
 import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.model.ProfileView;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Hotspot user profile API.
@@ -21,6 +23,15 @@ public class ProfileApi {
         return client.execute("/ip/hotspot/user/profile/print");
     }
 
+    /** Profiles as typed views (timeouts and rate limits parsed lazily). */
+    public List<ProfileView> listProfileViews() throws IOException {
+        MkClient.MkResult res = listProfiles();
+        if (res.isError()) {
+            throw new IOException("Profile list failed: " + res.getMessage());
+        }
+        return ProfileView.wrap(res.getRecords());
+    }
+
     /**
      * Add a hotspot user profile
      *
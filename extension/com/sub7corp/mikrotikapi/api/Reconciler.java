@@ -0,0 +1,286 @@
+package com.sub7corp.mikrotikapi.api;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Makes a router table match a desired set of named entries
+ * (hotspot users, user profiles).
+ *
+ * plan() reads the router side with one projected print (".id", "name"
+ * and the managed fields only), joins it with the desired rows through a
+ * hash map keyed by name and compares values on the raw reply bytes. The
+ * result is the minimal list of add / set (changed fields only) / remove
+ * operations, usable as a dry-run report. apply() sends them in one
+ * pipelined batch.
+ *
+ * A desired row only manages the fields it contains; anything else on
+ * the router is left alone.
+ */
+public class Reconciler {
+
+    public static final String USERS_PATH = "/ip/hotspot/user";
+    public static final String PROFILES_PATH = "/ip/hotspot/user/profile";
+
+    // Commands in flight at once while applying
+    private static final int APPLY_WINDOW = 64;
+
+    private final MkClient client;
+    private final String path;
+    private final String[] fields;
+    private final Set<String> protectedNames = new HashSet<>();
+    private boolean prune = true;
+
+    private final MkTemplate add;
+    private final MkTemplate set;
+    private final MkTemplate remove;
+
+    /**
+     * @param path menu, e.g. "/ip/hotspot/user"
+     * @param fields managed fields besides "name"
+     */
+    public Reconciler(MkClient client, String path, String... fields) {
+        this.client = client;
+        this.path = path;
+        this.fields = fields.clone();
+
+        String[] addKeys = new String[fields.length + 1];
+        String[] setKeys = new String[fields.length + 1];
+        addKeys[0] = "name";
+        setKeys[0] = ".id";
+        System.arraycopy(fields, 0, addKeys, 1, fields.length);
+        System.arraycopy(fields, 0, setKeys, 1, fields.length);
+        this.add = MkClient.prepare(path + "/add", addKeys);
+        this.set = MkClient.prepare(path + "/set", setKeys);
+        this.remove = MkClient.prepare(path + "/remove", ".id");
+    }
+
+    /** Hotspot users: password, profile, limit-uptime, limit-bytes-total, comment, disabled. */
+    public static Reconciler users(MkClient client) {
+        return new Reconciler(client, USERS_PATH,
+                "password", "profile", "limit-uptime", "limit-bytes-total", "comment", "disabled");
+    }
+
+    /** User profiles: rate-limit, session-timeout, idle-timeout, shared-users. "default" is never removed. */
+    public static Reconciler profiles(MkClient client) {
+        return new Reconciler(client, PROFILES_PATH,
+                "rate-limit", "session-timeout", "idle-timeout", "shared-users")
+                .protect("default");
+    }
+
+    /** Remove router entries missing from the desired set (default true). */
+    public Reconciler prune(boolean value) {
+        prune = value;
+        return this;
+    }
+
+    /** Names that are never removed. */
+    public Reconciler protect(String... names) {
+        Collections.addAll(protectedNames, names);
+        return this;
+    }
+
+    /* =========================
+       ===== PLAN ==============
+       ========================= */
+
+    /** Add / set / remove needed to reach the desired state. Nothing is sent. */
+    public static final class Plan {
+        private final List<String[]> adds = new ArrayList<>();
+        private final List<String[]> sets = new ArrayList<>();
+        private final List<String> setNames = new ArrayList<>();
+        private final List<String[]> removes = new ArrayList<>();
+        private final List<String> removeNames = new ArrayList<>();
+        private int unchanged;
+
+        private final String[] fields;
+
+        private Plan(String[] fields) {
+            this.fields = fields;
+        }
+
+        public int getUnchanged() { return unchanged; }
+
+        public int size() { return adds.size() + sets.size() + removes.size(); }
+
+        public boolean isEmpty() { return size() == 0; }
+
+        /** Names to add. */
+        public List<String> getAdds() {
+            List<String> names = new ArrayList<>(adds.size());
+            for (String[] row : adds) names.add(row[0]);
+            return names;
+        }
+
+        /** Per entry: "name" plus the fields that change, with their new value. */
+        public List<Map<String, String>> getSets() {
+            List<Map<String, String>> out = new ArrayList<>(sets.size());
+            for (int i = 0; i < sets.size(); i++) {
+                String[] row = sets.get(i);
+                Map<String, String> m = new LinkedHashMap<>();
+                m.put("name", setNames.get(i));
+                for (int f = 0; f < fields.length; f++) {
+                    if (row[f + 1] != null) m.put(fields[f], row[f + 1]);
+                }
+                out.add(m);
+            }
+            return out;
+        }
+
+        /** Names to remove. */
+        public List<String> getRemoves() { return removeNames; }
+    }
+
+    public Plan plan(List<? extends Map<String, String>> desired) throws IOException {
+        Map<String, Map<String, String>> wanted = new LinkedHashMap<>(desired.size() * 2);
+        for (Map<String, String> row : desired) {
+            String name = row.get("name");
+            if (name == null || name.isEmpty()) throw new IllegalArgumentException("Desired row without name");
+            if (wanted.put(name, row) != null) throw new IllegalArgumentException("Duplicate name: " + name);
+        }
+
+        StringBuilder proplist = new StringBuilder("=.proplist=.id,name,dynamic");
+        for (String f : fields) proplist.append(',').append(f);
+        MkClient.MkResult listed = client.executeLazy(path + "/print", proplist.toString());
+        if (listed.isError()) throw new IOException(path + "/print: " + listed.getMessage());
+
+        Plan plan = new Plan(fields);
+        Set<String> seen = new HashSet<>(listed.getRows().size() * 2);
+        for (MkRecord rec : listed.getRows()) {
+            String name = rec.get("name");
+            String id = rec.get(".id");
+            if (name == null || id == null) continue;
+            seen.add(name);
+
+            Map<String, String> want = wanted.get(name);
+            if (want == null) {
+                if (prune && !protectedNames.contains(name) && !rec.valueEquals("dynamic", "true")) {
+                    plan.removes.add(new String[]{id});
+                    plan.removeNames.add(name);
+                }
+                continue;
+            }
+
+            String[] row = null;
+            for (int f = 0; f < fields.length; f++) {
+                String v = want.get(fields[f]);
+                if (v == null || same(rec, fields[f], v)) continue;
+                if (row == null) {
+                    row = new String[fields.length + 1];
+                    row[0] = id;
+                }
+                row[f + 1] = v;
+            }
+            if (row == null) {
+                plan.unchanged++;
+            } else {
+                plan.sets.add(row);
+                plan.setNames.add(name);
+            }
+        }
+
+        for (Map.Entry<String, Map<String, String>> e : wanted.entrySet()) {
+            if (seen.contains(e.getKey())) continue;
+            String[] row = new String[fields.length + 1];
+            row[0] = e.getKey();
+            for (int f = 0; f < fields.length; f++) row[f + 1] = e.getValue().get(fields[f]);
+            plan.adds.add(row);
+        }
+        return plan;
+    }
+
+    /** RouterOS prints booleans as true/false but accepts yes/no; absent equals "". */
+    private static boolean same(MkRecord rec, String key, String want) {
+        if (rec.valueEquals(key, want)) return true;
+        if (!rec.has(key)) return want.isEmpty();
+        if (want.equals("yes")) return rec.valueEquals(key, "true");
+        if (want.equals("no")) return rec.valueEquals(key, "false");
+        return false;
+    }
+
+    /* =========================
+       ===== APPLY =============
+       ========================= */
+
+    public static final class Result {
+        private int added;
+        private int updated;
+        private int removed;
+        private final List<String[]> failed = new ArrayList<>();
+
+        public int getAdded() { return added; }
+
+        public int getUpdated() { return updated; }
+
+        public int getRemoved() { return removed; }
+
+        /** {op, name, message} for every rejected operation. */
+        public List<String[]> getFailed() { return failed; }
+    }
+
+    /** Sends a plan: adds, then sets, then removes, pipelined in one batch. */
+    public Result apply(Plan plan) throws IOException {
+        Result result = new Result();
+        if (plan.isEmpty()) return result;
+
+        List<MkTemplate> templates = new ArrayList<>(plan.size());
+        List<String[]> rows = new ArrayList<>(plan.size());
+        List<String> names = new ArrayList<>(plan.size());
+        for (String[] r : plan.adds) {
+            templates.add(add);
+            rows.add(r);
+            names.add(r[0]);
+        }
+        for (int i = 0; i < plan.sets.size(); i++) {
+            templates.add(set);
+            rows.add(plan.sets.get(i));
+            names.add(plan.setNames.get(i));
+        }
+        for (int i = 0; i < plan.removes.size(); i++) {
+            templates.add(remove);
+            rows.add(plan.removes.get(i));
+            names.add(plan.removeNames.get(i));
+        }
+
+        MkClient.MkResult[] res = client.executeBatch(templates, rows, APPLY_WINDOW);
+        for (int i = 0; i < res.length; i++) {
+            String op = templates.get(i) == add ? "add" : templates.get(i) == set ? "set" : "remove";
+            if (!res[i].isSuccess()) {
+                result.failed.add(new String[]{op, names.get(i), res[i].getMessage()});
+            } else if (op.equals("add")) {
+                result.added++;
+            } else if (op.equals("set")) {
+                result.updated++;
+            } else {
+                result.removed++;
+            }
+        }
+        return result;
+    }
+
+    /** plan() followed by apply(). */
+    public Result reconcile(List<? extends Map<String, String>> desired) throws IOException {
+        return apply(plan(desired));
+    }
+
+    /** Desired row helper: name plus alternating field / value pairs (null values are unmanaged). */
+    public static Map<String, String> row(String name, String... fieldValues) {
+        Map<String, String> m = new HashMap<>();
+        m.put("name", name);
+        for (int i = 0; i + 1 < fieldValues.length; i += 2) {
+            if (fieldValues[i + 1] != null) m.put(fieldValues[i], fieldValues[i + 1]);
+        }
+        return m;
+    }
+}
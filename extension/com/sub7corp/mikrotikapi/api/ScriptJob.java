@@ -0,0 +1,306 @@
+package com.sub7corp.mikrotikapi.api;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bulk job run on the router as one RouterOS script.
+ *
+ * The script is uploaded with /system/script/add, run with
+ * /system/script/run and removed afterwards, so thousands of item
+ * operations cost a handful of API commands instead of one round trip
+ * each. Output: the script appends lines to the local "$out" (see emit);
+ * at the end it is copied to a one-off global variable, read back from
+ * /system/script/environment and deleted.
+ *
+ * Values only reach the script through set()/setArray(), which quote and
+ * escape them; line() takes code as-is.
+ *
+ * Not exposed as blocks: the generated script code has only been driven
+ * against RouterSim, which does not interpret scripts. Validate it on a
+ * RouterOS / CHR instance before wiring it into the extension.
+ */
+public class ScriptJob {
+
+    /** Default limit for the generated source, in UTF-8 bytes. */
+    public static final int MAX_SOURCE_BYTES = 32 * 1024;
+
+    private static final MkTemplate SCRIPT_REMOVE = MkClient.prepare("/system/script/remove", ".id");
+    private static final MkTemplate ENV_REMOVE = MkClient.prepare("/system/script/environment/remove", "numbers");
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final StringBuilder locals = new StringBuilder();
+    private final StringBuilder body = new StringBuilder();
+    private int maxSourceBytes = MAX_SOURCE_BYTES;
+
+    /* =========================
+       ===== BUILD =============
+       ========================= */
+
+    /** :local name "value" */
+    public ScriptJob set(String name, String value) {
+        locals.append(":local ").append(identifier(name)).append(' ').append(quote(value)).append('\n');
+        return this;
+    }
+
+    public ScriptJob set(String name, long value) {
+        locals.append(":local ").append(identifier(name)).append(' ').append(value).append('\n');
+        return this;
+    }
+
+    /** :local name {{"a";"b"};{"c";"d"}}; one inner array per row, read as ($row->0). */
+    public ScriptJob setArray(String name, List<String[]> rows) {
+        locals.append(":local ").append(identifier(name)).append(' ').append(array(rows)).append('\n');
+        return this;
+    }
+
+    /** Raw script code. Never build it from user input; pass values with set(). */
+    public ScriptJob line(String code) {
+        body.append(code).append('\n');
+        return this;
+    }
+
+    /** Appends the value of a script expression as one output line. */
+    public ScriptJob emit(String expression) {
+        return line(":set out ($out . (" + expression + ") . \"\\n\")");
+    }
+
+    public ScriptJob maxSourceBytes(int value) {
+        maxSourceBytes = value;
+        return this;
+    }
+
+    /** Full source; the output ends up in the global outVar. */
+    public String source(String outVar) {
+        return ":global " + identifier(outVar) + "\n"
+                + ":local out \"\"\n"
+                + locals
+                + body
+                + ":set " + outVar + " $out\n";
+    }
+
+    /** Size of the generated source in bytes. */
+    public int sourceBytes() {
+        return source("mkjob0000000000000000").getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /* =========================
+       ===== RUN ===============
+       ========================= */
+
+    public static final class Result {
+        private final List<String> output;
+        private final long elapsedMs;
+
+        Result(List<String> output, long elapsedMs) {
+            this.output = output;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /** Lines emitted by the script, in order. */
+        public List<String> getOutput() { return output; }
+
+        public long getElapsedMs() { return elapsedMs; }
+    }
+
+    public Result run(MkClient client) throws IOException {
+        return run(client, 0);
+    }
+
+    /**
+     * Uploads, runs and removes the script.
+     * @param timeoutMs deadline per command (0 = socket timeout only); the
+     *                  run command waits for the whole script
+     * @throws IllegalArgumentException if the source exceeds the size limit
+     */
+    public Result run(MkClient client, long timeoutMs) throws IOException {
+        String name = "mkjob" + Long.toHexString(RANDOM.nextLong() & Long.MAX_VALUE);
+        String src = source(name);
+        int bytes = src.getBytes(StandardCharsets.UTF_8).length;
+        if (bytes > maxSourceBytes) {
+            throw new IllegalArgumentException("Script is " + bytes + " bytes, limit " + maxSourceBytes);
+        }
+
+        long start = System.nanoTime();
+        MkClient.MkResult add = client.execute(timeoutMs, "/system/script/add", "=name=" + name, "=source=" + src);
+        if (add.isError()) throw new IOException("Script upload failed: " + add.getMessage());
+        // the add returns the new ".id"; run and remove address the script by it
+        final String id = add.getRet();
+        if (id == null || id.isEmpty()) {
+            client.execute(timeoutMs, "/system/script/remove", "=numbers=" + name);
+            throw new IOException("Script upload returned no .id");
+        }
+
+        IOException failure = null;
+        try {
+            MkClient.MkResult run = client.execute(timeoutMs, "/system/script/run", "=.id=" + id);
+            if (run.isError()) throw new IOException("Script failed: " + run.getMessage());
+
+            MkClient.MkResult env = client.execute(timeoutMs, "/system/script/environment/print", "?name=" + name);
+            if (env.isError()) throw new IOException("Script output lost: " + env.getMessage());
+
+            String value = env.getRecords().isEmpty() ? null : env.getRecords().get(0).get("value");
+            return new Result(lines(value), (System.nanoTime() - start) / 1_000_000L);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            // both removals in one pipelined exchange; a missing item is fine
+            try {
+                client.executeBatch(Arrays.asList(ENV_REMOVE, SCRIPT_REMOVE),
+                        Arrays.asList(new String[]{name}, new String[]{id}), 2);
+            } catch (IOException e) {
+                if (failure == null) throw e;
+            }
+        }
+    }
+
+    /** Runs jobs one after another and concatenates their output. */
+    public static Result runAll(MkClient client, List<ScriptJob> jobs, long timeoutMs) throws IOException {
+        List<String> out = new ArrayList<>();
+        long ms = 0;
+        for (ScriptJob job : jobs) {
+            Result r = job.run(client, timeoutMs);
+            out.addAll(r.getOutput());
+            ms += r.getElapsedMs();
+        }
+        return new Result(out, ms);
+    }
+
+    private static List<String> lines(String value) {
+        if (value == null || value.isEmpty()) return Collections.emptyList();
+        List<String> out = new ArrayList<>(Arrays.asList(value.split("\n")));
+        if (!out.isEmpty() && out.get(out.size() - 1).isEmpty()) out.remove(out.size() - 1);
+        return out;
+    }
+
+    /* =========================
+       ===== READY-MADE JOBS ===
+       ========================= */
+
+    /**
+     * One loop per chunk of rows: each job declares ":local rows {...}"
+     * and runs loopBody with $row bound to one row. Rows are split so no
+     * job exceeds MAX_SOURCE_BYTES.
+     */
+    public static List<ScriptJob> forEach(List<String[]> rows, String loopBody) {
+        String head = ":foreach row in=$rows do={\n" + loopBody + "\n}";
+        int fixed = new ScriptJob().line(head).sourceBytes() + 32;
+
+        List<ScriptJob> jobs = new ArrayList<>();
+        List<String[]> chunk = new ArrayList<>();
+        int size = fixed;
+        for (String[] row : rows) {
+            int rowBytes = array(Collections.singletonList(row)).getBytes(StandardCharsets.UTF_8).length;
+            if (fixed + rowBytes > MAX_SOURCE_BYTES) {
+                throw new IllegalArgumentException("Row too large for one script: " + row[0]);
+            }
+            if (!chunk.isEmpty() && size + rowBytes > MAX_SOURCE_BYTES) {
+                jobs.add(new ScriptJob().setArray("rows", chunk).line(head));
+                chunk = new ArrayList<>();
+                size = fixed;
+            }
+            chunk.add(row);
+            size += rowBytes;
+        }
+        if (!chunk.isEmpty()) jobs.add(new ScriptJob().setArray("rows", chunk).line(head));
+        return jobs;
+    }
+
+    /** Removes hotspot users by name. Output: names that did not exist. */
+    public static List<ScriptJob> removeUsers(List<String> names) {
+        List<String[]> rows = new ArrayList<>(names.size());
+        for (String n : names) rows.add(new String[]{n});
+        return forEach(rows,
+                ":local id [/ip hotspot user find where name=($row->0)]\n"
+                        + ":if ([:len $id] > 0) do={ /ip hotspot user remove $id } "
+                        + "else={ :set out ($out . ($row->0) . \"\\n\") }");
+    }
+
+    /** Sets passwords, one {name, password} per row. Output: names that did not exist. */
+    public static List<ScriptJob> setPasswords(Map<String, String> passwords) {
+        List<String[]> rows = new ArrayList<>(passwords.size());
+        for (Map.Entry<String, String> e : passwords.entrySet()) rows.add(new String[]{e.getKey(), e.getValue()});
+        return forEach(rows,
+                ":local id [/ip hotspot user find where name=($row->0)]\n"
+                        + ":if ([:len $id] > 0) do={ /ip hotspot user set $id password=($row->1) } "
+                        + "else={ :set out ($out . ($row->0) . \"\\n\") }");
+    }
+
+    /** Removes users whose uptime reached their limit-uptime. Output: removed names. */
+    public static ScriptJob removeExpiredUsers() {
+        return new ScriptJob()
+                .line(":foreach u in=[/ip hotspot user find where limit-uptime>0s] do={")
+                .line("  :if ([/ip hotspot user get $u uptime] >= [/ip hotspot user get $u limit-uptime]) do={")
+                .line("    :set out ($out . [/ip hotspot user get $u name] . \"\\n\")")
+                .line("    /ip hotspot user remove $u")
+                .line("  }")
+                .line("}");
+    }
+
+    /* =========================
+       ===== ESCAPING ==========
+       ========================= */
+
+    /**
+     * RouterOS string literal. Quotes, backslashes and "$" (variable
+     * substitution) are escaped, control and non-ASCII bytes go out as
+     * \XX hex, so no value can end the string or inject code.
+     */
+    public static String quote(String value) {
+        byte[] b = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(b.length + 2).append('"');
+        for (byte x : b) {
+            int c = x & 0xff;
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '$': sb.append("\\$"); break;
+                case '?': sb.append("\\?"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c >= 0x7f) {
+                        sb.append('\\').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                                .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+                    } else {
+                        sb.append((char) c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String array(List<String[]> rows) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) sb.append(';');
+            sb.append('{');
+            String[] row = rows.get(i);
+            for (int j = 0; j < row.length; j++) {
+                if (j > 0) sb.append(';');
+                sb.append(quote(row[j]));
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String identifier(String name) {
+        if (name == null || !name.matches("[A-Za-z][A-Za-z0-9]*")) {
+            throw new IllegalArgumentException("Bad script variable name: " + name);
+        }
+        return name;
+    }
+}
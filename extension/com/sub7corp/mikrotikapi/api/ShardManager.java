@@ -0,0 +1,239 @@
+package com.sub7corp.mikrotikapi.api;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
+import com.sub7corp.mikrotikapi.util.HashRing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spreads hotspot users over several routers by consistent hashing on the
+ * user name.
+ *
+ * Per-user operations go straight to the owning router: one lookup on
+ * the ring, no broadcast. Routers are registered under a stable id (e.g.
+ * the host), so a reconnect with a new MkClient keeps the placement.
+ * After adding a router, rebalance() moves only the users whose owner
+ * changed; to take one out, drain() it first, then removeRouter().
+ */
+public class ShardManager {
+
+    // Commands in flight per router while moving users
+    private static final int MOVE_WINDOW = 32;
+
+    // Counters and runtime state that can't be written back on add
+    private static final String[] READ_ONLY = {
+            ".id", "uptime", "bytes-in", "bytes-out", "packets-in", "packets-out", "dynamic", "default"
+    };
+
+    private static final MkTemplate USER_REMOVE = MkClient.prepare("/ip/hotspot/user/remove", ".id");
+
+    private final Map<String, MkClient> clients = new ConcurrentHashMap<>();
+    private volatile HashRing ring = new HashRing();
+
+    /* =========================
+       ===== ROUTERS ===========
+       ========================= */
+
+    /** Adds a router, or swaps its client if the id is already known (placement unchanged). */
+    public synchronized void addRouter(String id, MkClient client) {
+        boolean known = clients.containsKey(id);
+        clients.put(id, client);
+        if (!known) ring = ring.with(id);
+    }
+
+    /** Drops a router from the ring. Its users should be moved first (see drain). */
+    public synchronized void removeRouter(String id) {
+        if (clients.remove(id) != null) ring = ring.without(id);
+    }
+
+    public List<String> getRouters() {
+        return ring.getNodes();
+    }
+
+    /** Router id owning this user. */
+    public String routerFor(String username) {
+        String id = ring.nodeFor(username);
+        if (id == null) throw new IllegalStateException("No routers");
+        return id;
+    }
+
+    public MkClient clientFor(String username) {
+        MkClient c = clients.get(routerFor(username));
+        if (c == null) throw new IllegalStateException("No client for router owning " + username);
+        return c;
+    }
+
+    /** Splits names by owning router, for per-router bulk calls. */
+    public Map<String, List<String>> partition(Iterable<String> usernames) {
+        HashRing r = ring;
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        for (String n : usernames) {
+            out.computeIfAbsent(r.nodeFor(n), k -> new ArrayList<>()).add(n);
+        }
+        return out;
+    }
+
+    /* =========================
+       ===== PER-USER OPS ======
+       ========================= */
+
+    public MkClient.MkResult createUser(String name, String password, String profile, String limitUptime) throws IOException {
+        return clientFor(name).execute(HotspotApi.USER_ADD, name, password, profile, limitUptime);
+    }
+
+    public MkClient.MkResult disableUser(String name) throws IOException {
+        return clientFor(name).execute("/ip/hotspot/user/disable", "=numbers=" + name);
+    }
+
+    public MkClient.MkResult enableUser(String name) throws IOException {
+        return clientFor(name).execute("/ip/hotspot/user/enable", "=numbers=" + name);
+    }
+
+    public MkClient.MkResult removeUser(String name) throws IOException {
+        return clientFor(name).execute("/ip/hotspot/user/remove", "=numbers=" + name);
+    }
+
+    /** Kicks the user's active session on the owning router. */
+    public MkClient.MkResult kickUser(String name) throws IOException {
+        return new ActiveApi(clientFor(name)).kickUser(name);
+    }
+
+    /* =========================
+       ===== REBALANCE =========
+       ========================= */
+
+    /**
+     * Moves every user that sits on a router other than its owner: added
+     * to the owner with its settings, then removed from the old router.
+     * With consistent hashing that is ~1/N of the users after a change.
+     *
+     * @return users moved per "from->to" pair
+     */
+    public Map<String, Integer> rebalance() throws IOException {
+        HashRing r = ring;
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        for (String from : r.getNodes()) moveOff(from, r, moved);
+        return moved;
+    }
+
+    /**
+     * Moves every user off router id to its owner on the ring without id,
+     * so the router can then be removed with removeRouter(). The router
+     * stays on the ring (and keeps serving) until then.
+     *
+     * @return users moved per "from->to" pair
+     */
+    public Map<String, Integer> drain(String id) throws IOException {
+        HashRing r = ring.without(id);
+        if (r.isEmpty()) throw new IllegalStateException("No router left to drain " + id + " into");
+        Map<String, Integer> moved = new LinkedHashMap<>();
+        moveOff(id, r, moved);
+        return moved;
+    }
+
+    /** Moves the users on router from that r places elsewhere. */
+    private void moveOff(String from, HashRing r, Map<String, Integer> moved) throws IOException {
+        MkClient src = clients.get(from);
+        if (src == null) return;
+
+        MkClient.MkResult listed = src.executeLazy("/ip/hotspot/user/print", "=.proplist=.id,name,dynamic");
+        if (listed.isError()) throw new IOException(from + ": " + listed.getMessage());
+
+        Map<String, List<String[]>> byTarget = new LinkedHashMap<>();
+        for (MkRecord rec : listed.getRows()) {
+            String name = rec.get("name");
+            if (name == null || rec.valueEquals("dynamic", "true")) continue;
+            String to = r.nodeFor(name);
+            if (!to.equals(from)) byTarget.computeIfAbsent(to, k -> new ArrayList<>()).add(new String[]{name});
+        }
+
+        for (Map.Entry<String, List<String[]>> e : byTarget.entrySet()) {
+            int n = move(src, clients.get(e.getKey()), e.getValue());
+            if (n > 0) moved.put(from + "->" + e.getKey(), n);
+        }
+    }
+
+    /**
+     * Copies the named users from src to dst, then removes the copied ones
+     * from src. A name dst already has is only removed from src when dst's
+     * user has the same settings (an earlier, interrupted move); a
+     * different user with that name is a conflict and both are left alone.
+     */
+    private static int move(MkClient src, MkClient dst, List<String[]> names) throws IOException {
+        if (dst == null || names.isEmpty()) return 0;
+
+        MkClient.MkResult[] rows = src.executeBatch(
+                MkClient.prepare("/ip/hotspot/user/print", "?name"), names, MOVE_WINDOW);
+
+        // one add template per distinct field set, rows in the same order
+        List<MkTemplate> templates = new ArrayList<>();
+        List<String[]> adds = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<HashMap<String, String>> copied = new ArrayList<>();
+        Map<String, MkTemplate> byShape = new HashMap<>();
+        for (MkClient.MkResult res : rows) {
+            if (res.isError() || res.getRecords().isEmpty()) continue;
+            HashMap<String, String> row = res.getRecords().get(0);
+            String id = row.get(".id");
+            for (String k : READ_ONLY) row.remove(k);
+
+            String[] keys = row.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            String shape = String.join(",", keys);
+            MkTemplate t = byShape.get(shape);
+            if (t == null) {
+                t = MkClient.prepare("/ip/hotspot/user/add", keys);
+                byShape.put(shape, t);
+            }
+            String[] values = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) values[i] = row.get(keys[i]);
+            templates.add(t);
+            adds.add(values);
+            ids.add(id);
+            copied.add(row);
+        }
+
+        MkClient.MkResult[] added = dst.executeBatch(templates, adds, MOVE_WINDOW);
+        List<String[]> remove = new ArrayList<>();
+        List<Integer> clashes = new ArrayList<>();
+        for (int i = 0; i < added.length; i++) {
+            if (added[i].isSuccess()) {
+                remove.add(new String[]{ids.get(i)});
+            } else if (String.valueOf(added[i].getMessage()).contains("already have")) {
+                clashes.add(i);
+            }
+        }
+
+        // "already have": only our own earlier copy may release the source
+        if (!clashes.isEmpty()) {
+            List<String[]> clashNames = new ArrayList<>();
+            for (int i : clashes) clashNames.add(new String[]{copied.get(i).get("name")});
+            MkClient.MkResult[] there = dst.executeBatch(
+                    MkClient.prepare("/ip/hotspot/user/print", "?name"), clashNames, MOVE_WINDOW);
+            for (int k = 0; k < there.length; k++) {
+                if (there[k].isError() || there[k].getRecords().isEmpty()) continue;
+                int i = clashes.get(k);
+                if (sameSettings(copied.get(i), there[k].getRecords().get(0))) remove.add(new String[]{ids.get(i)});
+            }
+        }
+        src.executeBatch(USER_REMOVE, remove, MOVE_WINDOW);
+        return remove.size();
+    }
+
+    /** True if dst has every writable field of the source row with the same value. */
+    private static boolean sameSettings(Map<String, String> source, Map<String, String> dst) {
+        for (Map.Entry<String, String> e : source.entrySet()) {
+            if (!e.getValue().equals(dst.get(e.getKey()))) return false;
+        }
+        return true;
+    }
+}
@@ -3,6 +3,7 @@ package com.sub7corp.mikrotikapi.api;
 import com.sub7corp.mikrotikapi.core.MkClient;
 import com.sub7corp.mikrotikapi.model.ApiError;
 import com.sub7corp.mikrotikapi.model.ApiResult;
+import com.sub7corp.mikrotikapi.model.SystemResourceView;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -73,6 +74,20 @@ public class SystemApi {
         }
     }
 
+    // =========================
+    // SYSTEM RESOURCE (TYPED)
+    // =========================
+
+    /** Same as getResources, data is a SystemResourceView. */
+    public ApiResult getResourceView() {
+        ApiResult res = getResources();
+        if (!res.isSuccess()) return res;
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> data = (Map<String, String>) res.getData();
+        return ApiResult.success(new SystemResourceView(data));
+    }
+
     // =========================
     // SYSTEM CLOCK
     // =========================
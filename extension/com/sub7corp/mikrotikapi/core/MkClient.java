@@ -1,9 +1,18 @@
 package com.sub7corp.mikrotikapi.core;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * High-level MikroTik API client
@@ -13,6 +22,9 @@ public class MkClient {
 
     private final MkConnection connection;
 
+    // Every command carries ".tag=N"; replies echo it back
+    private final AtomicInteger tags = new AtomicInteger();
+
     public MkClient(MkConnection connection) {
         this.connection = connection;
     }
@@ -22,12 +34,409 @@ public class MkClient {
        ========================= */
 
     public MkResult execute(String path, String... params) throws IOException {
+        return execute(0, path, params);
+    }
+
+    /**
+     * Like execute(path, params), but gives the command its own deadline
+     * instead of relying on the socket timeout. If no reply arrives in
+     * time the command is cancelled on the router ("/cancel =tag=N") and
+     * its leftover replies are drained, so the connection stays usable.
+     *
+     * @param timeoutMs deadline for the whole command; 0 = socket timeout only
+     * @throws MkTimeoutException when the deadline passes
+     */
+    public MkResult execute(long timeoutMs, String path, String... params) throws IOException {
+        return send(timeoutMs, path, null, params, false);
+    }
+
+    /**
+     * Like execute, but rows come back as MkRecord (getRows()) instead of
+     * HashMaps: fields stay as raw bytes and are decoded on access. For
+     * large prints where only a few columns are read.
+     */
+    public MkResult executeLazy(String path, String... params) throws IOException {
+        return executeLazy(0, path, params);
+    }
+
+    public MkResult executeLazy(long timeoutMs, String path, String... params) throws IOException {
+        return send(timeoutMs, path, null, params, true);
+    }
+
+    /* =========================
+       ===== TEMPLATES =========
+       ========================= */
+
+    /**
+     * Prepares a reusable command: path and keys are encoded once, each
+     * call only encodes the values.
+     * e.g. prepare("/ip/hotspot/user/add", "name", "password", "profile")
+     */
+    public static MkTemplate prepare(String path, String... keys) {
+        return new MkTemplate(path, keys);
+    }
+
+    /** Runs a template; values follow the template keys, null = leave out. */
+    public MkResult execute(MkTemplate template, String... values) throws IOException {
+        return execute(0, template, values);
+    }
+
+    public MkResult execute(long timeoutMs, MkTemplate template, String... values) throws IOException {
+        return send(timeoutMs, template.getPath(), template, values, false);
+    }
+
+    /**
+     * Runs a template once per row, pipelined: up to window commands are
+     * on the wire at a time and replies are matched back by tag, so a
+     * batch costs about one round trip per window instead of per row.
+     *
+     * @return one result per row, in row order
+     */
+    public MkResult[] executeBatch(MkTemplate template, List<String[]> rows, int window) throws IOException {
+        return batch(template, null, rows, window);
+    }
+
+    /**
+     * Mixed batch: row i runs templates.get(i). Commands are still
+     * pipelined, so rows that must run in order (e.g. add then disable
+     * of the same user) belong in separate batches.
+     */
+    public MkResult[] executeBatch(List<MkTemplate> templates, List<String[]> rows, int window) throws IOException {
+        if (templates.size() != rows.size()) {
+            throw new IllegalArgumentException("templates and rows differ in size");
+        }
+        return batch(null, templates, rows, window);
+    }
+
+    /* =========================
+       ===== MULTI-ID ==========
+       ========================= */
+
+    // Longest "=.id=" list per command, in chars (~250 ids)
+    public static final int MAX_ID_LIST = 2048;
+
+    // Id-list commands in flight at once
+    private static final int ID_WINDOW = 8;
+
+    /**
+     * One projected print (".id" + key) resolving many values of key at
+     * once, e.g. resolveIds("/ip/hotspot/active/print", "user", names).
+     *
+     * @return value -> ids, in print order; values not found are absent
+     */
+    public Map<String, List<String>> resolveIds(String printPath, String key, Collection<String> values) throws IOException {
+        Set<String> wanted = new HashSet<>(values);
+        MkResult listed = executeLazy(printPath, "=.proplist=.id," + key);
+        if (listed.isError()) throw new IOException(printPath + ": " + listed.getMessage());
+
+        Map<String, List<String>> ids = new LinkedHashMap<>();
+        for (MkRecord r : listed.getRows()) {
+            String v = r.get(key);
+            String id = r.get(".id");
+            if (v == null || id == null || !wanted.contains(v)) continue;
+            ids.computeIfAbsent(v, k -> new ArrayList<>(1)).add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Runs path (remove / enable / disable ...) on many ids with as few
+     * commands as possible: ids are joined into "=.id=*1,*2,..." lists of
+     * at most MAX_ID_LIST chars and the lists are pipelined. RouterOS
+     * rejects a whole list when one id is gone, so a rejected list is
+     * retried id by id and only the bad ids fail.
+     *
+     * @return id -> error message for ids that failed; empty if all ok
+     */
+    public Map<String, String> executeForIds(String path, Collection<String> ids) throws IOException {
+        MkTemplate template = prepare(path, ".id");
+        List<String[]> lists = new ArrayList<>();
+        List<List<String>> chunks = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder();
+        List<String> chunk = new ArrayList<>();
+        for (String id : ids) {
+            if (sb.length() > 0 && sb.length() + 1 + id.length() > MAX_ID_LIST) {
+                lists.add(new String[]{sb.toString()});
+                chunks.add(chunk);
+                sb.setLength(0);
+                chunk = new ArrayList<>();
+            }
+            if (sb.length() > 0) sb.append(',');
+            sb.append(id);
+            chunk.add(id);
+        }
+        if (!chunk.isEmpty()) {
+            lists.add(new String[]{sb.toString()});
+            chunks.add(chunk);
+        }
+
+        List<String[]> retry = new ArrayList<>();
+        MkResult[] res = executeBatch(template, lists, ID_WINDOW);
+        for (int i = 0; i < res.length; i++) {
+            if (res[i].isSuccess()) continue;
+            for (String id : chunks.get(i)) retry.add(new String[]{id});
+        }
+
+        Map<String, String> failed = new LinkedHashMap<>();
+        if (retry.isEmpty()) return failed;
+        // the router checks the whole list before acting, so nothing of a
+        // rejected list was applied
+        res = executeBatch(template, retry, ID_WINDOW * 4);
+        for (int i = 0; i < res.length; i++) {
+            if (!res[i].isSuccess()) failed.put(retry.get(i)[0], res[i].getMessage());
+        }
+        return failed;
+    }
+
+    private MkResult[] batch(MkTemplate single, List<MkTemplate> perRow, List<String[]> rows, int window) throws IOException {
+        if (!connection.isConnected()) {
+            throw new IOException("Not connected to MikroTik");
+        }
+        final String path = single != null ? single.getPath() : rows.isEmpty() ? "" : perRow.get(0).getPath();
+        final int n = rows.size();
+        final MkResult[] results = new MkResult[n];
+        if (n == 0) return results;
+        window = Math.max(1, window);
+        final long queuedAt = System.nanoTime();
+
+        MkMetrics metrics = connection.getMetrics();
+        metrics.commandStarted();
+        try {
+            synchronized (connection) {
+                metrics.recordQueueWait(path, System.nanoTime() - queuedAt);
+
+                // the batch owns tags first .. first + n - 1
+                final int first = tags.getAndAdd(n) + 1;
+                final long[] sentAt = new long[n];
+                int sent = 0;
+                int done = 0;
+
+                while (done < n) {
+                    if (sent < n && sent - done < window) {
+                        // top up the window with one write
+                        MkSentenceEncoder e = connection.encoder().reset();
+                        long now = System.nanoTime();
+                        int k = 0;
+                        while (sent < n && sent - done < window) {
+                            MkTemplate t = single != null ? single : perRow.get(sent);
+                            t.encode(e, rows.get(sent)).word(TAG_PREFIX, first + sent).end();
+                            results[sent] = new MkResult();
+                            sentAt[sent] = now;
+                            sent++;
+                            k++;
+                        }
+                        connection.writeEncoded(e, k);
+                    }
+
+                    String sentence = connection.readSentence();
+                    if (sentence.startsWith("!fatal")) {
+                        connection.disconnect();
+                        throw new IOException("Router closed the session: " + extractMessage(sentence));
+                    }
+
+                    int idx = indexOf(tagOf(sentence), first, sent);
+                    if (idx < 0) continue;
+                    MkResult result = results[idx];
+
+                    if (sentence.startsWith("!trap")) {
+                        result.setError(true);
+                        result.setMessage(extractMessage(sentence));
+                    } else if (sentence.startsWith("!re")) {
+                        result.addRecord(parseRecord(sentence, connection.getInternPool()));
+                    } else if (sentence.startsWith("!done")) {
+                        result.setSuccess(!result.isError());
+                        result.setRet(retOf(sentence));
+                        String rowPath = single != null ? path : perRow.get(idx).getPath();
+                        metrics.recordRoundTrip(rowPath, System.nanoTime() - sentAt[idx]);
+                        if (result.isError()) metrics.trap(rowPath);
+                        done++;
+                    }
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            metrics.failure(path);
+            throw e;
+        } finally {
+            metrics.commandFinished();
+        }
+    }
+
+    /* =========================
+       ===== STREAMING =========
+       ========================= */
+
+    /** Receives the replies of streaming commands as they arrive. */
+    public interface StreamListener {
+        /**
+         * One "!re" of command index.
+         * @return false to stop that command early (it is cancelled)
+         */
+        boolean onRecord(int index, MkRecord record);
+
+        /** Command index finished; error is null on success or early stop. */
+        void onDone(int index, String error);
+    }
+
+    /**
+     * Runs commands that keep replying (e.g. /ping, monitor) at the same
+     * time on this connection, handing each reply to the listener as soon
+     * as it is read instead of collecting the whole result. Each command
+     * is {path, params...}. Blocks until every command is done; the
+     * connection is held for the whole time.
+     */
+    public void stream(List<String[]> commands, StreamListener listener) throws IOException {
         if (!connection.isConnected()) {
             throw new IOException("Not connected to MikroTik");
         }
+        final int n = commands.size();
+        if (n == 0) return;
+        final String path = commands.get(0)[0];
+        final long queuedAt = System.nanoTime();
+
+        MkMetrics metrics = connection.getMetrics();
+        metrics.commandStarted();
+        try {
+            synchronized (connection) {
+                long start = System.nanoTime();
+                metrics.recordQueueWait(path, start - queuedAt);
+
+                final int first = tags.getAndAdd(n) + 1;
+                MkSentenceEncoder e = connection.encoder().reset();
+                for (int i = 0; i < n; i++) {
+                    String[] c = commands.get(i);
+                    encode(e, c[0], Arrays.copyOfRange(c, 1, c.length)).word(TAG_PREFIX, first + i).end();
+                }
+                connection.writeEncoded(e, n);
+
+                boolean[] cancelled = new boolean[n];
+                boolean[] finished = new boolean[n];
+                String[] errors = new String[n];
+                int done = 0;
+                while (done < n) {
+                    MkRecord rec = connection.readRecord();
+                    if (MkRecord.FATAL.equals(rec.getType())) {
+                        connection.disconnect();
+                        throw new IOException("Router closed the session");
+                    }
+                    int idx = rec.getTag() - first;
+                    if (idx < 0 || idx >= n || finished[idx]) continue;
+
+                    if (MkRecord.RE.equals(rec.getType())) {
+                        if (!cancelled[idx] && !listener.onRecord(idx, rec)) {
+                            cancelled[idx] = true;
+                            // the cancel's own !done carries a tag outside our range
+                            connection.writeEncoded(connection.encoder().reset()
+                                    .raw(CANCEL)
+                                    .word(CANCEL_TAG, first + idx)
+                                    .word(TAG_PREFIX, tags.incrementAndGet())
+                                    .end());
+                        }
+                    } else if (MkRecord.TRAP.equals(rec.getType())) {
+                        // an early stop comes back as "interrupted"
+                        if (!cancelled[idx]) errors[idx] = rec.get("message");
+                    } else if (MkRecord.DONE.equals(rec.getType())) {
+                        finished[idx] = true;
+                        done++;
+                        String p = commands.get(idx)[0];
+                        metrics.recordRoundTrip(p, System.nanoTime() - start);
+                        if (errors[idx] != null) metrics.trap(p);
+                        listener.onDone(idx, errors[idx]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            metrics.failure(path);
+            throw e;
+        } finally {
+            metrics.commandFinished();
+        }
+    }
 
-        List<String> words = new ArrayList<>();
-        words.add(path);
+    /** Row index for a reply tag inside a batch, or -1 if it is not ours. */
+    private static int indexOf(String tag, int first, int sent) {
+        if (tag == null) return -1;
+        try {
+            int idx = Integer.parseInt(tag) - first;
+            return idx >= 0 && idx < sent ? idx : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /* =========================
+       ===== SEND ==============
+       ========================= */
+
+    /** Shared execute path: template != null encodes values, else path + params. */
+    private MkResult send(long timeoutMs, String path, MkTemplate template, String[] params, boolean lazy) throws IOException {
+        if (!connection.isConnected()) {
+            throw new IOException("Not connected to MikroTik");
+        }
+        final long queuedAt = System.nanoTime();
+
+        MkMetrics metrics = connection.getMetrics();
+        metrics.commandStarted();
+        try {
+            // One command on the wire at a time: replies are read in order.
+            synchronized (connection) {
+                long start = System.nanoTime();
+                metrics.recordQueueWait(path, start - queuedAt);
+
+                int tag = tags.incrementAndGet();
+                MkSentenceEncoder e = template != null
+                        ? template.encode(connection.encoder().reset(), params)
+                        : encode(connection.encoder().reset(), path, params);
+                connection.writeEncoded(e.word(TAG_PREFIX, tag).end());
+
+                MkResult result;
+                try {
+                    // the deadline counts from the moment we got the connection
+                    long deadline = timeoutMs > 0 ? start + timeoutMs * 1_000_000L : 0;
+                    result = lazy
+                            ? readLazyResult(tag, deadline)
+                            : readResult(path, metrics, tag, deadline);
+                } catch (SocketTimeoutException timeout) {
+                    if (timeoutMs <= 0) throw timeout;
+                    metrics.timeout(path);
+                    cancelAndDrain(tag);
+                    throw new MkTimeoutException(path, timeoutMs);
+                }
+
+                metrics.recordRoundTrip(path, System.nanoTime() - start);
+                if (result.isError()) metrics.trap(path);
+                return result;
+            }
+        } catch (MkTimeoutException e) {
+            throw e; // already counted by metrics.timeout()
+        } catch (IOException e) {
+            metrics.failure(path);
+            throw e;
+        } finally {
+            metrics.commandFinished();
+        }
+    }
+
+    public MkMetrics getMetrics() {
+        return connection.getMetrics();
+    }
+
+    private static final byte[] EQ = {'='};
+    private static final byte[] TAG_PREFIX = MkSentenceEncoder.utf8(".tag=");
+    private static final byte[] CANCEL_TAG = MkSentenceEncoder.utf8("=tag=");
+    private static final byte[] CANCEL = MkSentenceEncoder.encodeWord("/cancel");
+
+    // Upper bound for draining a cancelled command
+    private static final long DRAIN_MS = 2000;
+
+    /**
+     * Encodes path + params straight into the connection encoder, without
+     * building intermediate word strings. The terminator is left to the
+     * caller so it can append the tag.
+     */
+    static MkSentenceEncoder encode(MkSentenceEncoder e, String path, String... params) {
+        e.word(path);
 
         if (params != null) {
             for (String p : params) {
@@ -35,56 +444,183 @@ public class MkClient {
                 p = p.trim();
                 if (p.isEmpty()) continue;
 
-                // MkConnection expects each property like "=key=value"
-                if (!p.startsWith("=") && !p.startsWith(".")) {
-                    words.add("=" + p);
-                } else if (p.startsWith(".")) {
-                    // allow ".id=*X" (we will convert to "=.id=*X" style)
-                    words.add("=" + p);
+                // queries ("?name=foo", "?#|") go on the wire as-is
+                if (p.startsWith("?")) {
+                    e.word(p);
+                } else if (!p.startsWith("=")) {
+                    // MkConnection expects each property like "=key=value";
+                    // ".id=*X" becomes "=.id=*X" the same way
+                    e.word(EQ, p);
                 } else {
-                    words.add(p);
+                    e.word(p);
                 }
             }
         }
-
-        connection.writeSentence(words.toArray(new String[0]));
-        return readResult();
+        return e;
     }
 
     /* =========================
        ===== READ RESULT =======
        ========================= */
 
-    private MkResult readResult() throws IOException {
+    /**
+     * @param tag replies with another tag are skipped (left over from a
+     *            cancelled command)
+     * @param deadline System.nanoTime() limit; 0 = socket timeout only
+     */
+    private MkResult readResult(String path, MkMetrics metrics, int tag, long deadline) throws IOException {
         MkResult result = new MkResult();
+        long parseNanos = 0;
+        String expected = Integer.toString(tag);
 
         String sentence;
-        while ((sentence = connection.readSentence()) != null) {
+        while ((sentence = next(deadline)) != null) {
+
+            String replyTag = tagOf(sentence);
+            if (replyTag != null && !replyTag.equals(expected)) continue;
+
+            // first word is the reply type; RouterOS sends !done after !trap
+            if (sentence.startsWith("!trap")) {
+                result.setError(true);
+                result.setMessage(extractMessage(sentence));
+                continue;
+            }
 
-            if (sentence.contains("!trap")) {
+            if (sentence.startsWith("!fatal")) {
                 result.setError(true);
                 result.setMessage(extractMessage(sentence));
+                connection.disconnect();
                 break;
             }
 
-            if (sentence.contains("!re")) {
-                result.addRecord(parseRecord(sentence));
+            if (sentence.startsWith("!re")) {
+                long t = System.nanoTime();
+                result.addRecord(parseRecord(sentence, connection.getInternPool()));
+                parseNanos += System.nanoTime() - t;
             }
 
-            if (sentence.contains("!done")) {
-                result.setSuccess(true);
+            if (sentence.startsWith("!done")) {
+                result.setSuccess(!result.isError());
+                result.setRet(retOf(sentence));
                 break;
             }
         }
 
+        metrics.recordParse(path, parseNanos);
+        return result;
+    }
+
+    /**
+     * readResult over MkRecord: no per-field decoding while reading. The
+     * only parse work is indexing, done inside the read, so no separate
+     * parse time is recorded.
+     */
+    private MkResult readLazyResult(int tag, long deadline) throws IOException {
+        MkResult result = new MkResult();
+
+        while (true) {
+            MkRecord rec = deadline > 0 ? connection.readRecord(deadline) : connection.readRecord();
+            if (rec.getTag() >= 0 && rec.getTag() != tag) continue;
+
+            String type = rec.getType();
+            if (type == MkRecord.RE) {
+                result.addRow(rec);
+            } else if (type == MkRecord.TRAP) {
+                result.setError(true);
+                result.setMessage(messageOf(rec));
+            } else if (type == MkRecord.FATAL) {
+                result.setError(true);
+                result.setMessage(messageOf(rec));
+                connection.disconnect();
+                break;
+            } else if (type == MkRecord.DONE) {
+                result.setSuccess(!result.isError());
+                result.setRet(rec.get("ret"));
+                break;
+            }
+        }
         return result;
     }
 
+    private static String messageOf(MkRecord rec) {
+        String m = rec.get("message");
+        return m != null ? m : "Unknown MikroTik API error";
+    }
+
+    private String next(long deadline) throws IOException {
+        return deadline > 0 ? connection.readSentence(deadline) : connection.readSentence();
+    }
+
+    /* =========================
+       ===== CANCEL ============
+       ========================= */
+
+    /**
+     * Cancels a running command and reads until both it and the /cancel
+     * itself are done. If that does not finish within DRAIN_MS the stream
+     * can no longer be trusted and the connection is marked dead.
+     * Caller holds the connection lock.
+     */
+    private void cancelAndDrain(int tag) throws IOException {
+        int cancelTag = tags.incrementAndGet();
+        String target = Integer.toString(tag);
+        String own = Integer.toString(cancelTag);
+
+        try {
+            connection.writeEncoded(connection.encoder().reset()
+                    .raw(CANCEL)
+                    .word(CANCEL_TAG, tag)
+                    .word(TAG_PREFIX, cancelTag)
+                    .end());
+
+            boolean targetDone = false;
+            boolean cancelDone = false;
+            long deadline = System.nanoTime() + DRAIN_MS * 1_000_000L;
+            while (!targetDone || !cancelDone) {
+                String sentence = connection.readSentence(deadline);
+                if (sentence.startsWith("!fatal")) {
+                    throw new IOException("Router closed the session: " + extractMessage(sentence));
+                }
+                if (!sentence.startsWith("!done")) continue;
+
+                String replyTag = tagOf(sentence);
+                if (target.equals(replyTag)) targetDone = true;
+                else if (own.equals(replyTag)) cancelDone = true;
+            }
+        } catch (IOException e) {
+            connection.markDead();
+            throw new IOException("Could not cancel timed out command: " + e.getMessage(), e);
+        }
+    }
+
+    /** Value of the ".tag=" word, or null if the sentence has none. */
+    static String tagOf(String sentence) {
+        int i = sentence.indexOf("\n.tag=");
+        if (i < 0) return null;
+        i += 6;
+        int end = sentence.indexOf('\n', i);
+        return sentence.substring(i, end < 0 ? sentence.length() : end);
+    }
+
+    /** "=ret=" of a !done sentence (the new ".id" after an add), or null. */
+    static String retOf(String sentence) {
+        int i = sentence.indexOf("\n=ret=");
+        if (i < 0) return null;
+        i += 6;
+        int end = sentence.indexOf('\n', i);
+        return sentence.substring(i, end < 0 ? sentence.length() : end);
+    }
+
     /* =========================
        ===== PARSING ===========
        ========================= */
 
-    private HashMap<String, String> parseRecord(String sentence) {
+    static HashMap<String, String> parseRecord(String sentence) {
+        return parseRecord(sentence, null);
+    }
+
+    /** @param pool swaps keys and designated values for shared instances; may be null */
+    static HashMap<String, String> parseRecord(String sentence, MkInternPool pool) {
         HashMap<String, String> map = new HashMap<>();
         String[] lines = sentence.split("\n");
 
@@ -95,6 +631,10 @@ public class MkClient {
                 if (idx > 1) {
                     String key = line.substring(1, idx);
                     String value = line.substring(idx + 1);
+                    if (pool != null) {
+                        key = pool.key(key);
+                        value = pool.value(key, value);
+                    }
                     map.put(key, value);
                 }
             }
@@ -122,13 +662,15 @@ public class MkClient {
         private boolean success = false;
         private boolean error = false;
         private String message = "";
+        private String ret;
         private final List<HashMap<String, String>> records = new ArrayList<>();
+        private List<MkRecord> rows;
 
         public boolean isSuccess() {
             return success;
         }
 
-        private void setSuccess(boolean success) {
+        void setSuccess(boolean success) {
             this.success = success;
         }
 
@@ -136,7 +678,7 @@ public class MkClient {
             return error;
         }
 
-        private void setError(boolean error) {
+        void setError(boolean error) {
             this.error = error;
         }
 
@@ -144,16 +686,35 @@ public class MkClient {
             return message;
         }
 
-        private void setMessage(String message) {
+        void setMessage(String message) {
             this.message = message;
         }
 
+        /** "ret" of the !done reply (e.g. the ".id" an add created), or null. */
+        public String getRet() {
+            return ret;
+        }
+
+        void setRet(String ret) {
+            this.ret = ret;
+        }
+
         public List<HashMap<String, String>> getRecords() {
             return records;
         }
 
-        private void addRecord(HashMap<String, String> record) {
+        void addRecord(HashMap<String, String> record) {
             records.add(record);
         }
+
+        /** Lazy rows from executeLazy; empty for execute. */
+        public List<MkRecord> getRows() {
+            return rows != null ? rows : Collections.<MkRecord>emptyList();
+        }
+
+        void addRow(MkRecord row) {
+            if (rows == null) rows = new ArrayList<>();
+            rows.add(row);
+        }
     }
 }
@@ -0,0 +1,268 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RouterOS API word length codec (single implementation).
+ *
+ * Covers the full range: 1 to 4 byte prefixes plus the 5-byte 0xF0 form.
+ * Prefix bytes 0xF8..0xFF are control bytes and are rejected. Encode and
+ * decode do not allocate.
+ */
+public final class MkCodec {
+
+    /** Largest length the API can carry in a Java int. */
+    public static final int MAX_LENGTH = Integer.MAX_VALUE;
+
+    private MkCodec() {}
+
+    /* =========================
+       ===== ENCODE ============
+       ========================= */
+
+    /** Number of prefix bytes for a length. */
+    public static int lengthSize(int length) {
+        if (length < 0) throw new IllegalArgumentException("Negative word length: " + length);
+        if (length < 0x80) return 1;
+        if (length < 0x4000) return 2;
+        if (length < 0x200000) return 3;
+        if (length < 0x10000000) return 4;
+        return 5;
+    }
+
+    /**
+     * Encodes the prefix into dst at off.
+     * @return bytes written (1..5)
+     */
+    public static int encodeLength(int length, byte[] dst, int off) {
+        switch (lengthSize(length)) {
+            case 1:
+                dst[off] = (byte) length;
+                return 1;
+            case 2:
+                dst[off] = (byte) ((length >> 8) | 0x80);
+                dst[off + 1] = (byte) length;
+                return 2;
+            case 3:
+                dst[off] = (byte) ((length >> 16) | 0xC0);
+                dst[off + 1] = (byte) (length >> 8);
+                dst[off + 2] = (byte) length;
+                return 3;
+            case 4:
+                dst[off] = (byte) ((length >> 24) | 0xE0);
+                dst[off + 1] = (byte) (length >> 16);
+                dst[off + 2] = (byte) (length >> 8);
+                dst[off + 3] = (byte) length;
+                return 4;
+            default:
+                dst[off] = (byte) 0xF0;
+                dst[off + 1] = (byte) (length >> 24);
+                dst[off + 2] = (byte) (length >> 16);
+                dst[off + 3] = (byte) (length >> 8);
+                dst[off + 4] = (byte) length;
+                return 5;
+        }
+    }
+
+    /**
+     * Writes the prefix byte by byte (meant for a buffered stream).
+     * @return bytes written (1..5)
+     */
+    public static int writeLength(OutputStream out, int length) throws IOException {
+        int size = lengthSize(length);
+        switch (size) {
+            case 1:
+                out.write(length);
+                break;
+            case 2:
+                out.write((length >> 8) | 0x80);
+                out.write(length & 0xFF);
+                break;
+            case 3:
+                out.write((length >> 16) | 0xC0);
+                out.write((length >> 8) & 0xFF);
+                out.write(length & 0xFF);
+                break;
+            case 4:
+                out.write((length >> 24) | 0xE0);
+                out.write((length >> 16) & 0xFF);
+                out.write((length >> 8) & 0xFF);
+                out.write(length & 0xFF);
+                break;
+            default:
+                out.write(0xF0);
+                out.write((length >> 24) & 0xFF);
+                out.write((length >> 16) & 0xFF);
+                out.write((length >> 8) & 0xFF);
+                out.write(length & 0xFF);
+        }
+        return size;
+    }
+
+    /* =========================
+       ===== DECODE ============
+       ========================= */
+
+    /**
+     * Reads a length prefix.
+     * @throws EOFException if the stream ends inside the prefix
+     * @throws IOException on a control byte or a length above MAX_LENGTH
+     */
+    public static int readLength(InputStream in) throws IOException {
+        int c = readByte(in);
+
+        if ((c & 0x80) == 0x00) {
+            return c;
+        }
+        if ((c & 0xC0) == 0x80) {
+            return ((c & 0x3F) << 8) | readByte(in);
+        }
+        if ((c & 0xE0) == 0xC0) {
+            return ((c & 0x1F) << 16) | (readByte(in) << 8) | readByte(in);
+        }
+        if ((c & 0xF0) == 0xE0) {
+            return ((c & 0x0F) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+        }
+        if (c == 0xF0) {
+            long len = ((long) readByte(in) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+            if (len > MAX_LENGTH) throw new IOException("Word length out of range: " + len);
+            return (int) len;
+        }
+        throw new IOException("Unsupported control byte in length prefix: 0x" + Integer.toHexString(c));
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Connection closed while reading length");
+        return b;
+    }
+
+    /**
+     * Reads exactly len bytes.
+     * @throws EOFException if the stream ends first
+     */
+    public static void readFully(InputStream in, byte[] buffer, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int r = in.read(buffer, off + total, len - total);
+            if (r < 0) throw new EOFException("Connection closed while reading");
+            total += r;
+        }
+    }
+
+    /**
+     * Decodes a UTF-8 word of the given length in fixed-size chunks, so a
+     * huge word never needs a byte[length] copy. Malformed input is replaced.
+     */
+    public static String readUtf8(InputStream in, int length, byte[] chunk) throws IOException {
+        CharsetDecoder dec = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        StringBuilder sb = new StringBuilder(Math.min(length, 1 << 20));
+        ByteBuffer bb = ByteBuffer.wrap(chunk);
+        CharBuffer cb = CharBuffer.allocate(chunk.length);
+
+        int remaining = length;
+        bb.limit(0);
+        while (remaining > 0) {
+            bb.compact(); // keep a split multi-byte sequence
+            int n = Math.min(bb.remaining(), remaining);
+            readFully(in, chunk, bb.position(), n);
+            bb.position(bb.position() + n);
+            remaining -= n;
+            bb.flip();
+
+            CoderResult cr = dec.decode(bb, cb, remaining == 0);
+            if (cr.isError()) throwCoding(cr);
+            cb.flip();
+            sb.append(cb);
+            cb.clear();
+        }
+        dec.flush(cb);
+        cb.flip();
+        sb.append(cb);
+        return sb.toString();
+    }
+
+    private static void throwCoding(CoderResult cr) throws IOException {
+        try {
+            cr.throwException();
+        } catch (CharacterCodingException e) {
+            throw new IOException("Invalid UTF-8 in word", e);
+        }
+    }
+
+    /* =========================
+       ===== BOUNDED STREAM ====
+       ========================= */
+
+    /**
+     * View over exactly one word body. Reading past the end returns -1;
+     * skipRemaining() drains what the consumer did not read so the
+     * connection stays aligned on the next word.
+     */
+    public static final class WordInputStream extends InputStream {
+
+        private final InputStream in;
+        private int remaining;
+
+        public WordInputStream(InputStream in, int length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        public int remaining() {
+            return remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b < 0) throw new EOFException("Connection closed inside word");
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) throw new EOFException("Connection closed inside word");
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(in.available(), remaining);
+        }
+
+        public void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                long n = in.skip(remaining);
+                if (n <= 0) {
+                    if (in.read() < 0) throw new EOFException("Connection closed inside word");
+                    n = 1;
+                }
+                remaining -= n;
+            }
+        }
+
+        /** Does not close the connection stream; drains the word instead. */
+        @Override
+        public void close() throws IOException {
+            skipRemaining();
+        }
+    }
+}
@@ -3,11 +3,15 @@ package com.sub7corp.mikrotikapi.core;
 import android.util.Log;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 
@@ -29,11 +33,14 @@ public class MkConnection {
     private static final String TAG = "MikrotikAPI";
     private static final boolean DEBUG = true;
 
-    private Socket socket;
+    private volatile Socket socket;
     private BufferedInputStream in;
-    private BufferedOutputStream out;
+    private OutputStream out;
 
-    private boolean connected = false;
+    private volatile boolean connected = false;
+
+    // Last successful read/write, for idle heartbeats
+    private volatile long lastIoNanos = System.nanoTime();
 
     // Timeouts
     private int soTimeoutMs = 5000;
@@ -42,6 +49,40 @@ public class MkConnection {
     // SSL options
     private boolean allowInsecureSSL = false;
 
+    // Wire counters (bytes / sentences); may be shared across reconnects
+    private MkMetrics metrics = new MkMetrics();
+
+    // Word size limits: above the threshold words are streamed, above the max rejected
+    private static final int KEY_SCAN_BYTES = 256;
+    private int largeWordThreshold = 256 * 1024;
+    private int maxWordBytes = 64 * 1024 * 1024;
+    private LargeWordHandler largeWordHandler;
+
+    // Shared Strings for repeated reply values (null = off)
+    private volatile MkInternPool internPool;
+
+    // Reused write buffer (writes are serialized by the connection lock)
+    private final MkSentenceEncoder encoder = new MkSentenceEncoder();
+
+    // Reused read buffers (reads are serialized by the connection lock)
+    private byte[] wordBuf = new byte[512];
+    private final MkRecord.Builder recordBuilder = new MkRecord.Builder();
+    private final byte[] chunkBuf = new byte[8192];
+
+    /**
+     * Receives words above the large-word threshold as a stream instead
+     * of one big array (e.g. write /export output straight to a file).
+     */
+    public interface LargeWordHandler {
+        /**
+         * @param key attribute name ("" if the word is not "=key=value")
+         * @param body the value bytes; unread bytes are skipped afterwards
+         * @param length bytes available in body
+         * @return value kept in the sentence in place of the body (e.g. a file path)
+         */
+        String onLargeWord(String key, InputStream body, int length) throws IOException;
+    }
+
     public void setSoTimeoutMs(int value) {
         this.soTimeoutMs = Math.max(1000, value);
     }
@@ -54,6 +95,37 @@ public class MkConnection {
         this.allowInsecureSSL = value;
     }
 
+    public void setMetrics(MkMetrics metrics) {
+        if (metrics != null) this.metrics = metrics;
+    }
+
+    public MkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Words longer than this are streamed in chunks (min 4 KiB). */
+    public void setLargeWordThreshold(int bytes) {
+        this.largeWordThreshold = Math.max(4096, bytes);
+    }
+
+    /** Words longer than this close the connection with an error. */
+    public void setMaxWordBytes(int bytes) {
+        this.maxWordBytes = Math.max(4096, bytes);
+    }
+
+    public void setLargeWordHandler(LargeWordHandler handler) {
+        this.largeWordHandler = handler;
+    }
+
+    /** Pool for repeated reply values (see MkInternPool); null turns interning off. */
+    public void setInternPool(MkInternPool pool) {
+        this.internPool = pool;
+    }
+
+    public MkInternPool getInternPool() {
+        return internPool;
+    }
+
     public boolean isConnected() {
         return connected;
     }
@@ -83,11 +155,17 @@ public class MkConnection {
 
         // Read timeout for API operations
         socket.setSoTimeout(soTimeoutMs);
+        // Sentences go out in one write; don't let Nagle hold small commands back
+        socket.setTcpNoDelay(true);
+        // OS-level probe for dead peers; MkHeartbeat does the fast app-level check
+        socket.setKeepAlive(true);
 
         in = new BufferedInputStream(socket.getInputStream());
-        out = new BufferedOutputStream(socket.getOutputStream());
+        // Unbuffered: MkSentenceEncoder already batches a whole sentence
+        out = socket.getOutputStream();
 
         connected = true;
+        lastIoNanos = System.nanoTime();
     }
 
     private SSLSocketFactory buildSslSocketFactory() throws IOException {
@@ -128,14 +206,20 @@ public class MkConnection {
                 "=password=" + password
         );
 
+        boolean trapped = false;
         String sentence;
         while ((sentence = readSentence()) != null) {
-            if (sentence.contains("!done")) {
-                return true;
+            if (sentence.startsWith("!trap")) {
+                // keep reading: the trap is followed by !done
+                trapped = true;
+                continue;
             }
-            if (sentence.contains("!trap")) {
+            if (sentence.startsWith("!fatal")) {
                 return false;
             }
+            if (sentence.startsWith("!done")) {
+                return !trapped;
+            }
         }
         return false;
     }
@@ -147,35 +231,36 @@ public class MkConnection {
     public synchronized void writeSentence(String... words) throws IOException {
         ensureConnected();
 
+        MkSentenceEncoder e = encoder.reset();
         for (String word : words) {
-            writeWord(word);
+            e.word(word);
         }
-        writeWord(""); // end sentence
-        out.flush();
+        e.end();
+        writeEncoded(e);
     }
 
-    private void writeWord(String word) throws IOException {
-        byte[] data = word.getBytes("UTF-8");
-        writeLength(data.length);
-        out.write(data);
+    /**
+     * Sends a sentence already built in an encoder (terminator included)
+     * with one write on the socket stream.
+     */
+    public synchronized void writeEncoded(MkSentenceEncoder e) throws IOException {
+        writeEncoded(e, 1);
     }
 
-    private void writeLength(int length) throws IOException {
-        if (length < 0x80) {
-            out.write(length);
-        } else if (length < 0x4000) {
-            out.write((length >> 8) | 0x80);
-            out.write(length & 0xFF);
-        } else if (length < 0x200000) {
-            out.write((length >> 16) | 0xC0);
-            out.write((length >> 8) & 0xFF);
-            out.write(length & 0xFF);
-        } else {
-            out.write((length >> 24) | 0xE0);
-            out.write((length >> 16) & 0xFF);
-            out.write((length >> 8) & 0xFF);
-            out.write(length & 0xFF);
-        }
+    /** Same, for an encoder holding several pipelined sentences. */
+    public synchronized void writeEncoded(MkSentenceEncoder e, int sentences) throws IOException {
+        ensureConnected();
+
+        e.writeTo(out);
+        out.flush();
+        lastIoNanos = System.nanoTime();
+        metrics.addBytesWritten(e.size());
+        for (int i = 0; i < sentences; i++) metrics.sentenceWritten();
+    }
+
+    /** The connection's reusable encoder; only touch it while holding the connection lock. */
+    public MkSentenceEncoder encoder() {
+        return encoder;
     }
 
     /* =========================
@@ -191,50 +276,149 @@ public class MkConnection {
         while (!(word = readWord()).isEmpty()) {
             sb.append(word).append("\n");
         }
+        lastIoNanos = System.nanoTime();
+        metrics.sentenceRead();
         return sb.toString();
     }
 
+    /**
+     * Like readSentence(), but gives up if no sentence starts before the
+     * deadline (System.nanoTime() based). The timeout can only fire while
+     * waiting for the first byte, so the stream is never left mid-word.
+     *
+     * @throws SocketTimeoutException if the deadline passed first
+     */
+    public synchronized String readSentence(long deadlineNanos) throws IOException {
+        awaitSentence(deadlineNanos);
+        try {
+            return readSentence();
+        } catch (SocketTimeoutException e) {
+            throw stalled(e);
+        }
+    }
+
+    /**
+     * Reads one sentence as an MkRecord: word bytes are kept as they came
+     * off the socket and fields are decoded only when accessed.
+     */
+    public synchronized MkRecord readRecord() throws IOException {
+        ensureConnected();
+
+        MkRecord.Builder b = recordBuilder.reset();
+        int length;
+        while ((length = MkCodec.readLength(in)) != 0) {
+            metrics.addBytesRead(MkCodec.lengthSize(length) + length);
+            if (length > maxWordBytes) {
+                disconnect();
+                throw new IOException("Word of " + length + " bytes exceeds limit of " + maxWordBytes);
+            }
+            if (length > largeWordThreshold && largeWordHandler != null) {
+                // the handler consumes the value; only its (short) replacement is kept
+                byte[] word = readLargeWord(length).getBytes(StandardCharsets.UTF_8);
+                b.word(word, 0, word.length);
+            } else {
+                // raw bytes straight into the record buffer, no String in between
+                b.word(in, length);
+            }
+        }
+        metrics.addBytesRead(1);
+        lastIoNanos = System.nanoTime();
+        metrics.sentenceRead();
+        return b.build(internPool);
+    }
+
+    /** readRecord() with the same deadline rules as readSentence(long). */
+    public synchronized MkRecord readRecord(long deadlineNanos) throws IOException {
+        awaitSentence(deadlineNanos);
+        try {
+            return readRecord();
+        } catch (SocketTimeoutException e) {
+            throw stalled(e);
+        }
+    }
+
+    /** Waits for the first byte of the next sentence without consuming it. */
+    private void awaitSentence(long deadlineNanos) throws IOException {
+        ensureConnected();
+
+        long remainingMs = (deadlineNanos - System.nanoTime()) / 1_000_000L;
+        if (remainingMs <= 0) throw new SocketTimeoutException("Deadline passed");
+
+        Socket s = socket;
+        int previous = s.getSoTimeout();
+        s.setSoTimeout((int) Math.min(Integer.MAX_VALUE, remainingMs));
+        try {
+            in.mark(1);
+            if (in.read() < 0) throw new EOFException("Connection closed");
+            in.reset();
+        } finally {
+            if (connected) s.setSoTimeout(previous);
+        }
+    }
+
+    private IOException stalled(SocketTimeoutException e) {
+        // stalled mid-sentence: the stream is no longer aligned
+        markDead();
+        return new IOException("Timed out inside a reply", e);
+    }
+
     private String readWord() throws IOException {
-        int length = readLength();
+        int length = MkCodec.readLength(in);
+        metrics.addBytesRead(MkCodec.lengthSize(length) + length);
         if (length == 0) return "";
 
-        byte[] data = new byte[length];
-        readFully(data, 0, length);
+        if (length > maxWordBytes) {
+            // can't skip safely without reading it all: drop the connection
+            disconnect();
+            throw new IOException("Word of " + length + " bytes exceeds limit of " + maxWordBytes);
+        }
+        if (length > largeWordThreshold) {
+            return readLargeWord(length);
+        }
 
-        return new String(data, "UTF-8");
+        if (wordBuf.length < length) {
+            wordBuf = new byte[Math.max(length, wordBuf.length * 2)];
+        }
+        MkCodec.readFully(in, wordBuf, 0, length);
+        return new String(wordBuf, 0, length, StandardCharsets.UTF_8);
     }
 
-    private void readFully(byte[] buffer, int off, int len) throws IOException {
-        int total = 0;
-        while (total < len) {
-            int r = in.read(buffer, off + total, len - total);
-            if (r < 0) throw new EOFException("Connection closed while reading");
-            total += r;
+    /**
+     * Oversized word (/export output, file contents): stream it in chunks
+     * to the LargeWordHandler, or decode it chunk by chunk without a
+     * byte[length] copy when no handler is set.
+     */
+    private String readLargeWord(int length) throws IOException {
+        MkCodec.WordInputStream body = new MkCodec.WordInputStream(in, length);
+        if (largeWordHandler == null) {
+            return MkCodec.readUtf8(body, length, chunkBuf);
         }
-    }
 
-    private int readLength() throws IOException {
-        int c = in.read();
-        if (c < 0) throw new EOFException("Connection closed");
-
-        if ((c & 0x80) == 0x00) {
-            return c;
-        } else if ((c & 0xC0) == 0x80) {
-            int b = in.read();
-            if (b < 0) throw new EOFException("Connection closed");
-            return ((c & 0x3F) << 8) + b;
-        } else if ((c & 0xE0) == 0xC0) {
-            int b1 = in.read();
-            int b2 = in.read();
-            if (b1 < 0 || b2 < 0) throw new EOFException("Connection closed");
-            return ((c & 0x1F) << 16) + (b1 << 8) + b2;
+        // split "=key=" off so the handler knows which attribute it gets
+        String prefix = "";
+        InputStream value = body;
+        int max = Math.min(KEY_SCAN_BYTES, length);
+        int n = 0;
+        int equals = 0;
+        while (n < max) {
+            int b = body.read();
+            chunkBuf[n++] = (byte) b;
+            if (b == '=' && ++equals == 2) break;
+        }
+        if (equals == 2 && chunkBuf[0] == '=') {
+            prefix = new String(chunkBuf, 0, n, StandardCharsets.UTF_8);
         } else {
-            int b1 = in.read();
-            int b2 = in.read();
-            int b3 = in.read();
-            if (b1 < 0 || b2 < 0 || b3 < 0) throw new EOFException("Connection closed");
-            return ((c & 0x0F) << 24) + (b1 << 16) + (b2 << 8) + b3;
+            value = new SequenceInputStream(new ByteArrayInputStream(chunkBuf, 0, n), body);
+        }
+
+        String key = prefix.length() > 2 ? prefix.substring(1, prefix.length() - 1) : "";
+        String replacement;
+        try {
+            replacement = largeWordHandler.onLargeWord(key, value, body.remaining() + (value == body ? 0 : n));
+        } finally {
+            body.skipRemaining();
         }
+        return prefix + (replacement != null ? replacement : "");
     }
 
     private void ensureConnected() throws IOException {
@@ -243,10 +427,37 @@ public class MkConnection {
         }
     }
 
+    /** Milliseconds since the last sentence was sent or received. */
+    public long idleMillis() {
+        return (System.nanoTime() - lastIoNanos) / 1_000_000L;
+    }
+
+    /**
+     * Temporarily change the read timeout (e.g. short heartbeat wait).
+     * Call while holding the connection lock; returns the previous value.
+     */
+    public synchronized int swapReadTimeout(int ms) throws IOException {
+        ensureConnected();
+        int previous = socket.getSoTimeout();
+        socket.setSoTimeout(ms);
+        return previous;
+    }
+
     /* =========================
        ===== DISCONNECT =========
        ========================= */
 
+    /**
+     * Mark the peer dead right away, without waiting for the connection
+     * lock: closing the socket unblocks any reader stuck on it.
+     */
+    public void markDead() {
+        if (DEBUG) Log.d(TAG, "Connection marked dead");
+        connected = false;
+        Socket s = socket;
+        try { if (s != null) s.close(); } catch (IOException ignored) {}
+    }
+
     public synchronized void disconnect() {
         if (DEBUG) Log.d(TAG, "Disconnecting...");
 
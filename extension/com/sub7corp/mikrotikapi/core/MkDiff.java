@@ -0,0 +1,163 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot diff engine keyed by ".id".
+ * Compares consecutive MkResult snapshots of the same table and reports
+ * only added rows, removed ids and the fields that changed.
+ *
+ * Each row keeps a 64-bit content hash, so unchanged rows cost one hash
+ * pass and one long compare; field-by-field compare only runs on rows
+ * whose hash moved.
+ */
+public class MkDiff {
+
+    private static final String ID = ".id";
+
+    private HashMap<String, Row> previous = new HashMap<>();
+
+    /**
+     * Feed the next snapshot and get the delta against the previous one.
+     * The first snapshot reports every row as added.
+     */
+    public synchronized Delta update(MkClient.MkResult snapshot) {
+        Delta delta = new Delta();
+        if (snapshot == null || snapshot.isError()) return delta;
+
+        List<HashMap<String, String>> records = snapshot.getRecords();
+        HashMap<String, Row> current = new HashMap<>(Math.max(16, records.size() * 4 / 3 + 1));
+
+        for (HashMap<String, String> rec : records) {
+            if (rec == null) continue;
+            String id = rec.get(ID);
+            if (id == null) continue;
+
+            long hash = hashRecord(rec);
+            current.put(id, new Row(hash, rec));
+
+            Row old = previous.remove(id);
+            if (old == null) {
+                delta.added.add(rec);
+            } else if (old.hash != hash) {
+                HashMap<String, String> changed = changedFields(old.record, rec);
+                if (changed.size() > 1) delta.changed.add(changed);
+            }
+        }
+
+        // whatever is left in the previous snapshot is gone
+        for (String id : previous.keySet()) {
+            delta.removed.add(id);
+        }
+
+        previous = current;
+        return delta;
+    }
+
+    /** Forget the previous snapshot; the next update reports everything as added. */
+    public synchronized void reset() {
+        previous = new HashMap<>();
+    }
+
+    public synchronized int size() {
+        return previous.size();
+    }
+
+    /* =========================
+       ===== HASHING ===========
+       ========================= */
+
+    /**
+     * Order-independent row hash: entries are mixed separately and summed,
+     * so HashMap iteration order does not matter.
+     */
+    static long hashRecord(Map<String, String> rec) {
+        long h = 0;
+        for (Map.Entry<String, String> e : rec.entrySet()) {
+            long k = fnv(e.getKey());
+            long v = fnv(e.getValue());
+            h += mix(k * 0x9E3779B97F4A7C15L ^ v);
+        }
+        return h;
+    }
+
+    private static long fnv(String s) {
+        long h = 0xCBF29CE484222325L;
+        if (s == null) return h;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Returns ".id" plus every field whose value differs.
+     * Fields that disappeared are reported with an empty value.
+     */
+    private static HashMap<String, String> changedFields(HashMap<String, String> oldRec,
+                                                         HashMap<String, String> newRec) {
+        HashMap<String, String> out = new HashMap<>();
+        out.put(ID, newRec.get(ID));
+
+        for (Map.Entry<String, String> e : newRec.entrySet()) {
+            String oldValue = oldRec.get(e.getKey());
+            if (oldValue == null || !oldValue.equals(e.getValue())) {
+                out.put(e.getKey(), e.getValue());
+            }
+        }
+        for (String k : oldRec.keySet()) {
+            if (!newRec.containsKey(k)) out.put(k, "");
+        }
+        return out;
+    }
+
+    private static final class Row {
+        final long hash;
+        final HashMap<String, String> record;
+
+        Row(long hash, HashMap<String, String> record) {
+            this.hash = hash;
+            this.record = record;
+        }
+    }
+
+    /* =========================
+       ===== DELTA MODEL =======
+       ========================= */
+
+    public static class Delta {
+
+        private final List<HashMap<String, String>> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final List<HashMap<String, String>> changed = new ArrayList<>();
+
+        /** Full rows that were not in the previous snapshot. */
+        public List<HashMap<String, String>> getAdded() {
+            return added;
+        }
+
+        /** ".id" values that are no longer present. */
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /** Partial rows: ".id" plus only the fields that changed. */
+        public List<HashMap<String, String>> getChanged() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.sub7corp.mikrotikapi.core;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idle heartbeat for one connection.
+ *
+ * When nothing went over the wire for intervalMs, sends a cheap tagged
+ * "/system/identity/print =.proplist=name" with a short read timeout.
+ * A missed or failed reply marks the connection dead immediately and
+ * notifies the listener, so a reconnect can happen before user traffic
+ * hits the full socket timeout.
+ */
+public class MkHeartbeat {
+
+    private static final String TAG = "MikrotikAPI";
+
+    public interface Listener {
+        void onDead(Exception cause);
+    }
+
+    private final MkClient client;
+    private final MkConnection connection;
+    private final int intervalMs;
+    private final int timeoutMs;
+    private final Listener listener;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    private volatile boolean fired;
+
+    public MkHeartbeat(MkClient client, MkConnection connection, int intervalMs, int timeoutMs, Listener listener) {
+        this.client = client;
+        this.connection = connection;
+        this.intervalMs = Math.max(1000, intervalMs);
+        this.timeoutMs = Math.max(500, timeoutMs);
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (task != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mk-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        // check at half the interval so idle time never exceeds ~1.5x interval
+        long period = Math.max(500, intervalMs / 2);
+        task = scheduler.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) task.cancel(false);
+        if (scheduler != null) scheduler.shutdownNow();
+        task = null;
+        scheduler = null;
+    }
+
+    private void tick() {
+        if (fired) return;
+        if (!connection.isConnected()) {
+            dead(new IOException("Connection closed"));
+            return;
+        }
+        if (connection.idleMillis() < intervalMs) return;
+
+        try {
+            MkClient.MkResult r;
+            synchronized (connection) {
+                // someone else may have used the connection while we waited
+                if (connection.idleMillis() < intervalMs) return;
+
+                int previous = connection.swapReadTimeout(timeoutMs);
+                try {
+                    r = client.execute("/system/identity/print", "=.proplist=name");
+                } finally {
+                    if (connection.isConnected()) connection.swapReadTimeout(previous);
+                }
+            }
+            if (!r.isSuccess() && !connection.isConnected()) {
+                dead(new IOException("Heartbeat lost: " + r.getMessage()));
+            }
+        } catch (Exception e) {
+            dead(e);
+        }
+    }
+
+    private void dead(Exception cause) {
+        if (fired) return;
+        fired = true;
+        Log.d(TAG, "Heartbeat failed: " + cause);
+        connection.markDead();
+        if (listener != null) listener.onDead(cause);
+        stop();
+    }
+}
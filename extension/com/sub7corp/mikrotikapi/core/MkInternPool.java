@@ -0,0 +1,145 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonical Strings for values that repeat across rows.
+ *
+ * Big prints repeat a handful of values over and over ("default",
+ * "hotspot1", "false"); without a pool every row keeps its own copy.
+ * Values of designated columns, and every key, are swapped for one
+ * shared instance as rows are parsed, so a 50k-user table holds a few
+ * hundred such Strings instead of hundreds of thousands.
+ *
+ * Bounded: each column keeps at most maxPerColumn values, so a column
+ * that turns out to be high-cardinality (unique comments) stops growing
+ * its map and its values are just passed through. Values longer than
+ * maxValueLength are never pooled. One pool per connection; thread-safe,
+ * since lazy rows may be decoded after the read on any thread.
+ */
+public final class MkInternPool {
+
+    /** Low-cardinality columns of hotspot, active, lease and profile prints. */
+    public static final String[] DEFAULT_COLUMNS = {
+            "profile", "server", "disabled", "dynamic", "comment", "login-by", "status",
+            "interface", "radius", "blocked", "invalid", "default", "shared-users", "rate-limit"};
+
+    public static final int DEFAULT_MAX_PER_COLUMN = 1024;
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 64;
+
+    private static final int MAX_KEYS = 1024;
+
+    private final byte[][] columnBytes;
+    private final Map<String, Integer> columnIds = new HashMap<>();
+    private final List<ConcurrentHashMap<String, String>> values;
+    private final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<>();
+    private final int maxPerColumn;
+    private final int maxValueLength;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MkInternPool() {
+        this(Arrays.asList(DEFAULT_COLUMNS), DEFAULT_MAX_PER_COLUMN, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    public MkInternPool(Collection<String> columns, int maxPerColumn, int maxValueLength) {
+        LinkedHashSet<String> cols = new LinkedHashSet<>(columns);
+        this.columnBytes = new byte[cols.size()][];
+        this.values = new ArrayList<>(cols.size());
+        int i = 0;
+        for (String c : cols) {
+            columnIds.put(c, i);
+            columnBytes[i] = c.getBytes(StandardCharsets.UTF_8);
+            values.add(new ConcurrentHashMap<String, String>());
+            i++;
+        }
+        this.maxPerColumn = Math.max(0, maxPerColumn);
+        this.maxValueLength = Math.max(0, maxValueLength);
+    }
+
+    /* =========================
+       ===== LOOKUP ============
+       ========================= */
+
+    /** Shared instance of a field name. */
+    public String key(String key) {
+        String k = keys.get(key);
+        if (k != null) return k;
+        if (keys.size() >= MAX_KEYS) return key;
+        k = keys.putIfAbsent(key, key);
+        return k != null ? k : key;
+    }
+
+    /** Shared instance of value if key is a designated column, else value itself. */
+    public String value(String key, String value) {
+        Integer col = columnIds.get(key);
+        return col == null ? value : value(col, value);
+    }
+
+    /** Column id for a key given as raw bytes (no decoding), or -1. */
+    public int columnOf(byte[] data, int from, int to) {
+        int n = to - from;
+        for (int c = 0; c < columnBytes.length; c++) {
+            byte[] name = columnBytes[c];
+            if (name.length != n) continue;
+            int j = 0;
+            while (j < n && data[from + j] == name[j]) j++;
+            if (j == n) return c;
+        }
+        return -1;
+    }
+
+    /** value() by column id from columnOf(). */
+    public String value(int column, String value) {
+        if (value == null || value.length() > maxValueLength) return value;
+        ConcurrentHashMap<String, String> pool = values.get(column);
+        String v = pool.get(value);
+        if (v != null) {
+            hits.incrementAndGet();
+            return v;
+        }
+        misses.incrementAndGet();
+        // full: the column is high-cardinality, stop adding to it
+        if (pool.size() >= maxPerColumn) return value;
+        v = pool.putIfAbsent(value, value);
+        return v != null ? v : value;
+    }
+
+    /* =========================
+       ===== STATS =============
+       ========================= */
+
+    /** Pooled values over all columns. */
+    public int size() {
+        int n = 0;
+        for (ConcurrentHashMap<String, String> m : values) n += m.size();
+        return n;
+    }
+
+    /** Values replaced by a pooled instance. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Values seen for the first time or not pooled because the column was full. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        for (ConcurrentHashMap<String, String> m : values) m.clear();
+        keys.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+}
@@ -0,0 +1,285 @@
+package com.sub7corp.mikrotikapi.core;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free runtime metrics for the API core.
+ *
+ * Recorded by MkConnection (bytes and sentences on the wire) and MkClient
+ * (per-path latency, in-flight commands, traps). One instance can outlive
+ * several connections so reconnects are counted too.
+ */
+public class MkMetrics {
+
+    /** Paths beyond this many distinct entries are folded into "other". */
+    private static final int MAX_PATHS = 256;
+    private static final String OTHER_PATH = "other";
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong sentencesWritten = new AtomicLong();
+    private final AtomicLong sentencesRead = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong maxInFlight = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong traps = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private final ConcurrentHashMap<String, PathStats> paths = new ConcurrentHashMap<>();
+
+    /* =========================
+       ===== RECORDING =========
+       ========================= */
+
+    void addBytesWritten(long n) {
+        bytesWritten.addAndGet(n);
+    }
+
+    void addBytesRead(long n) {
+        bytesRead.addAndGet(n);
+    }
+
+    void sentenceWritten() {
+        sentencesWritten.incrementAndGet();
+    }
+
+    void sentenceRead() {
+        sentencesRead.incrementAndGet();
+    }
+
+    void commandStarted() {
+        commands.incrementAndGet();
+        long now = inFlight.incrementAndGet();
+        raiseMax(maxInFlight, now);
+    }
+
+    void commandFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    void trap(String path) {
+        traps.incrementAndGet();
+        pathStats(path).traps.incrementAndGet();
+    }
+
+    void failure(String path) {
+        failures.incrementAndGet();
+        pathStats(path).failures.incrementAndGet();
+    }
+
+    void timeout(String path) {
+        timeouts.incrementAndGet();
+        pathStats(path).timeouts.incrementAndGet();
+    }
+
+    public void reconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    void recordQueueWait(String path, long nanos) {
+        pathStats(path).queueWait.record(nanos);
+    }
+
+    void recordRoundTrip(String path, long nanos) {
+        pathStats(path).roundTrip.record(nanos);
+    }
+
+    void recordParse(String path, long nanos) {
+        pathStats(path).parse.record(nanos);
+    }
+
+    private PathStats pathStats(String path) {
+        String key = path != null ? path : OTHER_PATH;
+        PathStats s = paths.get(key);
+        if (s != null) return s;
+        if (paths.size() >= MAX_PATHS) key = OTHER_PATH;
+        s = new PathStats();
+        PathStats prev = paths.putIfAbsent(key, s);
+        return prev != null ? prev : s;
+    }
+
+    private static void raiseMax(AtomicLong max, long value) {
+        long cur;
+        while (value > (cur = max.get())) {
+            if (max.compareAndSet(cur, value)) return;
+        }
+    }
+
+    /* =========================
+       ===== JVM-SIDE API ======
+       ========================= */
+
+    public long getBytesWritten() { return bytesWritten.get(); }
+
+    public long getBytesRead() { return bytesRead.get(); }
+
+    public long getSentencesWritten() { return sentencesWritten.get(); }
+
+    public long getSentencesRead() { return sentencesRead.get(); }
+
+    public long getInFlight() { return inFlight.get(); }
+
+    public long getMaxInFlight() { return maxInFlight.get(); }
+
+    public long getCommands() { return commands.get(); }
+
+    public long getTraps() { return traps.get(); }
+
+    public long getFailures() { return failures.get(); }
+
+    public long getTimeouts() { return timeouts.get(); }
+
+    public long getReconnects() { return reconnects.get(); }
+
+    /** Per-path stats (live view). */
+    public Map<String, PathStats> getPaths() {
+        return paths;
+    }
+
+    /** Zero all counters and drop per-path stats (in-flight is kept). */
+    public void reset() {
+        bytesWritten.set(0);
+        bytesRead.set(0);
+        sentencesWritten.set(0);
+        sentencesRead.set(0);
+        maxInFlight.set(inFlight.get());
+        commands.set(0);
+        traps.set(0);
+        failures.set(0);
+        timeouts.set(0);
+        reconnects.set(0);
+        paths.clear();
+    }
+
+    /** JSON snapshot block; latencies in microseconds. */
+    public JSONObject toJson() {
+        JSONObject o = new JSONObject();
+        o.put("bytesWritten", getBytesWritten());
+        o.put("bytesRead", getBytesRead());
+        o.put("sentencesWritten", getSentencesWritten());
+        o.put("sentencesRead", getSentencesRead());
+        o.put("inFlight", getInFlight());
+        o.put("maxInFlight", getMaxInFlight());
+        o.put("commands", getCommands());
+        o.put("traps", getTraps());
+        o.put("failures", getFailures());
+        o.put("timeouts", getTimeouts());
+        o.put("reconnects", getReconnects());
+
+        JSONObject p = new JSONObject();
+        for (Map.Entry<String, PathStats> e : paths.entrySet()) {
+            p.put(e.getKey(), e.getValue().toJson());
+        }
+        o.put("paths", p);
+        return o;
+    }
+
+    /* =========================
+       ===== PATH STATS ========
+       ========================= */
+
+    public static class PathStats {
+
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram roundTrip = new LatencyHistogram();
+        private final LatencyHistogram parse = new LatencyHistogram();
+        private final AtomicLong traps = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        public LatencyHistogram getQueueWait() { return queueWait; }
+
+        public LatencyHistogram getRoundTrip() { return roundTrip; }
+
+        public LatencyHistogram getParse() { return parse; }
+
+        public long getTraps() { return traps.get(); }
+
+        public long getFailures() { return failures.get(); }
+
+        public long getTimeouts() { return timeouts.get(); }
+
+        JSONObject toJson() {
+            JSONObject o = new JSONObject();
+            o.put("queueWait", queueWait.toJson());
+            o.put("roundTrip", roundTrip.toJson());
+            o.put("parse", parse.toJson());
+            o.put("traps", getTraps());
+            o.put("failures", getFailures());
+            o.put("timeouts", getTimeouts());
+            return o;
+        }
+    }
+
+    /* =========================
+       ===== HISTOGRAM =========
+       ========================= */
+
+    /**
+     * Log2 latency histogram over microseconds.
+     * Bucket i holds values in [2^(i-1), 2^i) us; bucket 0 holds < 1us.
+     */
+    public static class LatencyHistogram {
+
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void record(long nanos) {
+            long us = Math.max(0, nanos / 1000);
+            int b = us == 0 ? 0 : 64 - Long.numberOfLeadingZeros(us);
+            buckets.incrementAndGet(Math.min(b, BUCKETS - 1));
+            count.incrementAndGet();
+            sumMicros.addAndGet(us);
+            raiseMax(maxMicros, us);
+        }
+
+        public long getCount() { return count.get(); }
+
+        public long getMaxMicros() { return maxMicros.get(); }
+
+        public long getMeanMicros() {
+            long c = count.get();
+            return c == 0 ? 0 : sumMicros.get() / c;
+        }
+
+        /**
+         * Upper bound (us) of the bucket holding the given quantile (0..1).
+         * Resolution is a factor of two, enough to spot slow paths.
+         */
+        public long quantileMicros(double q) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(total * q);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(i == 0 ? 1 : 1L << i, maxMicros.get());
+                }
+            }
+            return maxMicros.get();
+        }
+
+        JSONObject toJson() {
+            JSONObject o = new JSONObject();
+            o.put("count", getCount());
+            o.put("meanUs", getMeanMicros());
+            o.put("p50Us", quantileMicros(0.50));
+            o.put("p95Us", quantileMicros(0.95));
+            o.put("p99Us", quantileMicros(0.99));
+            o.put("maxUs", getMaxMicros());
+            return o;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * One reply sentence kept as raw word bytes plus an offset index.
+ *
+ * Keys are matched against the bytes directly and values are decoded to
+ * a String only when read (then cached), so a caller that looks at two
+ * fields of a 15-field row pays for two Strings, not fifteen plus a map.
+ * One byte[] and one int[] per row. Not thread-safe.
+ */
+public final class MkRecord {
+
+    public static final String RE = "!re";
+    public static final String DONE = "!done";
+    public static final String TRAP = "!trap";
+    public static final String FATAL = "!fatal";
+
+    private final String type;
+    private final int tag;
+    private final byte[] data;
+
+    // per field: key start, value start (after the '='), value end
+    private final int[] index;
+    private final int fields;
+
+    private String[] decoded;
+
+    // shared Strings for repeated keys/values; null = off
+    private final MkInternPool pool;
+
+    private MkRecord(String type, int tag, byte[] data, int[] index, int fields, MkInternPool pool) {
+        this.type = type;
+        this.tag = tag;
+        this.data = data;
+        this.index = index;
+        this.fields = fields;
+        this.pool = pool;
+    }
+
+    /** Reply type: RE, DONE, TRAP, FATAL or the raw first word. */
+    public String getType() {
+        return type;
+    }
+
+    /** Value of ".tag=", or -1 if the sentence had none. */
+    public int getTag() {
+        return tag;
+    }
+
+    public int size() {
+        return fields;
+    }
+
+    /* =========================
+       ===== ACCESS ============
+       ========================= */
+
+    /** Value for key (e.g. "user", ".id"), or null if absent. */
+    public String get(String key) {
+        int i = find(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    public boolean has(String key) {
+        return find(key) >= 0;
+    }
+
+    /** Compares a value without decoding it (ASCII expected values only). */
+    public boolean valueEquals(String key, String expected) {
+        int i = find(key);
+        if (i < 0) return false;
+        int vs = index[i * 3 + 1];
+        int ve = index[i * 3 + 2];
+        if (!isAscii(expected)) return expected.equals(valueAt(i));
+        return regionEquals(vs, ve, expected);
+    }
+
+    public String keyAt(int i) {
+        int ks = index[i * 3];
+        int vs = index[i * 3 + 1];
+        String k = new String(data, ks, vs - 1 - ks, StandardCharsets.UTF_8);
+        return pool != null ? pool.key(k) : k;
+    }
+
+    public String valueAt(int i) {
+        if (decoded == null) decoded = new String[fields];
+        String v = decoded[i];
+        if (v == null) {
+            int vs = index[i * 3 + 1];
+            v = new String(data, vs, index[i * 3 + 2] - vs, StandardCharsets.UTF_8);
+            if (pool != null) {
+                int col = pool.columnOf(data, index[i * 3], vs - 1);
+                if (col >= 0) v = pool.value(col, v);
+            }
+            decoded[i] = v;
+        }
+        return v;
+    }
+
+    /** Decodes every field; same shape as MkClient.parseRecord. */
+    public HashMap<String, String> toMap() {
+        HashMap<String, String> map = new HashMap<>(fields * 2);
+        for (int i = 0; i < fields; i++) map.put(keyAt(i), valueAt(i));
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return type + toMap();
+    }
+
+    private int find(String key) {
+        if (!isAscii(key)) {
+            for (int i = 0; i < fields; i++) if (key.equals(keyAt(i))) return i;
+            return -1;
+        }
+        for (int i = 0; i < fields; i++) {
+            if (regionEquals(index[i * 3], index[i * 3 + 1] - 1, key)) return i;
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int from, int to, String ascii) {
+        int n = ascii.length();
+        if (to - from != n) return false;
+        for (int j = 0; j < n; j++) {
+            if (data[from + j] != (byte) ascii.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /* =========================
+       ===== BUILDER ===========
+       ========================= */
+
+    /**
+     * Collects the words of one sentence into a reusable buffer; build()
+     * copies out an exactly sized record. One per connection.
+     */
+    static final class Builder {
+
+        private static final byte[] TAG = {'.', 't', 'a', 'g', '='};
+
+        // a buffer grown past this by one large word is dropped on reset
+        private static final int RETAIN_BYTES = 64 * 1024;
+
+        private byte[] buf = new byte[1024];
+        private int size;
+        private int[] index = new int[48];
+        private int fields;
+        private int words;
+        private int tag;
+        private String type;
+
+        Builder reset() {
+            if (buf.length > RETAIN_BYTES) buf = new byte[1024];
+            size = 0;
+            fields = 0;
+            words = 0;
+            tag = -1;
+            type = "";
+            return this;
+        }
+
+        /** Reads one word body of the given length straight into the buffer. */
+        void word(InputStream in, int length) throws IOException {
+            ensure(length);
+            MkCodec.readFully(in, buf, size, length);
+            index(length);
+        }
+
+        void word(byte[] b, int off, int length) {
+            ensure(length);
+            System.arraycopy(b, off, buf, size, length);
+            index(length);
+        }
+
+        MkRecord build() {
+            return build(null);
+        }
+
+        /** @param pool interns the record's keys and designated values as they are decoded; may be null */
+        MkRecord build(MkInternPool pool) {
+            return new MkRecord(type, tag,
+                    Arrays.copyOf(buf, size),
+                    Arrays.copyOf(index, fields * 3),
+                    fields, pool);
+        }
+
+        /** Indexes the word just written at buf[size, size + length). */
+        private void index(int length) {
+            int start = size;
+            if (words++ == 0) {
+                type = typeOf(start, length);
+                return;
+            }
+
+            // "=key=value" (key may contain no '='; the value may)
+            if (length > 0 && buf[start] == '=') {
+                int end = start + length;
+                int eq = -1;
+                for (int p = start + 2; p < end; p++) {
+                    if (buf[p] == '=') {
+                        eq = p;
+                        break;
+                    }
+                }
+                if (eq < 0) return;
+
+                if (index.length < (fields + 1) * 3) index = Arrays.copyOf(index, index.length * 2);
+                index[fields * 3] = start + 1;
+                index[fields * 3 + 1] = eq + 1;
+                index[fields * 3 + 2] = end;
+                fields++;
+                size = end;
+                return;
+            }
+
+            // ".tag=N"; other API words are not kept
+            if (startsWith(start, length, TAG)) {
+                int v = 0;
+                for (int p = start + TAG.length; p < start + length; p++) {
+                    int d = buf[p] - '0';
+                    if (d < 0 || d > 9) return;
+                    v = v * 10 + d;
+                }
+                tag = v;
+            }
+        }
+
+        private String typeOf(int start, int length) {
+            if (length == 0 || buf[start] != '!') return new String(buf, start, length, StandardCharsets.UTF_8);
+            if (length == 3 && buf[start + 1] == 'r' && buf[start + 2] == 'e') return RE;
+            if (length == 5 && buf[start + 1] == 'd') return DONE;
+            if (length == 5 && buf[start + 1] == 't') return TRAP;
+            if (length == 6 && buf[start + 1] == 'f') return FATAL;
+            return new String(buf, start, length, StandardCharsets.UTF_8);
+        }
+
+        private boolean startsWith(int start, int length, byte[] prefix) {
+            if (length < prefix.length) return false;
+            for (int j = 0; j < prefix.length; j++) {
+                if (buf[start + j] != prefix[j]) return false;
+            }
+            return true;
+        }
+
+        private void ensure(int extra) {
+            int need = size + extra;
+            if (need > buf.length) buf = Arrays.copyOf(buf, Math.max(need, buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a whole sentence (length-prefixed UTF-8 words + terminator) into
+ * one reusable byte buffer, so it goes out in a single write.
+ *
+ * Strings are encoded straight into the buffer without getBytes(), so a
+ * warmed-up encoder does not allocate per sentence. Not thread-safe: one
+ * encoder per connection, used under the connection lock.
+ */
+public class MkSentenceEncoder {
+
+    private byte[] buf;
+    private int size;
+
+    public MkSentenceEncoder() {
+        this(1024);
+    }
+
+    public MkSentenceEncoder(int initialCapacity) {
+        buf = new byte[Math.max(64, initialCapacity)];
+    }
+
+    public MkSentenceEncoder reset() {
+        size = 0;
+        return this;
+    }
+
+    /** Bytes encoded so far. */
+    public int size() {
+        return size;
+    }
+
+    /* =========================
+       ===== WORDS =============
+       ========================= */
+
+    /** Appends one word: length prefix + UTF-8 bytes. */
+    public MkSentenceEncoder word(String word) {
+        int len = utf8Length(word);
+        ensure(5 + len);
+        size += MkCodec.encodeLength(len, buf, size);
+        encodeUtf8(word);
+        return this;
+    }
+
+    /**
+     * Appends one word made of a pre-encoded constant part (e.g. "=name=")
+     * followed by a variable value; only the value gets encoded.
+     */
+    public MkSentenceEncoder word(byte[] prefix, String value) {
+        int len = prefix.length + utf8Length(value);
+        ensure(5 + len);
+        size += MkCodec.encodeLength(len, buf, size);
+        System.arraycopy(prefix, 0, buf, size, prefix.length);
+        size += prefix.length;
+        encodeUtf8(value);
+        return this;
+    }
+
+    /** Appends prefix + decimal number (e.g. ".tag=42") without a temporary String. */
+    public MkSentenceEncoder word(byte[] prefix, long number) {
+        int digits = 1;
+        for (long v = Math.abs(number / 10); v > 0; v /= 10) digits++;
+        if (number < 0) digits++;
+
+        int len = prefix.length + digits;
+        ensure(5 + len);
+        size += MkCodec.encodeLength(len, buf, size);
+        System.arraycopy(prefix, 0, buf, size, prefix.length);
+        size += prefix.length;
+
+        int end = size + digits;
+        long v = number;
+        for (int p = end - 1; p >= size; p--) {
+            buf[p] = (byte) ('0' + Math.abs(v % 10));
+            v /= 10;
+        }
+        if (number < 0) buf[size] = '-';
+        size = end;
+        return this;
+    }
+
+    /** Appends bytes that already carry their own length prefix. */
+    public MkSentenceEncoder raw(byte[] encodedWord) {
+        ensure(encodedWord.length);
+        System.arraycopy(encodedWord, 0, buf, size, encodedWord.length);
+        size += encodedWord.length;
+        return this;
+    }
+
+    /** Appends the empty word that ends a sentence. */
+    public MkSentenceEncoder end() {
+        ensure(1);
+        buf[size++] = 0;
+        return this;
+    }
+
+    /** One write of everything encoded so far. */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, size);
+    }
+
+    /* =========================
+       ===== UTF-8 =============
+       ========================= */
+
+    /** Length prefix + UTF-8 bytes of a constant word, for templates. */
+    public static byte[] encodeWord(String word) {
+        MkSentenceEncoder e = new MkSentenceEncoder(word.length() * 3 + 5);
+        e.word(word);
+        byte[] out = new byte[e.size];
+        System.arraycopy(e.buf, 0, out, 0, e.size);
+        return out;
+    }
+
+    /** UTF-8 bytes (no prefix) of a constant string, for templates. */
+    public static byte[] utf8(String s) {
+        MkSentenceEncoder e = new MkSentenceEncoder(s.length() * 3);
+        e.ensure(utf8Length(s));
+        e.encodeUtf8(s);
+        byte[] out = new byte[e.size];
+        System.arraycopy(e.buf, 0, out, 0, e.size);
+        return out;
+    }
+
+    static int utf8Length(String s) {
+        int n = s.length();
+        int len = n;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                len += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 2; // 4 bytes for 2 chars
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate: encoded as '?'
+            } else {
+                len += 2;
+            }
+        }
+        return len;
+    }
+
+    private void encodeUtf8(String s) {
+        byte[] b = buf;
+        int p = size;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        size = p;
+    }
+
+    private void ensure(int extra) {
+        int need = size + extra;
+        if (need > buf.length) {
+            byte[] bigger = new byte[Math.max(need, buf.length * 2)];
+            System.arraycopy(buf, 0, bigger, 0, size);
+            buf = bigger;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.sub7corp.mikrotikapi.core;
+
+/**
+ * Prepared command: path and "=key=" prefixes encoded once, so each call
+ * only encodes the variable values. Immutable and shareable across
+ * connections; create with MkClient.prepare(path, keys...).
+ *
+ * Keys are plain names ("name", "limit-uptime"); a key starting with "?"
+ * becomes a query word ("?name=value").
+ */
+public final class MkTemplate {
+
+    private final String path;
+    private final byte[] pathWord;
+    private final String[] keys;
+    private final byte[][] prefixes;
+
+    MkTemplate(String path, String... keys) {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("Template path is empty");
+        }
+        this.path = path.trim();
+        this.pathWord = MkSentenceEncoder.encodeWord(this.path);
+        this.keys = keys != null ? keys.clone() : new String[0];
+        this.prefixes = new byte[this.keys.length][];
+
+        for (int i = 0; i < this.keys.length; i++) {
+            String k = this.keys[i] != null ? this.keys[i].trim() : "";
+            if (k.endsWith("=")) k = k.substring(0, k.length() - 1);
+            if (k.isEmpty() || "=".equals(k)) {
+                throw new IllegalArgumentException("Empty key at position " + i);
+            }
+            this.keys[i] = k;
+            prefixes[i] = MkSentenceEncoder.utf8(k.startsWith("?") || k.startsWith("=") ? k + "=" : "=" + k + "=");
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /** Number of values a call takes (one per key, in order). */
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Appends path + "=key=value" words; a null value leaves its key out.
+     * Values go out verbatim (no trimming). The terminator is left to the
+     * caller so it can append the tag.
+     */
+    MkSentenceEncoder encode(MkSentenceEncoder e, String... values) {
+        int n = values != null ? values.length : 0;
+        if (n > prefixes.length) {
+            throw new IllegalArgumentException(path + " takes " + prefixes.length + " values, got " + n);
+        }
+        e.raw(pathWord);
+        for (int i = 0; i < n; i++) {
+            if (values[i] != null) e.word(prefixes[i], values[i]);
+        }
+        return e;
+    }
+}
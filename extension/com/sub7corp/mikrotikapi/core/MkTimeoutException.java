@@ -0,0 +1,30 @@
+package com.sub7corp.mikrotikapi.core;
+
+import java.io.IOException;
+
+/**
+ * A command missed its deadline.
+ * The command was cancelled on the router and its leftover replies were
+ * drained, so the connection is still usable when this is thrown.
+ */
+public class MkTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final long timeoutMs;
+
+    public MkTimeoutException(String path, long timeoutMs) {
+        super("Command " + path + " timed out after " + timeoutMs + " ms");
+        this.path = path;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
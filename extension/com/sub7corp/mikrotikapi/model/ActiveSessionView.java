@@ -0,0 +1,87 @@
+package com.sub7corp.mikrotikapi.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed view over a /ip/hotspot/active record.
+ */
+public class ActiveSessionView extends RecordView {
+
+    public static final Comparator<ActiveSessionView> BY_BYTES_TOTAL =
+            (a, b) -> Long.compare(a.getBytesTotal(), b.getBytesTotal());
+    public static final Comparator<ActiveSessionView> BY_UPTIME =
+            (a, b) -> Long.compare(a.getUptimeSeconds(), b.getUptimeSeconds());
+    public static final Comparator<ActiveSessionView> BY_TIME_LEFT =
+            (a, b) -> Long.compare(a.getSessionTimeLeftSeconds(), b.getSessionTimeLeftSeconds());
+    public static final Comparator<ActiveSessionView> BY_IDLE =
+            (a, b) -> Long.compare(a.getIdleTimeSeconds(), b.getIdleTimeSeconds());
+
+    private long uptime = UNSET;
+    private long timeLeft = UNSET;
+    private long idle = UNSET;
+    private long bytesIn = UNSET;
+    private long bytesOut = UNSET;
+    private long packetsIn = UNSET;
+    private long packetsOut = UNSET;
+
+    public ActiveSessionView(Map<String, String> record) {
+        super(record);
+    }
+
+    public static List<ActiveSessionView> wrap(List<? extends Map<String, String>> records) {
+        List<ActiveSessionView> out = new ArrayList<>(records.size());
+        for (Map<String, String> r : records) out.add(new ActiveSessionView(r));
+        return out;
+    }
+
+    public String getUser() { return get("user"); }
+
+    public String getAddress() { return get("address"); }
+
+    public String getMacAddress() { return get("mac-address"); }
+
+    public String getServer() { return get("server"); }
+
+    public long getUptimeSeconds() {
+        if (uptime == UNSET) uptime = seconds("uptime");
+        return uptime;
+    }
+
+    /** -1 when the session has no time limit. */
+    public long getSessionTimeLeftSeconds() {
+        if (timeLeft == UNSET) timeLeft = seconds("session-time-left");
+        return timeLeft;
+    }
+
+    public long getIdleTimeSeconds() {
+        if (idle == UNSET) idle = seconds("idle-time");
+        return idle;
+    }
+
+    public long getBytesIn() {
+        if (bytesIn == UNSET) bytesIn = size("bytes-in");
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        if (bytesOut == UNSET) bytesOut = size("bytes-out");
+        return bytesOut;
+    }
+
+    public long getBytesTotal() {
+        return Math.max(0, getBytesIn()) + Math.max(0, getBytesOut());
+    }
+
+    public long getPacketsIn() {
+        if (packetsIn == UNSET) packetsIn = count("packets-in");
+        return packetsIn;
+    }
+
+    public long getPacketsOut() {
+        if (packetsOut == UNSET) packetsOut = count("packets-out");
+        return packetsOut;
+    }
+}
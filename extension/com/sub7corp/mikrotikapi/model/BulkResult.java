@@ -0,0 +1,45 @@
+package com.sub7corp.mikrotikapi.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a multi-name operation (kick / disable / remove many).
+ */
+public class BulkResult {
+
+    private final int done;
+    private final List<String> notFound;
+    private final Map<String, String> failed;
+
+    public BulkResult(int done, List<String> notFound, Map<String, String> failed) {
+        this.done = done;
+        this.notFound = notFound != null ? notFound : new ArrayList<>();
+        this.failed = failed != null ? failed : new LinkedHashMap<>();
+    }
+
+    // =========================
+    // GETTERS
+    // =========================
+
+    /** Items acted on (sessions for kick, users otherwise). */
+    public int getDone() {
+        return done;
+    }
+
+    /** Names the router doesn't have. */
+    public List<String> getNotFound() {
+        return notFound;
+    }
+
+    /** Name or id -> router message. */
+    public Map<String, String> getFailed() {
+        return failed;
+    }
+
+    public boolean isComplete() {
+        return notFound.isEmpty() && failed.isEmpty();
+    }
+}
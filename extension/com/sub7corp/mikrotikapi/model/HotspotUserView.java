@@ -0,0 +1,84 @@
+package com.sub7corp.mikrotikapi.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed view over a /ip/hotspot/user record.
+ */
+public class HotspotUserView extends RecordView {
+
+    public static final Comparator<HotspotUserView> BY_BYTES_TOTAL =
+            (a, b) -> Long.compare(a.getBytesTotal(), b.getBytesTotal());
+    public static final Comparator<HotspotUserView> BY_UPTIME =
+            (a, b) -> Long.compare(a.getUptimeSeconds(), b.getUptimeSeconds());
+
+    private long uptime = UNSET;
+    private long limitUptime = UNSET;
+    private long bytesIn = UNSET;
+    private long bytesOut = UNSET;
+    private long limitBytesTotal = UNSET;
+    private byte disabled = -1; // -1 = not parsed
+
+    public HotspotUserView(Map<String, String> record) {
+        super(record);
+    }
+
+    public static List<HotspotUserView> wrap(List<? extends Map<String, String>> records) {
+        List<HotspotUserView> out = new ArrayList<>(records.size());
+        for (Map<String, String> r : records) out.add(new HotspotUserView(r));
+        return out;
+    }
+
+    public String getName() { return get("name"); }
+
+    public String getProfile() { return get("profile"); }
+
+    public String getComment() { return get("comment"); }
+
+    public boolean isDisabled() {
+        if (disabled < 0) disabled = (byte) (flag("disabled") ? 1 : 0);
+        return disabled == 1;
+    }
+
+    /** Time used so far, seconds. */
+    public long getUptimeSeconds() {
+        if (uptime == UNSET) uptime = seconds("uptime");
+        return uptime;
+    }
+
+    /** Time limit, seconds; -1 = no limit. */
+    public long getLimitUptimeSeconds() {
+        if (limitUptime == UNSET) limitUptime = seconds("limit-uptime");
+        return limitUptime;
+    }
+
+    /** Seconds left before limit-uptime; -1 = no limit. */
+    public long getRemainingSeconds() {
+        long limit = getLimitUptimeSeconds();
+        if (limit < 0) return -1;
+        return Math.max(0, limit - Math.max(0, getUptimeSeconds()));
+    }
+
+    public long getBytesIn() {
+        if (bytesIn == UNSET) bytesIn = size("bytes-in");
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        if (bytesOut == UNSET) bytesOut = size("bytes-out");
+        return bytesOut;
+    }
+
+    public long getBytesTotal() {
+        return Math.max(0, getBytesIn()) + Math.max(0, getBytesOut());
+    }
+
+    /** Traffic limit, bytes; -1 = no limit. */
+    public long getLimitBytesTotal() {
+        if (limitBytesTotal == UNSET) limitBytesTotal = size("limit-bytes-total");
+        return limitBytesTotal;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sub7corp.mikrotikapi.model;
+
+import com.sub7corp.mikrotikapi.util.RouterOsValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed view over a /ip/hotspot/user/profile record.
+ */
+public class ProfileView extends RecordView {
+
+    private long sharedUsers = UNSET;
+    private long sessionTimeout = UNSET;
+    private long idleTimeout = UNSET;
+    private long keepaliveTimeout = UNSET;
+    private long rateRx = UNSET;
+    private long rateTx = UNSET;
+
+    public ProfileView(Map<String, String> record) {
+        super(record);
+    }
+
+    public static List<ProfileView> wrap(List<? extends Map<String, String>> records) {
+        List<ProfileView> out = new ArrayList<>(records.size());
+        for (Map<String, String> r : records) out.add(new ProfileView(r));
+        return out;
+    }
+
+    public String getName() { return get("name"); }
+
+    public String getRateLimit() { return get("rate-limit"); }
+
+    public long getSharedUsers() {
+        if (sharedUsers == UNSET) sharedUsers = count("shared-users");
+        return sharedUsers;
+    }
+
+    /** -1 = no session timeout. */
+    public long getSessionTimeoutSeconds() {
+        if (sessionTimeout == UNSET) sessionTimeout = seconds("session-timeout");
+        return sessionTimeout;
+    }
+
+    /** -1 = none. */
+    public long getIdleTimeoutSeconds() {
+        if (idleTimeout == UNSET) idleTimeout = seconds("idle-timeout");
+        return idleTimeout;
+    }
+
+    public long getKeepaliveTimeoutSeconds() {
+        if (keepaliveTimeout == UNSET) keepaliveTimeout = seconds("keepalive-timeout");
+        return keepaliveTimeout;
+    }
+
+    /** Upload limit (router rx), bits/sec; -1 = unlimited. */
+    public long getRateLimitRx() {
+        if (rateRx == UNSET) rateRx = RouterOsValues.parseRateLimit(getRecord().get("rate-limit"), false, -1);
+        return rateRx;
+    }
+
+    /** Download limit (router tx), bits/sec; -1 = unlimited. */
+    public long getRateLimitTx() {
+        if (rateTx == UNSET) rateTx = RouterOsValues.parseRateLimit(getRecord().get("rate-limit"), true, -1);
+        return rateTx;
+    }
+}
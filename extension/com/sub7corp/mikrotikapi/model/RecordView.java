@@ -0,0 +1,57 @@
+package com.sub7corp.mikrotikapi.model;
+
+import com.sub7corp.mikrotikapi.util.RouterOsValues;
+
+import java.util.Map;
+
+/**
+ * Base for typed views over one API record (field -> raw string).
+ *
+ * Numeric getters parse on first use and cache the primitive, so sorting
+ * or filtering a list parses each field at most once per row. Missing or
+ * unparseable values read as -1 (numbers) or false (booleans).
+ */
+public abstract class RecordView {
+
+    /** Marks a cached field that has not been parsed yet. */
+    static final long UNSET = Long.MIN_VALUE;
+
+    private final Map<String, String> record;
+
+    protected RecordView(Map<String, String> record) {
+        this.record = record;
+    }
+
+    /** Raw value, "" when absent. */
+    public String get(String key) {
+        String v = record.get(key);
+        return v != null ? v : "";
+    }
+
+    public String getId() {
+        return get(".id");
+    }
+
+    public Map<String, String> getRecord() {
+        return record;
+    }
+
+    // =========================
+    // PARSERS (cache in the subclass field)
+    // =========================
+    long seconds(String key) {
+        return RouterOsValues.parseDurationSeconds(record.get(key), -1);
+    }
+
+    long count(String key) {
+        return RouterOsValues.parseLong(record.get(key), -1);
+    }
+
+    long size(String key) {
+        return RouterOsValues.parseSize(record.get(key), -1);
+    }
+
+    boolean flag(String key) {
+        return RouterOsValues.parseBool(record.get(key), false);
+    }
+}
@@ -0,0 +1,71 @@
+package com.sub7corp.mikrotikapi.model;
+
+import java.util.Map;
+
+/**
+ * Typed view over the /system/resource record.
+ */
+public class SystemResourceView extends RecordView {
+
+    private long uptime = UNSET;
+    private long cpuLoad = UNSET;
+    private long cpuCount = UNSET;
+    private long freeMemory = UNSET;
+    private long totalMemory = UNSET;
+    private long freeHdd = UNSET;
+    private long totalHdd = UNSET;
+
+    public SystemResourceView(Map<String, String> record) {
+        super(record);
+    }
+
+    public String getVersion() { return get("version"); }
+
+    public String getBoardName() { return get("board-name"); }
+
+    public String getArchitecture() { return get("architecture-name"); }
+
+    public long getUptimeSeconds() {
+        if (uptime == UNSET) uptime = seconds("uptime");
+        return uptime;
+    }
+
+    /** Percent, 0..100. */
+    public long getCpuLoad() {
+        if (cpuLoad == UNSET) cpuLoad = count("cpu-load");
+        return cpuLoad;
+    }
+
+    public long getCpuCount() {
+        if (cpuCount == UNSET) cpuCount = count("cpu-count");
+        return cpuCount;
+    }
+
+    public long getFreeMemory() {
+        if (freeMemory == UNSET) freeMemory = size("free-memory");
+        return freeMemory;
+    }
+
+    public long getTotalMemory() {
+        if (totalMemory == UNSET) totalMemory = size("total-memory");
+        return totalMemory;
+    }
+
+    public long getFreeHddSpace() {
+        if (freeHdd == UNSET) freeHdd = size("free-hdd-space");
+        return freeHdd;
+    }
+
+    public long getTotalHddSpace() {
+        if (totalHdd == UNSET) totalHdd = size("total-hdd-space");
+        return totalHdd;
+    }
+
+    /** Used memory percent, or -1 if unknown. */
+    public int getMemoryUsedPercent() {
+        long total = getTotalMemory();
+        long free = getFreeMemory();
+        if (total <= 0 || free < 0) return -1;
+        return (int) ((total - free) * 100 / total);
+    }
+}
@@ -0,0 +1,57 @@
+package com.sub7corp.mikrotikapi.stats;
+
+/**
+ * Running RTT statistics for one ping target.
+ *
+ * Updated per reply in O(1) with primitive accumulators only: min, max,
+ * mean, loss and jitter (RFC 3550 style: smoothed difference between
+ * consecutive RTTs). Times are microseconds.
+ */
+public class PingStats {
+
+    private final String target;
+
+    private int sent;
+    private int received;
+    private long minUs = Long.MAX_VALUE;
+    private long maxUs;
+    private long sumUs;
+    private long lastUs = -1;
+    private double jitterUs;
+
+    public PingStats(String target) {
+        this.target = target;
+    }
+
+    /** One probe: rttUs, or a negative value when it timed out. */
+    public synchronized void add(long rttUs) {
+        sent++;
+        if (rttUs < 0) return;
+        received++;
+        if (rttUs < minUs) minUs = rttUs;
+        if (rttUs > maxUs) maxUs = rttUs;
+        sumUs += rttUs;
+        if (lastUs >= 0) jitterUs += (Math.abs(rttUs - lastUs) - jitterUs) / 16.0;
+        lastUs = rttUs;
+    }
+
+    public String getTarget() { return target; }
+
+    public synchronized int getSent() { return sent; }
+
+    public synchronized int getReceived() { return received; }
+
+    /** -1 until a reply arrives. */
+    public synchronized long getMinUs() { return received > 0 ? minUs : -1; }
+
+    public synchronized long getMaxUs() { return received > 0 ? maxUs : -1; }
+
+    public synchronized long getAvgUs() { return received > 0 ? sumUs / received : -1; }
+
+    public synchronized long getJitterUs() { return Math.round(jitterUs); }
+
+    /** Lost probes in percent, 0 before anything was sent. */
+    public synchronized double getLossPercent() {
+        return sent > 0 ? (sent - received) * 100.0 / sent : 0;
+    }
+}
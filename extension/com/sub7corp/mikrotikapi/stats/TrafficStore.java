@@ -0,0 +1,325 @@
+package com.sub7corp.mikrotikapi.stats;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.util.RouterOsValues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-session traffic time series for hotspot active sessions.
+ *
+ * Fed by repeated /ip/hotspot/active/print snapshots (or single listen
+ * updates). Each session (keyed by its active .id, or user + mac-address
+ * when there is no .id) keeps fixed-size primitive long ring buffers, so
+ * ingest, rate and top-N queries do not allocate once a session exists.
+ * A user with shared-users > 1 has one series per session; rates are
+ * added up per user only when queried.
+ *
+ * Samples closer together than retention / (capacity - 2) overwrite the
+ * newest slot instead of taking a new one, so the ring always reaches back
+ * the full retention window whatever the sampling interval. Queries that
+ * ask for more than the ring holds can check span() for what was covered.
+ */
+public class TrafficStore {
+
+    public static final int BYTES_IN = 0;
+    public static final int BYTES_OUT = 1;
+    public static final int PACKETS_IN = 2;
+    public static final int PACKETS_OUT = 3;
+    /** BYTES_IN + BYTES_OUT */
+    public static final int BYTES_TOTAL = 4;
+
+    public static final long WINDOW_1M = 60_000L;
+    public static final long WINDOW_5M = 5 * 60_000L;
+    public static final long WINDOW_15M = 15 * 60_000L;
+
+    private static final int COUNTERS = 4;
+    private static final String[] KEYS = {"bytes-in", "bytes-out", "packets-in", "packets-out"};
+
+    private final int capacity;
+    private final long retentionMs;
+    private final long minGapMs;
+    private final HashMap<String, Series> series = new HashMap<>();
+    private final HashMap<String, ArrayList<Series>> byUser = new HashMap<>();
+
+    public TrafficStore() {
+        this(256, WINDOW_15M);
+    }
+
+    /**
+     * @param capacity samples kept per session (ring size)
+     * @param retentionMs window the ring must cover; sessions not seen for
+     *                    this long are dropped
+     */
+    public TrafficStore(int capacity, long retentionMs) {
+        this.capacity = Math.max(3, capacity);
+        this.retentionMs = Math.max(WINDOW_1M, retentionMs);
+        // all gaps but the newest are >= minGap: (capacity - 2) gaps span retention
+        this.minGapMs = (this.retentionMs + this.capacity - 3) / (this.capacity - 2);
+    }
+
+    /* =========================
+       ===== INGEST ============
+       ========================= */
+
+    /** Ingest a full active print taken at nowMs; also evicts stale sessions. */
+    public synchronized void ingest(MkClient.MkResult snapshot, long nowMs) {
+        if (snapshot == null || snapshot.isError()) return;
+        List<HashMap<String, String>> records = snapshot.getRecords();
+        for (HashMap<String, String> rec : records) {
+            ingest(rec, nowMs);
+        }
+        evict(nowMs);
+    }
+
+    /** Ingest a single active record (e.g. from a listen update). */
+    public synchronized void ingest(Map<String, String> rec, long nowMs) {
+        if (rec == null) return;
+        String user = rec.get("user");
+        if (user == null || user.isEmpty()) return;
+        String key = rec.get(".id");
+        if (key == null || key.isEmpty()) {
+            String mac = rec.get("mac-address");
+            key = mac == null || mac.isEmpty() ? user : user + " " + mac;
+        }
+
+        Series s = series.get(key);
+        if (s != null && !s.user.equals(user)) {
+            // .id handed to another login: not the same session
+            series.remove(key);
+            unlink(s);
+            s = null;
+        }
+        if (s == null) {
+            s = new Series(user, capacity);
+            series.put(key, s);
+            ArrayList<Series> list = byUser.get(user);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                byUser.put(user, list);
+            }
+            list.add(s);
+        }
+        s.add(nowMs, minGapMs,
+                RouterOsValues.parseLong(rec.get(KEYS[BYTES_IN]), 0),
+                RouterOsValues.parseLong(rec.get(KEYS[BYTES_OUT]), 0),
+                RouterOsValues.parseLong(rec.get(KEYS[PACKETS_IN]), 0),
+                RouterOsValues.parseLong(rec.get(KEYS[PACKETS_OUT]), 0),
+                RouterOsValues.parseDurationSeconds(rec.get("uptime"), 0));
+    }
+
+    private void evict(long nowMs) {
+        Iterator<Series> it = series.values().iterator();
+        while (it.hasNext()) {
+            Series s = it.next();
+            if (nowMs - s.lastSeen() > retentionMs) {
+                it.remove();
+                unlink(s);
+            }
+        }
+    }
+
+    private void unlink(Series s) {
+        ArrayList<Series> list = byUser.get(s.user);
+        if (list == null) return;
+        list.remove(s);
+        if (list.isEmpty()) byUser.remove(s.user);
+    }
+
+    public synchronized void clear() {
+        series.clear();
+        byUser.clear();
+    }
+
+    /** Sessions tracked (a user with several logins counts once per session). */
+    public synchronized int sessionCount() {
+        return series.size();
+    }
+
+    /* =========================
+       ===== QUERIES ===========
+       ========================= */
+
+    /**
+     * Average rate per second of one counter over the last windowMs, added
+     * up over all of the user's sessions. Counter resets count from zero
+     * instead of going negative. A session with fewer than two samples in
+     * the window adds 0.
+     */
+    public synchronized double rate(String user, int counter, long windowMs, long nowMs) {
+        ArrayList<Series> list = byUser.get(user);
+        return list == null ? 0 : userRate(list, counter, windowMs, nowMs);
+    }
+
+    /**
+     * Time actually covered by the samples rate() uses for this user and
+     * window (longest over the user's sessions), in ms. Less than windowMs
+     * while sampling has not run that long, or when windowMs exceeds the
+     * retention window.
+     */
+    public synchronized long span(String user, long windowMs, long nowMs) {
+        ArrayList<Series> list = byUser.get(user);
+        long best = 0;
+        if (list == null) return 0;
+        for (int i = 0; i < list.size(); i++) {
+            best = Math.max(best, list.get(i).span(windowMs, nowMs));
+        }
+        return best;
+    }
+
+    /** Last seen uptime (seconds), longest over the user's sessions, or -1 if unknown. */
+    public synchronized long uptimeSeconds(String user) {
+        ArrayList<Series> list = byUser.get(user);
+        long best = -1;
+        if (list == null) return -1;
+        for (int i = 0; i < list.size(); i++) {
+            Series s = list.get(i);
+            if (s.size > 0) best = Math.max(best, s.uptime[s.last()]);
+        }
+        return best;
+    }
+
+    private static double userRate(ArrayList<Series> list, int counter, long windowMs, long nowMs) {
+        double sum = 0;
+        for (int i = 0; i < list.size(); i++) {
+            sum += list.get(i).rate(counter, windowMs, nowMs);
+        }
+        return sum;
+    }
+
+    /**
+     * Fills outUsers/outRates with the top talkers for a counter, highest
+     * first, each user's sessions added up. Caller owns the arrays (reuse
+     * them between calls).
+     *
+     * @return number of entries written (at most outUsers.length)
+     */
+    public synchronized int topN(int counter, long windowMs, long nowMs,
+                                 String[] outUsers, double[] outRates) {
+        int limit = Math.min(outUsers.length, outRates.length);
+        int count = 0;
+        if (limit == 0) return 0;
+
+        for (Map.Entry<String, ArrayList<Series>> e : byUser.entrySet()) {
+            double r = userRate(e.getValue(), counter, windowMs, nowMs);
+            if (r <= 0) continue;
+            if (count == limit && r <= outRates[count - 1]) continue;
+
+            // insertion into the sorted prefix
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && outRates[pos - 1] < r) {
+                outRates[pos] = outRates[pos - 1];
+                outUsers[pos] = outUsers[pos - 1];
+                pos--;
+            }
+            outRates[pos] = r;
+            outUsers[pos] = e.getKey();
+        }
+        return count;
+    }
+
+    /* =========================
+       ===== RING BUFFER =======
+       ========================= */
+
+    private static final class Series {
+        final String user;
+        final long[] ts;
+        final long[][] counters;
+        final long[] uptime;
+        int head = 0; // next write slot
+        int size = 0;
+
+        Series(String user, int capacity) {
+            this.user = user;
+            ts = new long[capacity];
+            counters = new long[COUNTERS][capacity];
+            uptime = new long[capacity];
+        }
+
+        void add(long now, long minGap, long bIn, long bOut, long pIn, long pOut, long up) {
+            int slot = head;
+            if (size >= 2) {
+                int last = last();
+                int prev = (last - 1 + ts.length) % ts.length;
+                // newest slot not yet minGap past the one before: move it forward
+                // instead, unless a counter went backwards (that delta would be lost)
+                if (ts[last] - ts[prev] < minGap
+                        && bIn >= counters[BYTES_IN][last] && bOut >= counters[BYTES_OUT][last]
+                        && pIn >= counters[PACKETS_IN][last] && pOut >= counters[PACKETS_OUT][last]) {
+                    slot = last;
+                }
+            }
+            ts[slot] = now;
+            counters[BYTES_IN][slot] = bIn;
+            counters[BYTES_OUT][slot] = bOut;
+            counters[PACKETS_IN][slot] = pIn;
+            counters[PACKETS_OUT][slot] = pOut;
+            uptime[slot] = up;
+            if (slot == head) {
+                head = (head + 1) % ts.length;
+                if (size < ts.length) size++;
+            }
+        }
+
+        int last() {
+            return (head - 1 + ts.length) % ts.length;
+        }
+
+        long lastSeen() {
+            return size == 0 ? Long.MIN_VALUE : ts[last()];
+        }
+
+        long value(int counter, int slot) {
+            if (counter == BYTES_TOTAL) {
+                return counters[BYTES_IN][slot] + counters[BYTES_OUT][slot];
+            }
+            return counters[counter][slot];
+        }
+
+        double rate(int counter, long windowMs, long nowMs) {
+            if (size < 2 || counter < 0 || counter > BYTES_TOTAL) return 0;
+
+            long from = nowMs - windowMs;
+            int cap = ts.length;
+            int slot = last();
+            long newestTs = ts[slot];
+            long oldestTs = newestTs;
+            long sum = 0;
+
+            // walk backwards summing deltas inside the window
+            for (int i = 1; i < size; i++) {
+                int prev = (slot - 1 + cap) % cap;
+                if (ts[prev] < from) break;
+                long cur = value(counter, slot);
+                long d = cur - value(counter, prev);
+                // counter went backwards: session restarted, count from zero
+                sum += d >= 0 ? d : cur;
+                oldestTs = ts[prev];
+                slot = prev;
+            }
+
+            long dt = newestTs - oldestTs;
+            return dt <= 0 ? 0 : sum * 1000.0 / dt;
+        }
+
+        /** newest - oldest sample inside the window; what rate() divides by. */
+        long span(long windowMs, long nowMs) {
+            if (size < 2) return 0;
+            long from = nowMs - windowMs;
+            int cap = ts.length;
+            int slot = last();
+            long newestTs = ts[slot];
+            for (int i = 1; i < size; i++) {
+                int prev = (slot - 1 + cap) % cap;
+                if (ts[prev] < from) break;
+                slot = prev;
+            }
+            return newestTs - ts[slot];
+        }
+    }
+}
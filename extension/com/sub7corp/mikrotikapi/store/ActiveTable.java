@@ -0,0 +1,377 @@
+package com.sub7corp.mikrotikapi.store;
+
+import com.sub7corp.mikrotikapi.model.ActiveSessionView;
+import com.sub7corp.mikrotikapi.util.RouterOsValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory, indexed copy of /ip/hotspot/active.
+ *
+ * load() builds, once per refresh, hash indexes on ".id", "user",
+ * "mac-address" and "address" and sorted indexes on the usage fields, so
+ * lookups, range and top-N queries don't scan the table. Each load swaps
+ * in a new immutable snapshot: readers never lock.
+ *
+ * Query text is clauses joined by "&" (or " and "):
+ *   user=alice & bytes-total>2G
+ *   address=10.5.50.7
+ *   uptime>=1h & top 10 by bytes-total
+ * Operators: = != > >= < <=. Byte fields take sizes ("2G",
+ * "512M"), time fields take durations ("1h30m").
+ *
+ * A row without a numeric field (no session-time-left on an unlimited
+ * session) is left out of that field's sorted index and never matches a
+ * clause on it, so "session-time-left<5m" doesn't pick unlimited ones.
+ */
+public class ActiveTable {
+
+    public static final String BYTES_IN = "bytes-in";
+    public static final String BYTES_OUT = "bytes-out";
+    public static final String BYTES_TOTAL = "bytes-total";
+    public static final String UPTIME = "uptime";
+    public static final String IDLE = "idle-time";
+    public static final String TIME_LEFT = "session-time-left";
+
+    private static final String[] HASHED = {".id", "user", "mac-address", "address"};
+    private static final String[] SORTED = {BYTES_IN, BYTES_OUT, BYTES_TOTAL, UPTIME, IDLE, TIME_LEFT};
+
+    private volatile Snapshot snap = new Snapshot(Collections.<Map<String, String>>emptyList(), 0);
+
+    /** Replaces the table with a fresh print. */
+    public void load(List<? extends Map<String, String>> records) {
+        snap = new Snapshot(records, System.currentTimeMillis());
+    }
+
+    public int size() {
+        return snap.rows.length;
+    }
+
+    /** When load() last ran (epoch ms), 0 if never. */
+    public long getLoadedAt() {
+        return snap.loadedAt;
+    }
+
+    /* =========================
+       ===== LOOKUPS ===========
+       ========================= */
+
+    public ActiveSessionView byId(String id) {
+        List<ActiveSessionView> r = lookup(".id", id);
+        return r.isEmpty() ? null : r.get(0);
+    }
+
+    /** Exact match on an indexed key: ".id", "user", "mac-address" or "address". */
+    public List<ActiveSessionView> lookup(String key, String value) {
+        Snapshot s = snap;
+        Map<String, int[]> index = s.hashed.get(key);
+        if (index == null) throw new IllegalArgumentException("Not an indexed key: " + key);
+        return s.views(index.get(value));
+    }
+
+    /** Sessions with min <= field <= max, ascending. */
+    public List<ActiveSessionView> range(String field, long min, long max) {
+        return range(snap, field, min, max);
+    }
+
+    /** The n sessions with the largest field, descending. */
+    public List<ActiveSessionView> top(String field, int n) {
+        return top(snap, field, n);
+    }
+
+    /* =========================
+       ===== QUERY =============
+       ========================= */
+
+    /**
+     * True if query text has at least one field clause; "" and a bare
+     * "top N by field" have none.
+     * @throws IllegalArgumentException if the text doesn't parse
+     */
+    public static boolean hasClauses(String text) {
+        return !new Query(text).clauses.isEmpty();
+    }
+
+    /** Runs query text (see class doc) against the current snapshot. */
+    public List<ActiveSessionView> query(String text) {
+        Snapshot s = snap;
+        Query q = new Query(text);
+        List<Clause> clauses = q.clauses;
+        String topField = q.topField;
+        int topN = q.topN;
+        if (topField != null) s.sorted(topField);
+
+        // 1. pick the cheapest index: equality on a hashed key, then a range
+        List<ActiveSessionView> candidates = null;
+        for (Clause c : clauses) {
+            if (c.op.equals("=") && s.hashed.containsKey(c.key)) {
+                candidates = s.views(s.hashed.get(c.key).get(c.value));
+                break;
+            }
+        }
+        if (candidates == null) {
+            for (Clause c : clauses) {
+                if (c.numeric && !c.op.equals("!=")) {
+                    candidates = rangeOf(s, c.key, clauses);
+                    break;
+                }
+            }
+        }
+        if (candidates == null && topField != null && clauses.isEmpty()) {
+            return top(s, topField, topN);
+        }
+        if (candidates == null) candidates = Arrays.asList(s.rows);
+
+        // 2. the other clauses filter the candidates
+        List<ActiveSessionView> out = new ArrayList<>();
+        for (ActiveSessionView v : candidates) {
+            boolean ok = true;
+            for (Clause c : clauses) {
+                if (!c.matches(v)) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok && (topField == null || value(v, topField) >= 0)) out.add(v);
+        }
+
+        if (topField != null) {
+            final String f = topField;
+            Collections.sort(out, (a, b) -> Long.compare(value(b, f), value(a, f)));
+            if (out.size() > topN) out = new ArrayList<>(out.subList(0, Math.max(0, topN)));
+        }
+        return out;
+    }
+
+    private static List<ActiveSessionView> top(Snapshot s, String field, int n) {
+        Sorted idx = s.sorted(field);
+        int count = Math.min(Math.max(0, n), idx.rows.length);
+        List<ActiveSessionView> out = new ArrayList<>(count);
+        for (int i = idx.rows.length - 1; out.size() < count; i--) out.add(s.rows[idx.rows[i]]);
+        return out;
+    }
+
+    /** All bounds on field combined into one sorted-index range. */
+    private static List<ActiveSessionView> rangeOf(Snapshot s, String field, List<Clause> clauses) {
+        long min = Long.MIN_VALUE;
+        long max = Long.MAX_VALUE;
+        for (Clause c : clauses) {
+            if (!c.key.equals(field)) continue;
+            switch (c.op) {
+                case "=": min = Math.max(min, c.number); max = Math.min(max, c.number); break;
+                case ">": min = Math.max(min, c.number + 1); break;
+                case ">=": min = Math.max(min, c.number); break;
+                case "<": max = Math.min(max, c.number - 1); break;
+                case "<=": max = Math.min(max, c.number); break;
+                default: break;
+            }
+        }
+        return range(s, field, min, max);
+    }
+
+    private static List<ActiveSessionView> range(Snapshot s, String field, long min, long max) {
+        Sorted idx = s.sorted(field);
+        int from = lowerBound(idx.values, min);
+        int to = upperBound(idx.values, max);
+        List<ActiveSessionView> out = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) out.add(s.rows[idx.rows[i]]);
+        return out;
+    }
+
+    private static final class Query {
+        final List<Clause> clauses = new ArrayList<>();
+        String topField;
+        int topN = -1;
+
+        Query(String text) {
+            for (String part : (text != null ? text : "").split("&|(?i)\\s+and\\s+")) {
+                String p = part.trim();
+                if (p.isEmpty()) continue;
+                if (p.toLowerCase(Locale.ROOT).startsWith("top ")) {
+                    // "top N by field"
+                    String[] t = p.split("\\s+");
+                    if (t.length != 4 || !t[2].equalsIgnoreCase("by")) {
+                        throw new IllegalArgumentException("Expected 'top N by field': " + p);
+                    }
+                    topN = Integer.parseInt(t[1]);
+                    topField = t[3];
+                    continue;
+                }
+                clauses.add(Clause.parse(p));
+            }
+        }
+    }
+
+    private static final class Clause {
+        final String key;
+        final String op;
+        final String value;
+        final boolean numeric;
+        final long number;
+
+        private Clause(String key, String op, String value) {
+            this.key = key;
+            this.op = op;
+            this.value = value;
+            this.numeric = isSorted(key);
+            this.number = numeric ? parseValue(key, value) : 0;
+            if (!numeric && !op.equals("=") && !op.equals("!=")) {
+                throw new IllegalArgumentException("Not a numeric field: " + key);
+            }
+        }
+
+        static Clause parse(String p) {
+            for (String op : new String[]{">=", "<=", "!=", ">", "<", "="}) {
+                int i = p.indexOf(op);
+                if (i > 0) return new Clause(p.substring(0, i).trim(), op, p.substring(i + op.length()).trim());
+            }
+            throw new IllegalArgumentException("Bad clause: " + p);
+        }
+
+        boolean matches(ActiveSessionView v) {
+            if (!numeric) {
+                boolean eq = v.get(key).equals(value);
+                return op.equals("=") == eq;
+            }
+            long x = value(v, key);
+            if (x < 0) return false; // field missing
+            switch (op) {
+                case "=": return x == number;
+                case "!=": return x != number;
+                case ">": return x > number;
+                case ">=": return x >= number;
+                case "<": return x < number;
+                default: return x <= number;
+            }
+        }
+    }
+
+    private static boolean isSorted(String field) {
+        for (String f : SORTED) if (f.equals(field)) return true;
+        return false;
+    }
+
+    private static long parseValue(String field, String text) {
+        long v = field.startsWith("bytes")
+                ? RouterOsValues.parseSize(text, Long.MIN_VALUE)
+                : RouterOsValues.parseDurationSeconds(text, Long.MIN_VALUE);
+        if (v == Long.MIN_VALUE) throw new IllegalArgumentException("Bad value for " + field + ": " + text);
+        return v;
+    }
+
+    /** field of v; -1 when the row doesn't have it. */
+    static long value(ActiveSessionView v, String field) {
+        switch (field) {
+            case BYTES_IN: return v.getBytesIn();
+            case BYTES_OUT: return v.getBytesOut();
+            case BYTES_TOTAL: return v.getBytesIn() < 0 && v.getBytesOut() < 0 ? -1 : v.getBytesTotal();
+            case UPTIME: return v.getUptimeSeconds();
+            case IDLE: return v.getIdleTimeSeconds();
+            case TIME_LEFT: return v.getSessionTimeLeftSeconds();
+            default: throw new IllegalArgumentException("Not a sorted field: " + field);
+        }
+    }
+
+    /** First i with values[i] >= key. */
+    private static int lowerBound(long[] values, long key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** First i with values[i] > key. */
+    private static int upperBound(long[] values, long key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /* =========================
+       ===== SNAPSHOT ==========
+       ========================= */
+
+    private static final class Sorted {
+        final long[] values;
+        final int[] rows;
+
+        Sorted(long[] values, int[] rows) {
+            this.values = values;
+            this.rows = rows;
+        }
+    }
+
+    private static final class Snapshot {
+        final ActiveSessionView[] rows;
+        final long loadedAt;
+        final Map<String, Map<String, int[]>> hashed = new HashMap<>();
+        final Map<String, Sorted> sorted = new HashMap<>();
+
+        Snapshot(List<? extends Map<String, String>> records, long loadedAt) {
+            this.loadedAt = loadedAt;
+            rows = new ActiveSessionView[records.size()];
+            for (int i = 0; i < rows.length; i++) rows[i] = new ActiveSessionView(records.get(i));
+
+            for (String key : HASHED) {
+                Map<String, int[]> index = new HashMap<>(rows.length * 2);
+                for (int i = 0; i < rows.length; i++) {
+                    String v = rows[i].get(key);
+                    if (v.isEmpty()) continue;
+                    int[] prev = index.get(v);
+                    if (prev == null) {
+                        index.put(v, new int[]{i});
+                    } else {
+                        int[] next = Arrays.copyOf(prev, prev.length + 1);
+                        next[prev.length] = i;
+                        index.put(v, next);
+                    }
+                }
+                hashed.put(key, index);
+            }
+
+            for (String field : SORTED) {
+                final long[] keys = new long[rows.length];
+                Integer[] order = new Integer[rows.length];
+                int n = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    keys[i] = value(rows[i], field);
+                    if (keys[i] >= 0) order[n++] = i; // rows without the field are not indexed
+                }
+                Arrays.sort(order, 0, n, (a, b) -> Long.compare(keys[a], keys[b]));
+                long[] values = new long[n];
+                int[] at = new int[n];
+                for (int i = 0; i < n; i++) {
+                    values[i] = keys[order[i]];
+                    at[i] = order[i];
+                }
+                sorted.put(field, new Sorted(values, at));
+            }
+        }
+
+        Sorted sorted(String field) {
+            Sorted s = sorted.get(field);
+            if (s == null) throw new IllegalArgumentException("Not a sorted field: " + field);
+            return s;
+        }
+
+        List<ActiveSessionView> views(int[] at) {
+            if (at == null) return Collections.emptyList();
+            List<ActiveSessionView> out = new ArrayList<>(at.length);
+            for (int i : at) out.add(rows[i]);
+            return out;
+        }
+    }
+}
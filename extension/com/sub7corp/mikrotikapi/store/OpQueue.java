@@ -0,0 +1,441 @@
+package com.sub7corp.mikrotikapi.store;
+
+import com.sub7corp.mikrotikapi.api.HotspotApi;
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of hotspot user mutations made while offline.
+ *
+ * Write-ahead log: every enqueue and every acknowledgement is one
+ * checksummed entry, fsynced before the call returns, so pending work
+ * survives app restarts and crashes (a torn tail is cut off on open).
+ *
+ * Replay sends pending ops in pipelined batches. Each op carries an
+ * idempotency key. A caller-supplied key that is already pending is a
+ * no-op; without one, only an exact repeat of the latest pending op for
+ * the same user is dropped (disable, enable, disable keeps all three).
+ *
+ * A replay that finds its work already done on the router counts it as
+ * applied, so re-sending after a crash can't create duplicates: remove
+ * answered with "no such item", and create answered with "already have"
+ * when the existing user carries this op's marker in its comment (see
+ * marker()). A same-named user without the marker is a real conflict and
+ * is reported as failed. The marker is appended to the caller's comment,
+ * never written in its place.
+ */
+public class OpQueue {
+
+    /** Args: name, password, profile, limit-uptime, comment (as HotspotApi.USER_ADD). */
+    public static final String CREATE = "create";
+    public static final String ENABLE = "enable";
+    public static final String DISABLE = "disable";
+    public static final String REMOVE = "remove";
+
+    private static final byte E_ENQUEUE = 1;
+    private static final byte E_ACK = 2;
+
+    private static final int REPLAY_WINDOW = 32;
+
+    // Comment prefix marking users created by a replay
+    public static final String MARKER_PREFIX = "mkq:";
+    private static final MkTemplate T_ENABLE = MkClient.prepare("/ip/hotspot/user/enable", "numbers");
+    private static final MkTemplate T_DISABLE = MkClient.prepare("/ip/hotspot/user/disable", "numbers");
+    private static final MkTemplate T_REMOVE = MkClient.prepare("/ip/hotspot/user/remove", "numbers");
+
+    /** One queued mutation; args[0] is always the user name. */
+    public static final class Op {
+        private final long seq;
+        private final long createdAt;
+        private final String key;
+        private final String kind;
+        private final String[] args;
+
+        Op(long seq, long createdAt, String key, String kind, String[] args) {
+            this.seq = seq;
+            this.createdAt = createdAt;
+            this.key = key;
+            this.kind = kind;
+            this.args = args;
+        }
+
+        public long getSeq() { return seq; }
+
+        public long getCreatedAt() { return createdAt; }
+
+        public String getKey() { return key; }
+
+        public String getKind() { return kind; }
+
+        public String getName() { return args.length > 0 ? args[0] : ""; }
+
+        public String[] getArgs() { return args.clone(); }
+
+        /**
+         * Written to the comment of a replayed create, so a later replay can
+         * tell its own user from a different one with the same name.
+         */
+        public String marker() {
+            return MARKER_PREFIX + Long.toHexString(createdAt) + "." + seq;
+        }
+    }
+
+    public static final class ReplayResult {
+        private int applied;
+        private int alreadyApplied;
+        private final List<String[]> failed = new ArrayList<>();
+        private int remaining;
+
+        public int getApplied() { return applied; }
+
+        /** Ops the router had already seen (safe re-send after a crash). */
+        public int getAlreadyApplied() { return alreadyApplied; }
+
+        /** {key, kind, name, message} of ops the router rejected; they are dropped. */
+        public List<String[]> getFailed() { return failed; }
+
+        /** Still pending (replay stopped on a connection error). */
+        public int getRemaining() { return remaining; }
+    }
+
+    private final File file;
+    private final Object replayLock = new Object();
+    private final LinkedHashMap<Long, Op> pending = new LinkedHashMap<>();
+    // pending ops per key (derived keys may repeat)
+    private final HashMap<String, Integer> pendingKeys = new HashMap<>();
+    private long nextSeq = 1;
+    private int acked;
+
+    private FileOutputStream stream;
+    private DataOutputStream out;
+
+    public OpQueue(File file) {
+        this.file = file;
+    }
+
+    /* =========================
+       ===== OPEN / CLOSE ======
+       ========================= */
+
+    public synchronized OpQueue open() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        recover();
+        stream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(stream, 4096));
+        return this;
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) out.close();
+        out = null;
+        stream = null;
+    }
+
+    /* =========================
+       ===== QUEUE =============
+       ========================= */
+
+    /**
+     * Queues an op durably.
+     * @param key idempotency key; null derives one from kind + args
+     * @return false if the op was a duplicate: its caller-supplied key is
+     *         already pending, or (derived key) it repeats the latest
+     *         pending op for the same user
+     */
+    public synchronized boolean enqueue(String key, String kind, String... args) throws IOException {
+        template(kind); // validates kind
+        if (args.length == 0 || args[0] == null || args[0].isEmpty()) {
+            throw new IllegalArgumentException("Op without user name");
+        }
+        if (args.length > (CREATE.equals(kind) ? 5 : 1)) {
+            throw new IllegalArgumentException("Too many args for " + kind + ": " + args.length);
+        }
+        if (key == null || key.isEmpty()) {
+            key = deriveKey(kind, args);
+            // only an adjacent repeat is redundant; dropping an older one would reorder
+            Op last = latestFor(args[0]);
+            if (last != null && last.key.equals(key)) return false;
+        } else if (pendingKeys.containsKey(key)) {
+            return false;
+        }
+
+        Op op = new Op(nextSeq++, System.currentTimeMillis(), key, kind, args.clone());
+        append(E_ENQUEUE, encode(op));
+        sync();
+        track(op);
+        return true;
+    }
+
+    /** Most recent pending op on user name, or null. */
+    private Op latestFor(String name) {
+        Op last = null;
+        for (Op op : pending.values()) {
+            if (op.getName().equals(name)) last = op;
+        }
+        return last;
+    }
+
+    private void track(Op op) {
+        pending.put(op.seq, op);
+        pendingKeys.merge(op.key, 1, Integer::sum);
+    }
+
+    private void untrack(Op op) {
+        pendingKeys.computeIfPresent(op.key, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    public synchronized List<Op> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /** Drops every pending op. */
+    public synchronized void clear() throws IOException {
+        pending.clear();
+        pendingKeys.clear();
+        rewrite();
+    }
+
+    /* =========================
+       ===== REPLAY ============
+       ========================= */
+
+    /**
+     * Sends pending ops in FIFO order, pipelined. A batch is cut whenever a
+     * user name repeats, so ops on the same user keep their order.
+     */
+    public ReplayResult replay(MkClient client) throws IOException {
+        // one replay at a time, or two could send the same ops
+        synchronized (replayLock) {
+            return replayPending(client);
+        }
+    }
+
+    private ReplayResult replayPending(MkClient client) throws IOException {
+        ReplayResult result = new ReplayResult();
+        List<Op> ops = pending();
+        int i = 0;
+
+        try {
+            while (i < ops.size()) {
+                List<Op> batch = new ArrayList<>();
+                List<MkTemplate> templates = new ArrayList<>();
+                List<String[]> rows = new ArrayList<>();
+                Set<String> names = new HashSet<>();
+                while (i < ops.size() && names.add(ops.get(i).getName())) {
+                    Op op = ops.get(i++);
+                    batch.add(op);
+                    templates.add(template(op.kind));
+                    rows.add(row(op));
+                }
+
+                MkClient.MkResult[] res = client.executeBatch(templates, rows, REPLAY_WINDOW);
+                long[] done = new long[batch.size()];
+                for (int k = 0; k < batch.size(); k++) {
+                    Op op = batch.get(k);
+                    done[k] = op.seq;
+                    if (res[k].isSuccess()) {
+                        result.applied++;
+                    } else if (alreadyApplied(client, op, res[k].getMessage())) {
+                        result.alreadyApplied++;
+                    } else {
+                        // the router said no; retrying won't change that
+                        result.failed.add(new String[]{op.key, op.kind, op.getName(), res[k].getMessage()});
+                    }
+                }
+                ack(done);
+            }
+        } finally {
+            result.remaining = size();
+        }
+        compactIfIdle();
+        return result;
+    }
+
+    /** Command values for op; a create gets its marker appended to the comment. */
+    private static String[] row(Op op) {
+        if (!CREATE.equals(op.kind)) return op.args;
+        String[] row = Arrays.copyOf(op.args, 5);
+        String comment = row[4] != null ? row[4].trim() : "";
+        row[4] = comment.isEmpty() ? op.marker() : comment + " " + op.marker();
+        return row;
+    }
+
+    private static boolean alreadyApplied(MkClient client, Op op, String message) throws IOException {
+        String m = message != null ? message : "";
+        if (REMOVE.equals(op.kind)) return m.contains("no such item");
+        if (!CREATE.equals(op.kind) || !m.contains("already have")) return false;
+
+        // same name is not enough: only a user this op created carries its marker
+        MkClient.MkResult r = client.execute("/ip/hotspot/user/print",
+                "?name=" + op.getName(), "=.proplist=comment");
+        if (r.isError() || r.getRecords().isEmpty()) return false;
+        String comment = r.getRecords().get(0).get("comment");
+        // whole word only: "mkq:1a.1" must not match "mkq:1a.12"
+        return comment != null && (" " + comment + " ").contains(" " + op.marker() + " ");
+    }
+
+    private static MkTemplate template(String kind) {
+        switch (kind) {
+            case CREATE: return HotspotApi.USER_ADD;
+            case ENABLE: return T_ENABLE;
+            case DISABLE: return T_DISABLE;
+            case REMOVE: return T_REMOVE;
+            default: throw new IllegalArgumentException("Unknown op: " + kind);
+        }
+    }
+
+    private static String deriveKey(String kind, String[] args) {
+        StringBuilder sb = new StringBuilder(kind);
+        for (String a : args) sb.append('\u001f').append(a != null ? a : "");
+        return sb.toString();
+    }
+
+    /* =========================
+       ===== LOG ===============
+       ========================= */
+
+    private synchronized void ack(long[] seqs) throws IOException {
+        for (long seq : seqs) {
+            Op op = pending.remove(seq);
+            if (op == null) continue;
+            untrack(op);
+            ByteArrayOutputStream b = new ByteArrayOutputStream(8);
+            new DataOutputStream(b).writeLong(seq);
+            append(E_ACK, b.toByteArray());
+            acked++;
+        }
+        sync();
+    }
+
+    /** Once everything is acknowledged the log is truncated. */
+    private synchronized void compactIfIdle() throws IOException {
+        if (pending.isEmpty() && acked > 0) rewrite();
+    }
+
+    // entry: [type][int len][payload][int crc32(type + payload)]
+    private void append(byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt(crc(type, payload, payload.length));
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        stream.getFD().sync();
+    }
+
+    /** Rewrites the log with pending ops only (temp file + rename). */
+    private void rewrite() throws IOException {
+        if (out != null) out.close();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        stream = new FileOutputStream(tmp, false);
+        out = new DataOutputStream(new BufferedOutputStream(stream, 4096));
+        for (Op op : pending.values()) append(E_ENQUEUE, encode(op));
+        sync();
+        out.close();
+
+        // rename over the old log: there is never a moment without one
+        if (!tmp.renameTo(file)) throw new IOException("Cannot rename " + tmp + " to " + file);
+        stream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(stream, 4096));
+        acked = 0;
+    }
+
+    private void recover() throws IOException {
+        pending.clear();
+        pendingKeys.clear();
+        acked = 0;
+        if (!file.exists()) return;
+
+        long good = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            byte[] buf = new byte[512];
+            while (good + 9 <= length) {
+                raf.seek(good);
+                byte type = raf.readByte();
+                int len = raf.readInt();
+                if (len < 0 || good + 9 + len > length) break;
+                if (buf.length < len) buf = new byte[len];
+                raf.readFully(buf, 0, len);
+                if (raf.readInt() != crc(type, buf, len)) break;
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf, 0, len));
+                if (type == E_ENQUEUE) {
+                    Op op = decode(in);
+                    track(op);
+                    nextSeq = Math.max(nextSeq, op.seq + 1);
+                } else if (type == E_ACK) {
+                    Op op = pending.remove(in.readLong());
+                    if (op != null) untrack(op);
+                    acked++;
+                } else {
+                    break;
+                }
+                good += 9 + len;
+            }
+            if (good < length) raf.setLength(good);
+        }
+    }
+
+    private static byte[] encode(Op op) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(128);
+        DataOutputStream d = new DataOutputStream(b);
+        d.writeLong(op.seq);
+        d.writeLong(op.createdAt);
+        d.writeUTF(op.key);
+        d.writeUTF(op.kind);
+        d.writeInt(op.args.length);
+        for (String a : op.args) {
+            d.writeBoolean(a != null);
+            if (a != null) d.writeUTF(a);
+        }
+        return b.toByteArray();
+    }
+
+    private static Op decode(DataInputStream d) throws IOException {
+        long seq = d.readLong();
+        long createdAt = d.readLong();
+        String key = d.readUTF();
+        String kind = d.readUTF();
+        String[] args = new String[d.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = d.readBoolean() ? d.readUTF() : null;
+        }
+        return new Op(seq, createdAt, key, kind, args);
+    }
+
+    private static int crc(byte type, byte[] payload, int len) {
+        CRC32 c = new CRC32();
+        c.update(type);
+        c.update(payload, 0, len);
+        return (int) c.getValue();
+    }
+}
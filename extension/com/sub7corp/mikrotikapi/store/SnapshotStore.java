@@ -0,0 +1,572 @@
+package com.sub7corp.mikrotikapi.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * On-device snapshot of one router table (e.g. hotspot users).
+ *
+ * Three files per table in dir:
+ *   table.dat  compacted rows, memory-mapped read-only
+ *   table.idx  sorted (hash, offset) pairs for ".id" and the name key, memory-mapped
+ *   table.log  append-only PUT/DEL entries written since the last compaction,
+ *              each [op][int len][payload][int crc32(op + payload)]
+ *
+ * Opening maps dat/idx and replays the log into a small overlay, so the
+ * last-known table is readable right away without parsing every row.
+ * Lookups by id or name binary-search the mapped index. compact() folds
+ * the log into new dat/idx files (written to temp files, then renamed).
+ *
+ * Columns named with omit() (e.g. "password") are never written to any
+ * of the files.
+ *
+ * Both headers carry the same generation number. A crash between the two
+ * renames leaves files of different generations; they are ignored (the
+ * store opens empty and the next sync rebuilds it), as is a row that
+ * fails to decode. The log is cut at the first entry that is torn, fails
+ * its CRC or doesn't decode; later entries are dropped with it.
+ */
+public class SnapshotStore {
+
+    private static final int DAT_MAGIC = 0x4D4B5344; // "MKSD"
+    private static final int IDX_MAGIC = 0x4D4B5349; // "MKSI"
+    private static final int VERSION = 2;
+
+    // magic, version, generation (long), rows
+    private static final int DAT_HEADER = 20;
+    // magic, version, generation (long), ids, names
+    private static final int IDX_HEADER = 24;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DEL = 2;
+
+    // overlay value for a deleted id
+    private static final HashMap<String, String> TOMBSTONE = new HashMap<>();
+
+    private final File datFile;
+    private final File idxFile;
+    private final File logFile;
+    private final String nameKey;
+    private final Set<String> omitted = new HashSet<>();
+
+    private MappedByteBuffer dat;
+    private MappedByteBuffer idx;
+    private int datCount;
+    private int idCount;
+    private int nameCount;
+    private long generation;
+
+    // id -> row (or TOMBSTONE) changed since the last compaction
+    private final HashMap<String, HashMap<String, String>> overlay = new HashMap<>();
+    private DataOutputStream log;
+    private FileOutputStream logStream;
+    private int logEntries;
+
+    /**
+     * @param dir directory for the table files (created if missing)
+     * @param table file name prefix, e.g. "hotspot-users"
+     * @param nameKey secondary lookup key, e.g. "name" (users) or "user" (active)
+     */
+    public SnapshotStore(File dir, String table, String nameKey) {
+        this.datFile = new File(dir, table + ".dat");
+        this.idxFile = new File(dir, table + ".idx");
+        this.logFile = new File(dir, table + ".log");
+        this.nameKey = nameKey;
+    }
+
+    /** Columns never stored on the device (secrets); call before open(). */
+    public synchronized SnapshotStore omit(String... keys) {
+        omitted.addAll(Arrays.asList(keys));
+        return this;
+    }
+
+    /** Copy of row without the omitted columns, as it would be stored. */
+    public HashMap<String, String> stored(Map<String, String> row) {
+        HashMap<String, String> copy = new HashMap<>(row);
+        copy.keySet().removeAll(omitted);
+        return copy;
+    }
+
+    /* =========================
+       ===== OPEN / CLOSE ======
+       ========================= */
+
+    public synchronized SnapshotStore open() throws IOException {
+        File dir = datFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        mapFiles();
+        replayLog();
+        logStream = new FileOutputStream(logFile, true);
+        log = new DataOutputStream(new BufferedOutputStream(logStream, 8192));
+        return this;
+    }
+
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.flush();
+            log.close();
+        }
+        log = null;
+        logStream = null;
+        dat = null;
+        idx = null;
+    }
+
+    /* =========================
+       ===== READ ==============
+       ========================= */
+
+    public synchronized HashMap<String, String> getById(String id) {
+        HashMap<String, String> o = overlay.get(id);
+        if (o != null) return o == TOMBSTONE ? null : o;
+        int off = lookup(0, idCount, id, ".id");
+        return off < 0 ? null : readRow(off);
+    }
+
+    public synchronized HashMap<String, String> findByName(String name) {
+        for (HashMap<String, String> o : overlay.values()) {
+            if (o != TOMBSTONE && name.equals(o.get(nameKey))) return o;
+        }
+        int off = lookup(idCount, nameCount, name, nameKey);
+        if (off < 0) return null;
+        HashMap<String, String> row = readRow(off);
+        if (row == null) return null;
+        // the mapped row may have been replaced or deleted since
+        return overlay.containsKey(row.get(".id")) ? null : row;
+    }
+
+    /** Every row, compacted ones first, with logged changes applied. */
+    public synchronized List<HashMap<String, String>> rows() {
+        List<HashMap<String, String>> out = new ArrayList<>(datCount + overlay.size());
+        if (dat != null) {
+            int pos = DAT_HEADER;
+            for (int i = 0; i < datCount; i++) {
+                HashMap<String, String> row = readRow(pos);
+                if (row == null) break;
+                pos += 4 + dat.getInt(pos);
+                if (!overlay.containsKey(row.get(".id"))) out.add(row);
+            }
+        }
+        for (HashMap<String, String> o : overlay.values()) {
+            if (o != TOMBSTONE) out.add(o);
+        }
+        return out;
+    }
+
+    public synchronized Set<String> ids() {
+        Set<String> out = new HashSet<>();
+        for (HashMap<String, String> row : rows()) out.add(row.get(".id"));
+        return out;
+    }
+
+    public synchronized int size() {
+        int n = datCount;
+        for (Map.Entry<String, HashMap<String, String>> e : overlay.entrySet()) {
+            boolean inDat = lookup(0, idCount, e.getKey(), ".id") >= 0;
+            if (e.getValue() == TOMBSTONE) {
+                if (inDat) n--;
+            } else if (!inDat) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Entries appended since the last compaction. */
+    public synchronized int getLogEntries() {
+        return logEntries;
+    }
+
+    /* =========================
+       ===== WRITE =============
+       ========================= */
+
+    /** Logs an insert/replace of the row keyed by its ".id". */
+    public synchronized void put(Map<String, String> row) throws IOException {
+        String id = row.get(".id");
+        if (id == null || id.isEmpty()) throw new IllegalArgumentException("Row without .id");
+        HashMap<String, String> copy = stored(row);
+        append(OP_PUT, encodeRow(copy));
+        overlay.put(id, copy);
+        logEntries++;
+    }
+
+    public synchronized void remove(String id) throws IOException {
+        append(OP_DEL, id.getBytes(StandardCharsets.UTF_8));
+        overlay.put(id, TOMBSTONE);
+        logEntries++;
+    }
+
+    private void append(byte op, byte[] payload) throws IOException {
+        log.writeByte(op);
+        log.writeInt(payload.length);
+        log.write(payload);
+        log.writeInt(crc(op, payload, payload.length));
+    }
+
+    /** Makes logged entries durable (flush + fsync). */
+    public synchronized void commit() throws IOException {
+        log.flush();
+        logStream.getFD().sync();
+    }
+
+    /** Replaces the whole table (full download) and clears the log. */
+    public synchronized void replaceAll(List<? extends Map<String, String>> rows) throws IOException {
+        writeCompacted(rows);
+        overlay.clear();
+        resetLog();
+        mapFiles();
+    }
+
+    /** Folds the log into dat/idx. */
+    public synchronized void compact() throws IOException {
+        if (logEntries == 0 && overlay.isEmpty()) return;
+        replaceAll(rows());
+    }
+
+    /** Compacts once the log outgrows a fraction of the table. */
+    public synchronized void compactIfNeeded() throws IOException {
+        if (logEntries > Math.max(1000, datCount / 2)) compact();
+    }
+
+    /** Deletes all files for this table. */
+    /**
+     * Deletes a table's files without opening them, for a store that can't
+     * be opened any more.
+     */
+    public static void delete(File dir, String table) throws IOException {
+        for (String ext : new String[]{".dat", ".idx", ".log", ".dat.tmp", ".idx.tmp"}) {
+            File f = new File(dir, table + ext);
+            if (f.exists() && !f.delete()) throw new IOException("Cannot delete " + f);
+        }
+    }
+
+    public synchronized void clear() throws IOException {
+        overlay.clear();
+        dat = null;
+        idx = null;
+        datCount = idCount = nameCount = 0;
+        resetLog();
+        if (datFile.exists() && !datFile.delete()) throw new IOException("Cannot delete " + datFile);
+        if (idxFile.exists() && !idxFile.delete()) throw new IOException("Cannot delete " + idxFile);
+    }
+
+    /* =========================
+       ===== FILES =============
+       ========================= */
+
+    private void mapFiles() throws IOException {
+        dat = null;
+        idx = null;
+        datCount = idCount = nameCount = 0;
+        if (!datFile.exists() || !idxFile.exists()) return;
+
+        MappedByteBuffer d = map(datFile);
+        MappedByteBuffer x = map(idxFile);
+        if (d.capacity() < DAT_HEADER || d.getInt(0) != DAT_MAGIC || d.getInt(4) != VERSION
+                || x.capacity() < IDX_HEADER || x.getInt(0) != IDX_MAGIC || x.getInt(4) != VERSION) {
+            // unknown or damaged: start empty, the next sync rebuilds it
+            return;
+        }
+        generation = d.getLong(8);
+        if (x.getLong(8) != generation) {
+            // crash between the two renames: dat and idx don't belong together
+            return;
+        }
+        int ids = x.getInt(16);
+        int names = x.getInt(20);
+        if (ids < 0 || names < 0 || IDX_HEADER + (ids + (long) names) * 8 > x.capacity()) return;
+        dat = d;
+        idx = x;
+        datCount = d.getInt(16);
+        idCount = ids;
+        nameCount = names;
+    }
+
+    /** Drops mapped files that failed to decode; the next sync rebuilds them. */
+    private void discardDamaged() {
+        dat = null;
+        idx = null;
+        datCount = idCount = nameCount = 0;
+        datFile.delete();
+        idxFile.delete();
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+             FileChannel ch = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private void writeCompacted(List<? extends Map<String, String>> rows) throws IOException {
+        int n = rows.size();
+        long[] idHashes = new long[n];
+        long[] nameHashes = new long[n];
+        int names = 0;
+
+        long gen = Math.max(generation + 1, System.currentTimeMillis());
+        File datTmp = new File(datFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(datTmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536))) {
+            out.writeInt(DAT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(gen);
+            out.writeInt(n);
+            int pos = DAT_HEADER;
+            for (int i = 0; i < n; i++) {
+                Map<String, String> row = omitted.isEmpty() ? rows.get(i) : stored(rows.get(i));
+                byte[] payload = encodeRow(row);
+                out.writeInt(payload.length);
+                out.write(payload);
+
+                idHashes[i] = entry(hash(row.get(".id")), pos);
+                String name = row.get(nameKey);
+                if (name != null) nameHashes[names++] = entry(hash(name), pos);
+                pos += 4 + payload.length;
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        File idxTmp = new File(idxFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(idxTmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(gen);
+            out.writeInt(n);
+            out.writeInt(names);
+            writeSorted(out, idHashes, n);
+            writeSorted(out, nameHashes, names);
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        dat = null;
+        idx = null;
+        rename(datTmp, datFile);
+        rename(idxTmp, idxFile);
+        generation = gen;
+    }
+
+    /**
+     * Index entry: high 32 bits of the hash + row offset in one long, so a
+     * plain Arrays.sort orders entries by hash. Written as two ints.
+     */
+    private static long entry(long hash, int offset) {
+        return (hash & 0xFFFFFFFF00000000L) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static void writeSorted(DataOutputStream out, long[] entries, int n) throws IOException {
+        long[] sorted = Arrays.copyOf(entries, n);
+        Arrays.sort(sorted);
+        for (long e : sorted) {
+            out.writeInt((int) (e >>> 32));
+            out.writeInt((int) e);
+        }
+    }
+
+    /** Atomic replace: rename over the old file (POSIX/Android), never delete it first. */
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) throw new IOException("Cannot rename " + from + " to " + to);
+    }
+
+    private void resetLog() throws IOException {
+        if (log != null) log.close();
+        logStream = new FileOutputStream(logFile, false);
+        log = new DataOutputStream(new BufferedOutputStream(logStream, 8192));
+        logEntries = 0;
+    }
+
+    /**
+     * Replays the log. It is cut at the first bad entry: a torn tail
+     * (crash mid-append), a CRC mismatch or a row that doesn't decode.
+     */
+    private void replayLog() throws IOException {
+        overlay.clear();
+        logEntries = 0;
+        if (!logFile.exists()) return;
+
+        long good = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            long length = raf.length();
+            byte[] buf = new byte[256];
+            while (good + 9 <= length) {
+                raf.seek(good);
+                byte op = raf.readByte();
+                int len = raf.readInt();
+                if (len < 0 || good + 9 + len > length || (op != OP_PUT && op != OP_DEL)) break;
+                if (buf.length < len) buf = new byte[len];
+                raf.readFully(buf, 0, len);
+                if (raf.readInt() != crc(op, buf, len)) break;
+
+                if (op == OP_PUT) {
+                    HashMap<String, String> row;
+                    try {
+                        row = decodeRow(ByteBuffer.wrap(buf, 0, len));
+                    } catch (RuntimeException e) {
+                        break;
+                    }
+                    String id = row.get(".id");
+                    if (id == null) break;
+                    // entries logged before a column was omitted: drop it here too
+                    row.keySet().removeAll(omitted);
+                    overlay.put(id, row);
+                } else {
+                    overlay.put(new String(buf, 0, len, StandardCharsets.UTF_8), TOMBSTONE);
+                }
+                logEntries++;
+                good += 9 + len;
+            }
+            if (good < length) raf.setLength(good);
+        }
+    }
+
+    private static int crc(byte op, byte[] payload, int len) {
+        CRC32 c = new CRC32();
+        c.update(op);
+        c.update(payload, 0, len);
+        return (int) c.getValue();
+    }
+
+    /* =========================
+       ===== INDEX LOOKUP ======
+       ========================= */
+
+    /**
+     * Binary search in the index section starting at entry {@code start}
+     * with {@code count} entries; verifies the row since hashes collide.
+     * @return row offset in dat, or -1
+     */
+    private int lookup(int start, int count, String value, String key) {
+        if (idx == null || count == 0 || value == null) return -1;
+        try {
+            return find(start, count, value, key);
+        } catch (RuntimeException e) {
+            discardDamaged();
+            return -1;
+        }
+    }
+
+    private int find(int start, int count, String value, String key) {
+        int target = (int) (hash(value) >>> 32);
+        int base = IDX_HEADER + start * 8;
+
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int h = idx.getInt(base + mid * 8);
+            if (h < target) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        // lo = first entry with hash >= target (signed order, same as Arrays.sort)
+        for (int i = lo; i < count; i++) {
+            int at = base + i * 8;
+            if (idx.getInt(at) != target) break;
+            int off = idx.getInt(at + 4);
+            HashMap<String, String> row = readRow(off);
+            if (row == null) return -1;
+            if (value.equals(row.get(key))) return off;
+        }
+        return -1;
+    }
+
+    /** Row at offset, or null (and the mapped files dropped) if it doesn't decode. */
+    private HashMap<String, String> readRow(int offset) {
+        if (dat == null) return null;
+        try {
+            ByteBuffer b = dat.duplicate();
+            int len = b.getInt(offset);
+            b.position(offset + 4);
+            b.limit(offset + 4 + len);
+            return decodeRow(b.slice());
+        } catch (RuntimeException e) {
+            // IndexOutOfBounds / BufferUnderflow / IllegalArgument from a bad offset or length
+            discardDamaged();
+            return null;
+        }
+    }
+
+    private static long hash(String s) {
+        // FNV-1a 64 over UTF-16 units, finalized so the high bits spread
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /* =========================
+       ===== ROW CODEC =========
+       ========================= */
+
+    // [int fields] then per field: [int klen][key][int vlen][value], UTF-8
+    private static byte[] encodeRow(Map<String, String> row) {
+        int size = 4;
+        List<byte[]> parts = new ArrayList<>(row.size() * 2);
+        for (Map.Entry<String, String> e : row.entrySet()) {
+            byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] v = (e.getValue() != null ? e.getValue() : "").getBytes(StandardCharsets.UTF_8);
+            parts.add(k);
+            parts.add(v);
+            size += 8 + k.length + v.length;
+        }
+        ByteBuffer b = ByteBuffer.allocate(size);
+        b.putInt(row.size());
+        for (byte[] p : parts) {
+            b.putInt(p.length);
+            b.put(p);
+        }
+        return b.array();
+    }
+
+    private static HashMap<String, String> decodeRow(ByteBuffer b) {
+        int n = b.getInt();
+        HashMap<String, String> row = new HashMap<>(Math.max(4, n * 2));
+        for (int i = 0; i < n; i++) {
+            String k = utf8(b);
+            String v = utf8(b);
+            row.put(k, v);
+        }
+        return row;
+    }
+
+    private static String utf8(ByteBuffer b) {
+        int len = b.getInt();
+        String s;
+        if (b.hasArray()) {
+            s = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+        } else {
+            byte[] tmp = new byte[len];
+            b.get(tmp, 0, len);
+            return new String(tmp, StandardCharsets.UTF_8);
+        }
+        b.position(b.position() + len);
+        return s;
+    }
+}
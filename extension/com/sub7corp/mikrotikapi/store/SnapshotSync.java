@@ -0,0 +1,139 @@
+package com.sub7corp.mikrotikapi.store;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+import com.sub7corp.mikrotikapi.core.MkTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a SnapshotStore up to date without downloading the whole table.
+ *
+ * 1. A projected print (".id" + watch fields) lists what the router has.
+ * 2. Only ids that are new or whose watch fields differ are fetched in
+ *    full, pipelined through one "?.id=" template.
+ * 3. Ids the router no longer has are deleted from the store.
+ *
+ * An empty store gets one plain full print instead. Columns the store
+ * omits are left out of the reported rows as well.
+ */
+public class SnapshotSync {
+
+    // Full-row fetches in flight at once
+    private static final int FETCH_WINDOW = 32;
+
+    private SnapshotSync() {}
+
+    public static class Result {
+        private final List<HashMap<String, String>> added = new ArrayList<>();
+        private final List<HashMap<String, String>> changed = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private int fetched;
+        private boolean full;
+
+        public List<HashMap<String, String>> getAdded() { return added; }
+
+        /** ".id" + fields that differ from the stored row. */
+        public List<HashMap<String, String>> getChanged() { return changed; }
+
+        public List<String> getRemoved() { return removed; }
+
+        /** Rows downloaded in full. */
+        public int getFetched() { return fetched; }
+
+        /** True when the store was empty and the table was downloaded whole. */
+        public boolean isFull() { return full; }
+    }
+
+    /**
+     * @param path print command, e.g. "/ip/hotspot/user/print"
+     * @param watch fields compared in the projected print to spot changes
+     */
+    public static Result sync(MkClient client, SnapshotStore store, String path, String... watch) throws IOException {
+        Result result = new Result();
+
+        if (store.size() == 0) {
+            MkClient.MkResult all = client.execute(path);
+            if (all.isError()) throw new IOException(path + ": " + all.getMessage());
+            store.replaceAll(all.getRecords());
+            for (HashMap<String, String> row : all.getRecords()) result.added.add(store.stored(row));
+            result.fetched = all.getRecords().size();
+            result.full = true;
+            return result;
+        }
+
+        // 1. what the router has now, projected
+        StringBuilder proplist = new StringBuilder("=.proplist=.id");
+        for (String w : watch) proplist.append(',').append(w);
+        MkClient.MkResult listed = client.executeLazy(path, proplist.toString());
+        if (listed.isError()) throw new IOException(path + ": " + listed.getMessage());
+
+        Set<String> seen = new HashSet<>();
+        List<String[]> fetch = new ArrayList<>();
+        for (MkRecord rec : listed.getRows()) {
+            String id = rec.get(".id");
+            if (id == null) continue;
+            seen.add(id);
+
+            HashMap<String, String> old = store.getById(id);
+            if (old == null || differs(rec, old, watch)) fetch.add(new String[]{id});
+        }
+
+        // 2. full rows for new / changed ids only
+        if (!fetch.isEmpty()) {
+            MkTemplate byId = MkClient.prepare(path, "?.id");
+            MkClient.MkResult[] rows = client.executeBatch(byId, fetch, FETCH_WINDOW);
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i].isError() || rows[i].getRecords().isEmpty()) continue;
+                HashMap<String, String> row = store.stored(rows[i].getRecords().get(0));
+                HashMap<String, String> old = store.getById(fetch.get(i)[0]);
+                store.put(row);
+                result.fetched++;
+                if (old == null) {
+                    result.added.add(row);
+                } else {
+                    HashMap<String, String> diff = changedFields(old, row);
+                    if (diff.size() > 1) result.changed.add(diff);
+                }
+            }
+        }
+
+        // 3. gone from the router
+        for (String id : store.ids()) {
+            if (!seen.contains(id)) {
+                store.remove(id);
+                result.removed.add(id);
+            }
+        }
+
+        store.commit();
+        store.compactIfNeeded();
+        return result;
+    }
+
+    private static boolean differs(MkRecord rec, Map<String, String> old, String[] watch) {
+        for (String w : watch) {
+            String v = old.get(w);
+            if (v == null ? rec.has(w) : !rec.valueEquals(w, v)) return true;
+        }
+        return false;
+    }
+
+    private static HashMap<String, String> changedFields(Map<String, String> old, Map<String, String> now) {
+        HashMap<String, String> diff = new HashMap<>();
+        diff.put(".id", now.get(".id"));
+        for (Map.Entry<String, String> e : now.entrySet()) {
+            if (!e.getValue().equals(old.get(e.getKey()))) diff.put(e.getKey(), e.getValue());
+        }
+        for (String k : old.keySet()) {
+            if (!now.containsKey(k)) diff.put(k, "");
+        }
+        return diff;
+    }
+}
@@ -0,0 +1,412 @@
+package com.sub7corp.mikrotikapi.store;
+
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A print result that stays within a memory budget.
+ *
+ * Rows are kept as HashMaps until their estimated heap size reaches the
+ * budget; every later row goes to a temporary file instead, so a print
+ * of any size costs at most budget bytes of heap plus a few bytes per
+ * spilled row for the page index. Rows keep their print order across
+ * both parts.
+ *
+ * Spill file: one entry per row, [varint fields] then per field
+ * [varint column][varint length][UTF-8 value]. Column names are stored
+ * once, in memory. Every PAGE_ROWS-th row offset is indexed, so page()
+ * seeks close to the first wanted row and skips the rest.
+ *
+ * Reading never loads the whole table: page(), forEach() and search()
+ * stream the file, and search() returns at most MAX_ROWS rows per call
+ * (resume with Found.next). close() deletes the file; deleteStale()
+ * clears files left behind by a process that died first.
+ */
+public class SpillTable implements Closeable {
+
+    /** Rows per page index entry. */
+    public static final int PAGE_ROWS = 64;
+
+    /** Most rows one search() returns. */
+    public static final int MAX_ROWS = 1000;
+
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".tbl";
+
+    private static final int BUFFER = 64 * 1024;
+
+    // rough heap cost of a HashMap row and of one String field in it
+    private static final int ROW_OVERHEAD = 64;
+    private static final int FIELD_OVERHEAD = 96;
+
+    public interface RowVisitor {
+        /** @return false to stop */
+        boolean visit(int index, HashMap<String, String> row);
+    }
+
+    /** One page of search hits. */
+    public static final class Found {
+        public final List<HashMap<String, String>> rows = new ArrayList<>();
+        /** Table index to resume the search from, or -1 if the table was fully searched. */
+        public int next = -1;
+    }
+
+    private final File dir;
+    private final long budgetBytes;
+
+    private final List<HashMap<String, String>> memory = new ArrayList<>();
+    private long memoryBytes;
+
+    private final List<String> columns = new ArrayList<>();
+    private final HashMap<String, Integer> columnIds = new HashMap<>();
+
+    private File file;
+    private OutputStream out;
+    private long fileBytes;
+    private int spilled;
+    private long[] pages = new long[16];
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param dir where the spill file is created (created if missing)
+     * @param budgetBytes heap budget for kept rows; 0 spills every row
+     */
+    public SpillTable(File dir, long budgetBytes) {
+        this.dir = dir;
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    /**
+     * Fills the table from one command (usually a print), row by row as
+     * replies arrive; the full result is never held at once.
+     * @throws IOException on a trap or a broken connection
+     */
+    public SpillTable load(MkClient client, String path, String... params) throws IOException {
+        String[] command = new String[params.length + 1];
+        command[0] = path;
+        System.arraycopy(params, 0, command, 1, params.length);
+
+        final String[] error = new String[1];
+        final IOException[] failure = new IOException[1];
+        client.stream(Collections.singletonList(command), new MkClient.StreamListener() {
+            @Override
+            public boolean onRecord(int index, MkRecord record) {
+                try {
+                    add(record);
+                    return true;
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+            }
+
+            @Override
+            public void onDone(int index, String err) {
+                error[0] = err;
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        if (error[0] != null) throw new IOException(path + ": " + error[0]);
+        flush();
+        return this;
+    }
+
+    /* =========================
+       ===== WRITE =============
+       ========================= */
+
+    public synchronized void add(MkRecord record) throws IOException {
+        if (out == null) {
+            add(record.toMap());
+            return;
+        }
+        String[] keys = new String[record.size()];
+        String[] values = new String[record.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = record.keyAt(i);
+            values[i] = record.valueAt(i);
+        }
+        spill(keys, values);
+    }
+
+    public synchronized void add(Map<String, String> row) throws IOException {
+        if (out == null && fits(estimate(row))) {
+            memory.add(row instanceof HashMap ? (HashMap<String, String>) row : new HashMap<>(row));
+            return;
+        }
+        String[] keys = new String[row.size()];
+        String[] values = new String[row.size()];
+        int i = 0;
+        for (Map.Entry<String, String> e : row.entrySet()) {
+            keys[i] = e.getKey();
+            values[i++] = e.getValue();
+        }
+        spill(keys, values);
+    }
+
+    private boolean fits(long bytes) {
+        if (memoryBytes + bytes > budgetBytes) return false;
+        memoryBytes += bytes;
+        return true;
+    }
+
+    private static long estimate(Map<String, String> row) {
+        long b = ROW_OVERHEAD;
+        for (Map.Entry<String, String> e : row.entrySet()) {
+            b += FIELD_OVERHEAD + 2L * e.getKey().length();
+            if (e.getValue() != null) b += 2L * e.getValue().length();
+        }
+        return b;
+    }
+
+    private void spill(String[] keys, String[] values) throws IOException {
+        if (out == null) {
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+            file = File.createTempFile(PREFIX, SUFFIX, dir);
+            out = new BufferedOutputStream(new FileOutputStream(file), BUFFER);
+        }
+        if (spilled % PAGE_ROWS == 0) {
+            int page = spilled / PAGE_ROWS;
+            if (page == pages.length) pages = Arrays.copyOf(pages, page * 2);
+            pages[page] = fileBytes;
+        }
+
+        int pos = 0;
+        pos = putVarint(pos, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            byte[] v = (values[i] != null ? values[i] : "").getBytes(StandardCharsets.UTF_8);
+            pos = putVarint(pos, columnId(keys[i]));
+            pos = putVarint(pos, v.length);
+            ensure(pos + v.length);
+            System.arraycopy(v, 0, scratch, pos, v.length);
+            pos += v.length;
+        }
+        out.write(scratch, 0, pos);
+        fileBytes += pos;
+        spilled++;
+    }
+
+    private int columnId(String key) {
+        Integer id = columnIds.get(key);
+        if (id == null) {
+            id = columns.size();
+            columns.add(key);
+            columnIds.put(key, id);
+        }
+        return id;
+    }
+
+    private int putVarint(int pos, int v) {
+        ensure(pos + 5);
+        while ((v & ~0x7f) != 0) {
+            scratch[pos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        scratch[pos++] = (byte) v;
+        return pos;
+    }
+
+    private void ensure(int size) {
+        if (size > scratch.length) scratch = Arrays.copyOf(scratch, Math.max(size, scratch.length * 2));
+    }
+
+    private void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    /* =========================
+       ===== READ ==============
+       ========================= */
+
+    public synchronized int size() {
+        return memory.size() + spilled;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spilled > 0;
+    }
+
+    /** Estimated heap held by in-memory rows. */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getFileBytes() {
+        return fileBytes;
+    }
+
+    /** Rows [offset, offset + limit), in print order. */
+    public synchronized List<HashMap<String, String>> page(int offset, int limit) throws IOException {
+        final List<HashMap<String, String>> rows = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        final int end = (int) Math.min((long) offset + limit, size());
+        if (limit <= 0 || offset < 0 || offset >= end) return rows;
+        for (int i = offset; i < Math.min(end, memory.size()); i++) rows.add(memory.get(i));
+        if (end > memory.size()) {
+            int from = Math.max(offset, memory.size());
+            scan(from, (index, row) -> {
+                rows.add(row);
+                return index + 1 < end;
+            });
+        }
+        return rows;
+    }
+
+    /** Every row in order, one at a time; spilled rows are decoded as they are read. */
+    public synchronized void forEach(RowVisitor visitor) throws IOException {
+        forEach(0, visitor);
+    }
+
+    /** Rows from table index from on, in order. */
+    public synchronized void forEach(int from, RowVisitor visitor) throws IOException {
+        for (int i = Math.max(0, from); i < memory.size(); i++) {
+            if (!visitor.visit(i, memory.get(i))) return;
+        }
+        if (spilled > 0) scan(Math.max(from, memory.size()), visitor);
+    }
+
+    /**
+     * Rows where key contains text, case-insensitive; an empty key
+     * searches every column.
+     * @param from table index to start at (Found.next of the last call)
+     * @param limit most rows returned; 0 or more than MAX_ROWS = MAX_ROWS
+     */
+    public synchronized Found search(final String key, String text, int from, int limit) throws IOException {
+        final String needle = (text != null ? text : "").toLowerCase(Locale.ROOT);
+        final boolean anyColumn = key == null || key.isEmpty();
+        final int max = limit <= 0 ? MAX_ROWS : Math.min(limit, MAX_ROWS);
+        final Found found = new Found();
+        forEach(from, (index, row) -> {
+            boolean hit = false;
+            if (anyColumn) {
+                for (String v : row.values()) {
+                    if (v != null && v.toLowerCase(Locale.ROOT).contains(needle)) {
+                        hit = true;
+                        break;
+                    }
+                }
+            } else {
+                String v = row.get(key);
+                hit = v != null && v.toLowerCase(Locale.ROOT).contains(needle);
+            }
+            if (!hit) return true;
+            found.rows.add(row);
+            if (found.rows.size() < max) return true;
+            found.next = index + 1 < size() ? index + 1 : -1;
+            return false;
+        });
+        return found;
+    }
+
+    /** Reads spilled rows starting at table index from. */
+    private void scan(int from, RowVisitor visitor) throws IOException {
+        flush();
+        int first = from - memory.size();
+        if (first >= spilled) return;
+        int page = first / PAGE_ROWS;
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            fis.getChannel().position(pages[page]);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fis, BUFFER));
+            for (int i = page * PAGE_ROWS; i < spilled; i++) {
+                if (i < first) {
+                    skipRow(in);
+                    continue;
+                }
+                if (!visitor.visit(memory.size() + i, readRow(in))) return;
+            }
+        } finally {
+            fis.close();
+        }
+    }
+
+    private HashMap<String, String> readRow(DataInputStream in) throws IOException {
+        int n = readVarint(in);
+        HashMap<String, String> row = new HashMap<>(Math.max(4, n * 2));
+        for (int f = 0; f < n; f++) {
+            String key = columns.get(readVarint(in));
+            int len = readVarint(in);
+            ensure(len);
+            in.readFully(scratch, 0, len);
+            row.put(key, new String(scratch, 0, len, StandardCharsets.UTF_8));
+        }
+        return row;
+    }
+
+    private static void skipRow(DataInputStream in) throws IOException {
+        int n = readVarint(in);
+        for (int f = 0; f < n; f++) {
+            readVarint(in);
+            int len = readVarint(in);
+            if (in.skipBytes(len) != len) throw new EOFException("Spill file truncated");
+        }
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Spill file truncated");
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Bad varint in spill file");
+    }
+
+    /* =========================
+       ===== CLOSE =============
+       ========================= */
+
+    /**
+     * Deletes spill files in dir last written before olderThan (epoch ms),
+     * i.e. left by a table that was never closed.
+     * @return files deleted
+     */
+    public static int deleteStale(File dir, long olderThan) {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        int n = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)
+                    && f.lastModified() < olderThan && f.delete()) n++;
+        }
+        return n;
+    }
+
+    /** Drops every row and deletes the spill file. */
+    @Override
+    public synchronized void close() throws IOException {
+        memory.clear();
+        memoryBytes = 0;
+        spilled = 0;
+        fileBytes = 0;
+        try {
+            if (out != null) out.close();
+        } finally {
+            out = null;
+            if (file != null && !file.delete()) file.deleteOnExit();
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.sub7corp.mikrotikapi.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consistent hash ring over named nodes (router ids).
+ *
+ * Each node is placed at VNODES points on a 64-bit ring; a key belongs to
+ * the first point at or after its hash. Adding or removing one of N nodes
+ * moves only about 1/N of the keys. Immutable: with() / without() return
+ * a new ring, so lookups never lock.
+ */
+public final class HashRing {
+
+    /** Points per node; more evens out the share, costs memory per node. */
+    public static final int VNODES = 160;
+
+    private final String[] nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(String... nodes) {
+        String[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].equals(sorted[i - 1])) throw new IllegalArgumentException("Duplicate node: " + sorted[i]);
+        }
+        this.nodes = sorted;
+
+        long[] p = new long[sorted.length * VNODES];
+        String[] o = new String[p.length];
+        int k = 0;
+        for (String node : sorted) {
+            for (int v = 0; v < VNODES; v++) {
+                p[k] = hash(node + "#" + v);
+                o[k] = node;
+                k++;
+            }
+        }
+        // sort points, carrying owners along
+        Integer[] order = new Integer[p.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(p[a], p[b]));
+        this.points = new long[p.length];
+        this.owners = new String[p.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = p[order[i]];
+            owners[i] = o[order[i]];
+        }
+    }
+
+    public HashRing with(String node) {
+        List<String> list = new ArrayList<>(Arrays.asList(nodes));
+        list.add(node);
+        return new HashRing(list.toArray(new String[0]));
+    }
+
+    public HashRing without(String node) {
+        List<String> list = new ArrayList<>(Arrays.asList(nodes));
+        list.remove(node);
+        return new HashRing(list.toArray(new String[0]));
+    }
+
+    public List<String> getNodes() {
+        return Collections.unmodifiableList(Arrays.asList(nodes));
+    }
+
+    public boolean isEmpty() {
+        return nodes.length == 0;
+    }
+
+    /** Node owning key, or null if the ring is empty. */
+    public String nodeFor(String key) {
+        if (points.length == 0) return null;
+        long h = hash(key);
+        int i = Arrays.binarySearch(points, h);
+        if (i < 0) i = -i - 1;
+        if (i == points.length) i = 0;
+        return owners[i];
+    }
+
+    /** 64-bit FNV-1a over UTF-8, with a murmur finalizer to spread close keys. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
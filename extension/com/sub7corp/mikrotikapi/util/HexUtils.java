@@ -1,5 +1,7 @@
 package com.sub7corp.mikrotikapi.util;
 
+import com.sub7corp.mikrotikapi.core.MkCodec;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -8,71 +10,19 @@ public class HexUtils {
     // =========================
     // ENCODE LENGTH (SEND)
     // =========================
+    /** Length prefix as a new array; see MkCodec for the allocation-free form. */
     public static byte[] encodeLength(int length) {
-
-        if (length < 0x80) {
-            return new byte[]{(byte) length};
-        } else if (length < 0x4000) {
-            length |= 0x8000;
-            return new byte[]{
-                    (byte) (length >> 8),
-                    (byte) length
-            };
-        } else if (length < 0x200000) {
-            length |= 0xC00000;
-            return new byte[]{
-                    (byte) (length >> 16),
-                    (byte) (length >> 8),
-                    (byte) length
-            };
-        } else if (length < 0x10000000) {
-            length |= 0xE0000000;
-            return new byte[]{
-                    (byte) (length >> 24),
-                    (byte) (length >> 16),
-                    (byte) (length >> 8),
-                    (byte) length
-            };
-        } else {
-            return new byte[]{
-                    (byte) 0xF0,
-                    (byte) (length >> 24),
-                    (byte) (length >> 16),
-                    (byte) (length >> 8),
-                    (byte) length
-            };
-        }
+        byte[] out = new byte[MkCodec.lengthSize(length)];
+        MkCodec.encodeLength(length, out, 0);
+        return out;
     }
 
     // =========================
     // DECODE LENGTH (READ)
     // =========================
+    /** Delegates to MkCodec: EOF-safe, rejects control bytes. */
     public static int decodeLength(InputStream in) throws IOException {
-
-        int c = in.read();
-        if (c < 0x80) return c;
-
-        if ((c & 0xC0) == 0x80) {
-            return ((c & 0x3F) << 8) + in.read();
-        }
-
-        if ((c & 0xE0) == 0xC0) {
-            return ((c & 0x1F) << 16)
-                    + (in.read() << 8)
-                    + in.read();
-        }
-
-        if ((c & 0xF0) == 0xE0) {
-            return ((c & 0x0F) << 24)
-                    + (in.read() << 16)
-                    + (in.read() << 8)
-                    + in.read();
-        }
-
-        return (in.read() << 24)
-                + (in.read() << 16)
-                + (in.read() << 8)
-                + in.read();
+        return MkCodec.readLength(in);
     }
 
     // =========================
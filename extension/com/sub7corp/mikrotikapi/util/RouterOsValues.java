@@ -0,0 +1,251 @@
+package com.sub7corp.mikrotikapi.util;
+
+/**
+ * Parsers for RouterOS value formats returned as strings by the API.
+ * All methods are allocation-free and return a fallback on bad input.
+ */
+public class RouterOsValues {
+
+    // =========================
+    // COUNTERS ("123456789")
+    // =========================
+    public static long parseLong(String s, long fallback) {
+        if (s == null) return fallback;
+        int n = s.length();
+        if (n == 0) return fallback;
+
+        long v = 0;
+        int i = 0;
+        boolean neg = false;
+        if (s.charAt(0) == '-') {
+            neg = true;
+            i = 1;
+            if (n == 1) return fallback;
+        }
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return fallback;
+            v = v * 10 + (c - '0');
+        }
+        return neg ? -v : v;
+    }
+
+    // =========================
+    // DURATIONS ("1w2d3h4m5s", "00:30:00", "1d02:00:00")
+    // =========================
+    /**
+     * Parses a RouterOS duration into whole seconds.
+     * Supports unit form (w/d/h/m/s, "ms" fractions are dropped) and
+     * clock form "hh:mm:ss" with an optional unit prefix like "1d".
+     */
+    public static long parseDurationSeconds(String s, long fallback) {
+        if (s == null) return fallback;
+        int n = s.length();
+        if (n == 0) return fallback;
+
+        long total = 0;
+        long num = 0;
+        boolean haveNum = false;
+        int colonParts = 0;
+        long clock = 0;
+
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                num = num * 10 + (c - '0');
+                haveNum = true;
+                continue;
+            }
+            switch (c) {
+                case 'w': total += num * 604800L; break;
+                case 'd': total += num * 86400L; break;
+                case 'h': total += num * 3600L; break;
+                case 'm':
+                    if (i + 1 < n && s.charAt(i + 1) == 's') {
+                        i++; // milliseconds: ignore
+                    } else {
+                        total += num * 60L;
+                    }
+                    break;
+                case 's': total += num; break;
+                case ':':
+                    clock = clock * 60 + num;
+                    colonParts++;
+                    break;
+                case '.':
+                    // fractional seconds in clock form: drop the rest
+                    if (colonParts > 0) {
+                        return total + clock * 60 + num;
+                    }
+                    return fallback;
+                default:
+                    return fallback;
+            }
+            num = 0;
+            haveNum = false;
+        }
+
+        if (colonParts > 0) {
+            return total + clock * 60 + num;
+        }
+        if (haveNum) {
+            // bare number: RouterOS treats it as seconds
+            total += num;
+        }
+        return total;
+    }
+
+    /**
+     * Short durations in microseconds, as ping prints them: "12ms",
+     * "1ms234us", "850us", "1s20ms", "12.5ms".
+     */
+    public static long parseDurationMicros(String s, long fallback) {
+        if (s == null) return fallback;
+        int n = s.length();
+        if (n == 0) return fallback;
+
+        long total = 0;
+        long num = 0;
+        long frac = 0;
+        long fracDiv = 1;
+        boolean inFrac = false;
+        boolean haveNum = false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (inFrac) {
+                    if (fracDiv < 1_000_000L) {
+                        frac = frac * 10 + (c - '0');
+                        fracDiv *= 10;
+                    }
+                } else {
+                    num = num * 10 + (c - '0');
+                }
+                haveNum = true;
+                continue;
+            }
+            if (c == '.' && !inFrac) {
+                inFrac = true;
+                continue;
+            }
+            if (!haveNum) return fallback;
+            long unit;
+            if (c == 's') {
+                unit = 1_000_000L;
+            } else if (c == 'm' && i + 1 < n && s.charAt(i + 1) == 's') {
+                unit = 1_000L;
+                i++;
+            } else if (c == 'u' && i + 1 < n && s.charAt(i + 1) == 's') {
+                unit = 1L;
+                i++;
+            } else if (c == 'm') {
+                unit = 60_000_000L;
+            } else {
+                return fallback;
+            }
+            total += num * unit + frac * unit / fracDiv;
+            num = 0;
+            frac = 0;
+            fracDiv = 1;
+            inFrac = false;
+            haveNum = false;
+        }
+        // bare number: milliseconds, like ping's own output
+        if (haveNum) total += num * 1_000L + frac * 1_000L / fracDiv;
+        return total;
+    }
+
+    // =========================
+    // BOOLEANS ("true", "yes")
+    // =========================
+    public static boolean parseBool(String s, boolean fallback) {
+        if (s == null) return fallback;
+        if ("true".equals(s) || "yes".equals(s)) return true;
+        if ("false".equals(s) || "no".equals(s)) return false;
+        return fallback;
+    }
+
+    // =========================
+    // SIZES ("123456789", "512KiB", "1.5G")
+    // =========================
+    /** Bytes; k/M/G/T suffixes (with optional "iB"/"B") are binary multiples. */
+    public static long parseSize(String s, long fallback) {
+        if (s == null) return fallback;
+        return parseScaled(s, 0, s.length(), 1024L, fallback);
+    }
+
+    // =========================
+    // RATES ("700k", "1.5M", "10000000")
+    // =========================
+    /** Bits per second; k/M/G suffixes are decimal multiples. */
+    public static long parseRate(String s, long fallback) {
+        if (s == null) return fallback;
+        return parseScaled(s, 0, s.length(), 1000L, fallback);
+    }
+
+    /**
+     * One side of a rate-limit ("rx/tx [burst...]") in bits per second.
+     * rx is what the router receives from the client (upload), tx what it
+     * sends (download). A single value applies to both sides.
+     */
+    public static long parseRateLimit(String s, boolean tx, long fallback) {
+        if (s == null) return fallback;
+        int n = s.length();
+        int end = 0;
+        while (end < n && s.charAt(end) != ' ') end++;
+        int slash = s.indexOf('/');
+        if (slash < 0 || slash > end) return parseScaled(s, 0, end, 1000L, fallback);
+        return tx
+                ? parseScaled(s, slash + 1, end, 1000L, fallback)
+                : parseScaled(s, 0, slash, 1000L, fallback);
+    }
+
+    private static long parseScaled(String s, int from, int to, long unit, long fallback) {
+        if (from >= to) return fallback;
+
+        long whole = 0;
+        long frac = 0;
+        long fracDiv = 1;
+        boolean digits = false;
+        boolean inFrac = false;
+        int i = from;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (inFrac) {
+                    if (fracDiv < 1_000_000L) {
+                        frac = frac * 10 + (c - '0');
+                        fracDiv *= 10;
+                    }
+                } else {
+                    whole = whole * 10 + (c - '0');
+                }
+            } else if (c == '.' && !inFrac) {
+                inFrac = true;
+            } else {
+                break;
+            }
+        }
+        if (!digits) return fallback;
+
+        long mult = 1;
+        if (i < to) {
+            switch (s.charAt(i)) {
+                case 'k': case 'K': mult = unit; break;
+                case 'M': mult = unit * unit; break;
+                case 'G': mult = unit * unit * unit; break;
+                case 'T': mult = unit * unit * unit * unit; break;
+                case 'b': case 'B': mult = 1; i--; break;
+                default: return fallback;
+            }
+            i++;
+            // optional unit tail: "iB", "B", "bps"
+            while (i < to) {
+                char c = s.charAt(i++);
+                if (c != 'i' && c != 'B' && c != 'b' && c != 'p' && c != 's') return fallback;
+            }
+        }
+        return whole * mult + frac * mult / fracDiv;
+    }
+}
@@ -0,0 +1,207 @@
+package com.sub7corp.mikrotikapi.util;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes print records straight to text, without building a JSON tree.
+ *
+ * Formats:
+ *   json  - [{"name":"a","profile":"x"},...]  (one object per row)
+ *   table - "columns":["name","profile"],"rows":[["a","x"],...]
+ *   tsv   - header line, then one tab separated line per row
+ *
+ * table and tsv name each column once instead of once per row, which
+ * on a wide print is most of the payload. A value missing from a row is
+ * written as "". In TSV, tab, newline, carriage return and backslash
+ * inside values are escaped as \t \n \r \\.
+ */
+public final class TableWriter {
+
+    public static final String JSON = "json";
+    public static final String TABLE = "table";
+    public static final String TSV = "tsv";
+
+    private TableWriter() {}
+
+    /** JSON, TABLE or TSV for a user supplied name (case-insensitive); null if unknown. */
+    public static String format(String name) {
+        if (name == null) return null;
+        String n = name.trim().toLowerCase(Locale.ROOT);
+        return n.equals(JSON) || n.equals(TABLE) || n.equals(TSV) ? n : null;
+    }
+
+    /**
+     * Column names in first-seen order, ".id" first when present. One pass
+     * over the keys only; values are not touched.
+     */
+    public static String[] columns(List<? extends Map<String, String>> records) {
+        Set<String> cols = new LinkedHashSet<>();
+        boolean id = false;
+        for (Map<String, String> rec : records) {
+            if (rec == null) continue;
+            for (String k : rec.keySet()) {
+                if (k.equals(".id")) id = true; else cols.add(k);
+            }
+        }
+        String[] out = new String[cols.size() + (id ? 1 : 0)];
+        int i = 0;
+        if (id) out[i++] = ".id";
+        for (String c : cols) out[i++] = c;
+        return out;
+    }
+
+    /**
+     * Appends the records as JSON members for format (no surrounding
+     * braces): "records":[...] for json, "columns":[...],"rows":[...] for
+     * table, "tsv":"..." for tsv.
+     */
+    public static void writeMembers(Appendable out, List<? extends Map<String, String>> records, String format) throws IOException {
+        if (TABLE.equals(format)) {
+            String[] cols = columns(records);
+            out.append("\"columns\":");
+            writeRow(out, cols);
+            out.append(",\"rows\":[");
+            boolean first = true;
+            for (Map<String, String> rec : records) {
+                if (!first) out.append(',');
+                first = false;
+                out.append('[');
+                for (int i = 0; i < cols.length; i++) {
+                    if (i > 0) out.append(',');
+                    string(out, rec != null ? rec.get(cols[i]) : null);
+                }
+                out.append(']');
+            }
+            out.append(']');
+        } else if (TSV.equals(format)) {
+            out.append("\"tsv\":\"");
+            writeTsv(new JsonStringAppender(out), records);
+            out.append('"');
+        } else {
+            out.append("\"records\":");
+            writeObjects(out, records);
+        }
+    }
+
+    /** [{"k":"v",...},...] */
+    public static void writeObjects(Appendable out, List<? extends Map<String, String>> records) throws IOException {
+        out.append('[');
+        boolean first = true;
+        for (Map<String, String> rec : records) {
+            if (!first) out.append(',');
+            first = false;
+            out.append('{');
+            if (rec != null) {
+                boolean firstKey = true;
+                for (Map.Entry<String, String> e : rec.entrySet()) {
+                    if (!firstKey) out.append(',');
+                    firstKey = false;
+                    string(out, e.getKey());
+                    out.append(':');
+                    string(out, e.getValue());
+                }
+            }
+            out.append('}');
+        }
+        out.append(']');
+    }
+
+    /** Header line plus one line per record, each ending in '\n'. */
+    public static void writeTsv(Appendable out, List<? extends Map<String, String>> records) throws IOException {
+        String[] cols = columns(records);
+        for (int i = 0; i < cols.length; i++) {
+            if (i > 0) out.append('\t');
+            tsvField(out, cols[i]);
+        }
+        out.append('\n');
+        for (Map<String, String> rec : records) {
+            for (int i = 0; i < cols.length; i++) {
+                if (i > 0) out.append('\t');
+                tsvField(out, rec != null ? rec.get(cols[i]) : null);
+            }
+            out.append('\n');
+        }
+    }
+
+    private static void writeRow(Appendable out, String[] values) throws IOException {
+        out.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.append(',');
+            string(out, values[i]);
+        }
+        out.append(']');
+    }
+
+    /** JSON string literal; null is written as "". */
+    public static void string(Appendable out, String s) throws IOException {
+        out.append('"');
+        if (s != null) escapeJson(out, s);
+        out.append('"');
+    }
+
+    private static void escapeJson(Appendable out, CharSequence s) throws IOException {
+        int start = 0;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            String rep;
+            if (c == '"') rep = "\\\"";
+            else if (c == '\\') rep = "\\\\";
+            else if (c == '\n') rep = "\\n";
+            else if (c == '\r') rep = "\\r";
+            else if (c == '\t') rep = "\\t";
+            else if (c < 0x20) rep = String.format("\\u%04x", (int) c);
+            else continue;
+            // copy the clean run in one call
+            if (i > start) out.append(s, start, i);
+            out.append(rep);
+            start = i + 1;
+        }
+        if (start < n) out.append(s, start, n);
+    }
+
+    private static void tsvField(Appendable out, String s) throws IOException {
+        if (s == null) return;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\\': out.append("\\\\"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    /** Escapes everything appended to it for use inside a JSON string. */
+    private static final class JsonStringAppender implements Appendable {
+        private final Appendable out;
+
+        JsonStringAppender(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            escapeJson(out, csq != null ? csq : "null");
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            return append((csq != null ? csq : "null").subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            if (c == '"' || c == '\\' || c < 0x20) escapeJson(out, String.valueOf(c)); else out.append(c);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.sub7corp.mikrotikapi.util;
+
+import android.app.Activity;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Batches UI events into at most one main-thread post per frame.
+ *
+ * Worker threads add events to a lock-free queue; one drain is posted to
+ * the UI thread no sooner than frameMs after the previous one and runs
+ * up to maxPerFrame events, so a burst of thousands of results costs a
+ * few looper messages instead of thousands.
+ *
+ * Keyed events (postLatest) replace a pending event with the same key:
+ * only the newest state is delivered, at the queue position of the first
+ * one. Plain events (post) are delivered in order, none dropped.
+ */
+public class UiDispatcher {
+
+    private static final String TAG = "MikrotikAPI";
+
+    private final Activity activity;
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Runnable> latest = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ScheduledExecutorService timer;
+
+    private volatile int frameMs;
+    private volatile int maxPerFrame;
+    private volatile long lastDrainNanos;
+
+    public UiDispatcher(Activity activity, int frameMs, int maxPerFrame) {
+        this.activity = activity;
+        this.frameMs = Math.max(0, frameMs);
+        this.maxPerFrame = Math.max(1, maxPerFrame);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mk-ui-frame");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Minimum time between drains; 0 posts every event right away. */
+    public void setFrameMs(int value) {
+        frameMs = Math.max(0, value);
+    }
+
+    public int getFrameMs() {
+        return frameMs;
+    }
+
+    public void setMaxPerFrame(int value) {
+        maxPerFrame = Math.max(1, value);
+    }
+
+    /** Queues an event; every posted event runs. */
+    public void post(Runnable event) {
+        if (frameMs == 0) {
+            activity.runOnUiThread(event);
+            return;
+        }
+        queue.add(event);
+        schedule();
+    }
+
+    /** Queues an event that supersedes any not yet delivered event with the same key. */
+    public void postLatest(String key, Runnable event) {
+        if (frameMs == 0) {
+            activity.runOnUiThread(event);
+            return;
+        }
+        // only the first pending event for a key takes a queue slot
+        if (latest.put(key, event) == null) queue.add(key);
+        schedule();
+    }
+
+    /** Events waiting for the next frame. */
+    public int pending() {
+        return queue.size();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        queue.clear();
+        latest.clear();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        long waitNanos = lastDrainNanos + frameMs * 1_000_000L - System.nanoTime();
+        try {
+            if (waitNanos <= 0) {
+                activity.runOnUiThread(this::drain);
+            } else {
+                timer.schedule(() -> activity.runOnUiThread(this::drain), waitNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RuntimeException e) {
+            // shut down: nothing will be delivered any more
+            scheduled.set(false);
+        }
+    }
+
+    /** UI thread: one frame's worth of events. */
+    private void drain() {
+        lastDrainNanos = System.nanoTime();
+        int budget = maxPerFrame;
+        Object item;
+        while (budget-- > 0 && (item = queue.poll()) != null) {
+            Runnable r = item instanceof String ? latest.remove(item) : (Runnable) item;
+            if (r == null) continue;
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                // one failing handler must not drop the rest of the frame
+                Log.d(TAG, "UI event failed: " + e);
+            }
+        }
+        scheduled.set(false);
+        if (!queue.isEmpty()) schedule();
+    }
+}
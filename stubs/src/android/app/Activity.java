@@ -1,9 +1,15 @@
 package android.app;
 
+import java.io.File;
+
 public class Activity {
     public void runOnUiThread(Runnable action) {
         if (action != null) {
             action.run();
         }
     }
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
 }
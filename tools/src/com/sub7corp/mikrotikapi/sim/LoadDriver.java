@@ -0,0 +1,320 @@
+package com.sub7corp.mikrotikapi.sim;
+
+import com.sub7corp.mikrotikapi.api.ActiveApi;
+import com.sub7corp.mikrotikapi.api.HotspotApi;
+import com.sub7corp.mikrotikapi.api.SystemApi;
+import com.sub7corp.mikrotikapi.core.MkClient;
+import com.sub7corp.mikrotikapi.core.MkConnection;
+import com.sub7corp.mikrotikapi.model.ApiResult;
+
+import org.json.JSONObject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Headless load driver: N concurrent MkClient sessions running a weighted
+ * command mix against a router or an embedded RouterSim.
+ *
+ * Prints one JSON line with commands/sec, latency percentiles and
+ * allocation rate so runs can be diffed between releases.
+ *
+ * Example:
+ *   --embedded true --sessions 16 --duration-s 30 --mix print=70,add=20,kick=10
+ */
+public class LoadDriver {
+
+    /** Operations available in --mix. */
+    private static final String[] OPS = {"print", "add", "kick", "users", "identity"};
+
+    static class Options {
+        String host = "127.0.0.1";
+        int port = 18728;
+        String user = "admin";
+        String password = "";
+        int sessions = 8;
+        int durationS = 20;
+        int warmupS = 3;
+        String mix = "print=70,add=20,kick=10";
+        boolean embedded = false;
+        String out = null;
+        final List<String> simArgs = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String k = args[i];
+                String v = args[i + 1];
+                switch (k) {
+                    case "--host": o.host = v; break;
+                    case "--port": o.port = Integer.parseInt(v); break;
+                    case "--user": o.user = v; break;
+                    case "--password": o.password = v; break;
+                    case "--sessions": o.sessions = Integer.parseInt(v); break;
+                    case "--duration-s": o.durationS = Integer.parseInt(v); break;
+                    case "--warmup-s": o.warmupS = Integer.parseInt(v); break;
+                    case "--mix": o.mix = v; break;
+                    case "--embedded": o.embedded = Boolean.parseBoolean(v); break;
+                    case "--out": o.out = v; break;
+                    default:
+                        // anything else is handed to the embedded RouterSim
+                        o.simArgs.add(k);
+                        o.simArgs.add(v);
+                }
+            }
+            return o;
+        }
+    }
+
+    /** Per-session results; merged after the run. */
+    private static final class Worker implements Runnable {
+        final int index;
+        final Options opts;
+        final int[] cumulative; // cumulative weights over OPS
+        final CountDownLatch ready;
+        final CountDownLatch go;
+        volatile long measureFrom;
+        volatile long measureUntil;
+
+        long[] latencies = new long[4096];
+        int count;
+        final long[] perOp = new long[OPS.length];
+        long errors;
+        long failures;
+        long allocatedBytes;
+        String fatal;
+
+        Worker(int index, Options opts, int[] cumulative, CountDownLatch ready, CountDownLatch go) {
+            this.index = index;
+            this.opts = opts;
+            this.cumulative = cumulative;
+            this.ready = ready;
+            this.go = go;
+        }
+
+        @Override
+        public void run() {
+            MkConnection conn = new MkConnection();
+            try {
+                conn.connect(opts.host, opts.port, false);
+                if (!conn.login(opts.user, opts.password)) {
+                    fatal = "login failed";
+                    return;
+                }
+            } catch (IOException e) {
+                fatal = e.toString();
+                return;
+            } finally {
+                ready.countDown();
+            }
+            // the clock starts once every session is logged in
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fatal = "interrupted";
+                return;
+            }
+
+            MkClient client = new MkClient(conn);
+            ActiveApi active = new ActiveApi(client);
+            HotspotApi hotspot = new HotspotApi(client);
+            SystemApi system = new SystemApi(client);
+
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long seq = 0;
+            long allocStart = -1;
+
+            try {
+                while (System.nanoTime() < measureUntil) {
+                    int pick = rnd.nextInt(cumulative[cumulative.length - 1]);
+                    int op = 0;
+                    while (pick >= cumulative[op]) op++;
+
+                    boolean measuring = System.nanoTime() >= measureFrom;
+                    if (measuring && allocStart < 0) allocStart = allocatedBytes();
+
+                    long t0 = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = runOp(op, rnd, seq++, client, active, hotspot, system);
+                    } catch (IOException e) {
+                        failures++;
+                        if (!conn.isConnected()) {
+                            fatal = e.toString();
+                            return;
+                        }
+                        continue;
+                    }
+                    long dt = System.nanoTime() - t0;
+
+                    if (!measuring) continue;
+                    if (!ok) errors++;
+                    perOp[op]++;
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = dt;
+                }
+            } finally {
+                if (allocStart >= 0) allocatedBytes = allocatedBytes() - allocStart;
+                conn.disconnect();
+            }
+        }
+
+        private boolean runOp(int op, ThreadLocalRandom rnd, long seq, MkClient client,
+                              ActiveApi active, HotspotApi hotspot, SystemApi system) throws IOException {
+            switch (OPS[op]) {
+                case "print":
+                    return !active.listActive().isError();
+                case "add": {
+                    ApiResult r = hotspot.createUser("lg" + index + "-" + seq, "pw" + seq, "default", "load");
+                    return r.isSuccess();
+                }
+                case "kick": {
+                    String user = "v" + (100000 + rnd.nextInt(10000));
+                    MkClient.MkResult r = client.execute("/ip/hotspot/active/print", "?user=" + user, ".proplist=.id");
+                    if (r.isError() || r.getRecords().isEmpty()) return !r.isError();
+                    return !active.removeActiveById(r.getRecords().get(0).get(".id")).isError();
+                }
+                case "users":
+                    return hotspot.listUsers().isSuccess();
+                case "identity":
+                    return system.getIdentity().isSuccess();
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** Per-thread allocation counter (HotSpot/OpenJDK); -1 if unsupported. */
+    private static long allocatedBytes() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[OPS.length];
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) throw new IllegalArgumentException("Bad mix entry: " + part);
+            int idx = Arrays.asList(OPS).indexOf(kv[0].trim());
+            if (idx < 0) throw new IllegalArgumentException("Unknown op '" + kv[0] + "', use " + Arrays.toString(OPS));
+            weights[idx] = Integer.parseInt(kv[1].trim());
+        }
+        int[] cumulative = new int[OPS.length];
+        int sum = 0;
+        for (int i = 0; i < OPS.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("Mix has no weight");
+        return cumulative;
+    }
+
+    private static long percentileUs(long[] sorted, int n, double q) {
+        if (n == 0) return 0;
+        int idx = (int) Math.min(n - 1, Math.ceil(q * n) - 1);
+        return sorted[Math.max(0, idx)] / 1000;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = Options.parse(args);
+        int[] cumulative = parseMix(opts.mix);
+
+        RouterSim sim = null;
+        if (opts.embedded) {
+            RouterSim.Config c = RouterSim.Config.fromArgs(opts.simArgs.toArray(new String[0]));
+            c.port = 0;
+            c.username = opts.user;
+            sim = new RouterSim(c).start();
+            opts.host = "127.0.0.1";
+            opts.port = sim.getPort();
+        }
+
+        CountDownLatch ready = new CountDownLatch(opts.sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        Worker[] workers = new Worker[opts.sessions];
+        Thread[] threads = new Thread[opts.sessions];
+        for (int i = 0; i < opts.sessions; i++) {
+            workers[i] = new Worker(i, opts, cumulative, ready, go);
+            threads[i] = new Thread(workers[i], "load-" + i);
+            threads[i].start();
+        }
+
+        // connect and login stay out of warmup and the measured window
+        ready.await();
+        long start = System.nanoTime();
+        long measureFrom = start + opts.warmupS * 1_000_000_000L;
+        long measureUntil = measureFrom + opts.durationS * 1_000_000_000L;
+        for (Worker w : workers) {
+            w.measureFrom = measureFrom;
+            w.measureUntil = measureUntil;
+        }
+        go.countDown();
+        for (Thread t : threads) t.join();
+        if (sim != null) sim.close();
+
+        // merge
+        int total = 0;
+        for (Worker w : workers) total += w.count;
+        long[] all = new long[total];
+        int pos = 0;
+        long errors = 0, failures = 0, alloc = 0;
+        long[] perOp = new long[OPS.length];
+        List<String> fatals = new ArrayList<>();
+        for (Worker w : workers) {
+            System.arraycopy(w.latencies, 0, all, pos, w.count);
+            pos += w.count;
+            errors += w.errors;
+            failures += w.failures;
+            alloc += Math.max(0, w.allocatedBytes);
+            for (int i = 0; i < OPS.length; i++) perOp[i] += w.perOp[i];
+            if (w.fatal != null) fatals.add(w.fatal);
+        }
+        Arrays.sort(all);
+
+        double seconds = opts.durationS;
+        JSONObject o = new JSONObject();
+        o.put("sessions", opts.sessions);
+        o.put("durationS", opts.durationS);
+        o.put("mix", opts.mix);
+        o.put("embedded", opts.embedded);
+        o.put("commands", total);
+        o.put("commandsPerSec", Math.round(total / seconds * 10) / 10.0);
+        o.put("errors", errors);
+        o.put("failures", failures);
+        o.put("p50Us", percentileUs(all, total, 0.50));
+        o.put("p95Us", percentileUs(all, total, 0.95));
+        o.put("p99Us", percentileUs(all, total, 0.99));
+        o.put("p999Us", percentileUs(all, total, 0.999));
+        o.put("maxUs", total == 0 ? 0 : all[total - 1] / 1000);
+        o.put("allocBytesPerSec", Math.round(alloc / seconds));
+        o.put("allocBytesPerCommand", total == 0 ? 0 : alloc / total);
+        JSONObject ops = new JSONObject();
+        for (int i = 0; i < OPS.length; i++) if (perOp[i] > 0) ops.put(OPS[i], perOp[i]);
+        o.put("ops", ops);
+        o.put("fatal", fatals.size());
+
+        String line = o.toString();
+        System.out.println(line);
+        if (opts.out != null) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(opts.out, true), StandardCharsets.UTF_8)) {
+                w.write(line);
+                w.write('\n');
+            }
+        }
+        if (!fatals.isEmpty()) System.err.println("Session errors: " + fatals);
+    }
+}
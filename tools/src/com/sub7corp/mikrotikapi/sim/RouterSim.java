@@ -0,0 +1,801 @@
+package com.sub7corp.mikrotikapi.sim;
+
+import com.sub7corp.mikrotikapi.core.MkCodec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fake RouterOS API server for local end-to-end and load testing.
+ *
+ * Speaks the same length-prefixed sentence protocol as MkConnection:
+ * /login, ".tag" echo, !re / !done / !trap and /cancel. Commands run in
+ * order on a per-session worker while the reader keeps going, so a
+ * /cancel reaches a print that is still streaming. Serves synthetic
+ * /ip/hotspot/user and /ip/hotspot/active tables with injectable latency,
+ * bandwidth limit and faults.
+ *
+ * Embedded:   RouterSim sim = new RouterSim(config).start(); ... sim.close();
+ * Standalone: java ... RouterSim --port 18728 --users 10000 --active 2000
+ */
+public class RouterSim implements Closeable {
+
+    /* =========================
+       ===== CONFIG ============
+       ========================= */
+
+    public static class Config {
+        public int port = 18728;            // 0 = ephemeral
+        public String bind = "127.0.0.1";
+        public String username = "admin";
+        public String password = "";        // empty = accept any password
+        public int users = 1000;
+        public int active = 200;
+        public int profiles = 5;
+        public long seed = 42;
+
+        public int latencyMs = 0;           // added before each reply
+        public int jitterMs = 0;            // + uniform [0, jitter)
+        public long bandwidthBytesPerSec = 0; // 0 = unlimited
+        public double trapRate = 0;         // random "!trap" replies
+        public double dropRate = 0;         // close connection mid-reply
+        public double stallRate = 0;        // never answer (until /cancel)
+        public int pingIntervalMs = 1000;
+
+        public static Config fromArgs(String[] args) {
+            Config c = new Config();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String k = args[i];
+                String v = args[i + 1];
+                switch (k) {
+                    case "--port": c.port = Integer.parseInt(v); break;
+                    case "--bind": c.bind = v; break;
+                    case "--user": c.username = v; break;
+                    case "--password": c.password = v; break;
+                    case "--users": c.users = Integer.parseInt(v); break;
+                    case "--active": c.active = Integer.parseInt(v); break;
+                    case "--profiles": c.profiles = Integer.parseInt(v); break;
+                    case "--seed": c.seed = Long.parseLong(v); break;
+                    case "--latency-ms": c.latencyMs = Integer.parseInt(v); break;
+                    case "--jitter-ms": c.jitterMs = Integer.parseInt(v); break;
+                    case "--bandwidth-kbps": c.bandwidthBytesPerSec = Long.parseLong(v) * 1000 / 8; break;
+                    case "--trap-rate": c.trapRate = Double.parseDouble(v); break;
+                    case "--drop-rate": c.dropRate = Double.parseDouble(v); break;
+                    case "--stall-rate": c.stallRate = Double.parseDouble(v); break;
+                    case "--ping-interval-ms": c.pingIntervalMs = Integer.parseInt(v); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + k);
+                }
+            }
+            return c;
+        }
+    }
+
+    private final Config config;
+    private final Table users = new Table();
+    private final Table active = new Table();
+    private final Table profiles = new Table();
+    private final Table scripts = new Table();
+    private final Table environment = new Table();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ServerSocket server;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    public RouterSim(Config config) {
+        this.config = config;
+        seed();
+    }
+
+    /* =========================
+       ===== LIFECYCLE =========
+       ========================= */
+
+    public RouterSim start() throws IOException {
+        server = new ServerSocket(config.port, 128, InetAddress.getByName(config.bind));
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "routersim-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try { if (server != null) server.close(); } catch (IOException ignored) {}
+        for (Session s : sessions) s.close();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                Session session = new Session(s);
+                sessions.add(session);
+                connections.incrementAndGet();
+                Thread t = new Thread(session, "routersim-conn-" + connections.get());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!running) return;
+            }
+        }
+    }
+
+    /* =========================
+       ===== SYNTHETIC DATA ====
+       ========================= */
+
+    private void seed() {
+        Random rnd = new Random(config.seed);
+        String[] profileNames = new String[Math.max(1, config.profiles)];
+        for (int i = 0; i < profileNames.length; i++) {
+            profileNames[i] = i == 0 ? "default" : (i + "h-" + (i * 2) + "M");
+            Map<String, String> p = new LinkedHashMap<>();
+            p.put("name", profileNames[i]);
+            p.put("rate-limit", (i * 2) + "M/" + (i * 2) + "M");
+            p.put("session-timeout", i + "h");
+            p.put("shared-users", "1");
+            profiles.add(p);
+        }
+
+        for (int i = 0; i < config.users; i++) {
+            Map<String, String> u = new LinkedHashMap<>();
+            u.put("server", "all");
+            u.put("name", "v" + (100000 + i));
+            u.put("password", Integer.toString(rnd.nextInt(1 << 30), 36));
+            u.put("profile", profileNames[i % profileNames.length]);
+            u.put("limit-uptime", (1 + i % 30) + "d");
+            u.put("uptime", rnd.nextInt(48) + "h" + rnd.nextInt(60) + "m");
+            u.put("bytes-in", Long.toString(rnd.nextInt(Integer.MAX_VALUE)));
+            u.put("bytes-out", Long.toString(rnd.nextInt(Integer.MAX_VALUE)));
+            u.put("comment", "vc-" + (i / 100));
+            u.put("dynamic", "false");
+            u.put("disabled", i % 17 == 0 ? "true" : "false");
+            users.add(u);
+        }
+
+        for (int i = 0; i < config.active; i++) {
+            Map<String, String> a = new LinkedHashMap<>();
+            a.put("server", "hotspot1");
+            a.put("user", "v" + (100000 + i));
+            a.put("address", "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF));
+            a.put("mac-address", String.format("02:00:%02X:%02X:%02X:%02X",
+                    (i >> 24) & 0xFF, (i >> 16) & 0xFF, (i >> 8) & 0xFF, i & 0xFF));
+            a.put("login-by", "http-chap");
+            a.put("uptime", (rnd.nextInt(23) + 1) + "h" + rnd.nextInt(60) + "m" + rnd.nextInt(60) + "s");
+            a.put("idle-time", rnd.nextInt(60) + "s");
+            a.put("keepalive-timeout", "2m");
+            a.put("bytes-in", Long.toString((long) (rnd.nextDouble() * 4_000_000_000L)));
+            a.put("bytes-out", Long.toString((long) (rnd.nextDouble() * 400_000_000L)));
+            a.put("packets-in", Integer.toString(rnd.nextInt(5_000_000)));
+            a.put("packets-out", Integer.toString(rnd.nextInt(500_000)));
+            a.put("radius", "false");
+            active.add(a);
+        }
+    }
+
+    /**
+     * Minimal RouterOS-like table: ".id" -> row, insertion ordered.
+     */
+    static final class Table {
+        private final LinkedHashMap<String, Map<String, String>> rows = new LinkedHashMap<>();
+        private int nextId = 1;
+
+        synchronized String add(Map<String, String> row) {
+            String id = "*" + Integer.toHexString(nextId++).toUpperCase();
+            Map<String, String> r = new LinkedHashMap<>();
+            r.put(".id", id);
+            r.putAll(row);
+            rows.put(id, r);
+            return id;
+        }
+
+        synchronized Map<String, String> get(String id) {
+            return rows.get(id);
+        }
+
+        synchronized Map<String, String> remove(String id) {
+            return rows.remove(id);
+        }
+
+        synchronized Map<String, String> find(String key, String value) {
+            for (Map<String, String> r : rows.values()) {
+                if (value.equals(r.get(key))) return r;
+            }
+            return null;
+        }
+
+        /** Resolve ".id" or name-style "numbers" lists ("*1,*2" or "name"). */
+        synchronized List<Map<String, String>> resolve(String ids, String nameKey) {
+            List<Map<String, String>> out = new ArrayList<>();
+            for (String id : ids.split(",")) {
+                id = id.trim();
+                if (id.isEmpty()) continue;
+                Map<String, String> r = rows.get(id);
+                if (r == null && nameKey != null) r = find(nameKey, id);
+                if (r == null) return null;
+                out.add(r);
+            }
+            return out;
+        }
+
+        /** Copy of matching rows (simple "?key=value" AND queries). */
+        synchronized List<Map<String, String>> select(Map<String, String> query) {
+            List<Map<String, String>> out = new ArrayList<>();
+            outer:
+            for (Map<String, String> r : rows.values()) {
+                for (Map.Entry<String, String> q : query.entrySet()) {
+                    if (!q.getValue().equals(r.get(q.getKey()))) continue outer;
+                }
+                out.add(new LinkedHashMap<>(r));
+            }
+            return out;
+        }
+    }
+
+    /* =========================
+       ===== SESSION ===========
+       ========================= */
+
+    /** Parsed request sentence. */
+    static final class Request {
+        String command = "";
+        String tag;
+        final Map<String, String> attrs = new LinkedHashMap<>();
+        final Map<String, String> query = new LinkedHashMap<>();
+    }
+
+    private final class Session implements Runnable {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+        // commands run here in arrival order; the reader only handles /cancel itself
+        private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "RouterSim-session");
+            t.setDaemon(true);
+            return t;
+        });
+        private volatile boolean loggedIn;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            OutputStream raw = socket.getOutputStream();
+            this.out = config.bandwidthBytesPerSec > 0 ? new Throttled(raw, config.bandwidthBytesPerSec) : raw;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<String> words;
+                while ((words = readSentence()) != null) {
+                    if (words.isEmpty()) continue;
+                    final Request r = parse(words);
+                    if ("/cancel".equals(r.command) && loggedIn) {
+                        cancel(r);
+                        continue;
+                    }
+                    worker.execute(() -> {
+                        try {
+                            handle(r);
+                        } catch (IOException e) {
+                            close();
+                        }
+                    });
+                }
+            } catch (IOException ignored) {
+                // peer gone
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            sessions.remove(this);
+            worker.shutdownNow();
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+
+        private Request parse(List<String> words) {
+            Request r = new Request();
+            r.command = words.get(0);
+            for (int i = 1; i < words.size(); i++) {
+                String w = words.get(i);
+                if (w.startsWith(".tag=")) {
+                    r.tag = w.substring(5);
+                } else if (w.startsWith("=")) {
+                    int idx = w.indexOf('=', 1);
+                    if (idx > 0) r.attrs.put(w.substring(1, idx), w.substring(idx + 1));
+                    else r.attrs.put(w.substring(1), "");
+                } else if (w.startsWith("?") && !w.startsWith("?#")) {
+                    int idx = w.indexOf('=', 1);
+                    if (idx > 0) r.query.put(w.substring(1, idx), w.substring(idx + 1));
+                }
+            }
+            return r;
+        }
+
+        private void handle(Request r) throws IOException {
+            if (!loggedIn && !"/login".equals(r.command)) {
+                trap(r, "not logged in");
+                return;
+            }
+            if ("/cancel".equals(r.command)) {
+                cancel(r);
+                return;
+            }
+
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            boolean faults = !"/login".equals(r.command);
+            if (faults && config.stallRate > 0 && rnd.nextDouble() < config.stallRate) {
+                stall(r);
+                return;
+            }
+            delay();
+            if (faults && config.dropRate > 0 && rnd.nextDouble() < config.dropRate) {
+                throw new SocketException("simulated drop");
+            }
+            if (faults && config.trapRate > 0 && rnd.nextDouble() < config.trapRate) {
+                trap(r, "simulated failure");
+                return;
+            }
+
+            switch (r.command) {
+                case "/login": login(r); break;
+                case "/ip/hotspot/user/print": print(r, users); break;
+                case "/ip/hotspot/active/print": print(r, active); break;
+                case "/ip/hotspot/user/profile/print": print(r, profiles); break;
+                case "/ip/hotspot/user/add": addUser(r); break;
+                case "/ip/hotspot/user/profile/add": addNamed(r, profiles); break;
+                case "/ip/hotspot/user/remove": remove(r, users, "name"); break;
+                case "/ip/hotspot/user/profile/remove": remove(r, profiles, "name"); break;
+                case "/ip/hotspot/active/remove": remove(r, active, null); break;
+                case "/ip/hotspot/user/enable": setDisabled(r, "false"); break;
+                case "/ip/hotspot/user/disable": setDisabled(r, "true"); break;
+                case "/ip/hotspot/user/set": set(r, users, "name"); break;
+                case "/ip/hotspot/user/profile/set": set(r, profiles, "name"); break;
+                case "/system/identity/print": single(r, "name", "RouterSim"); break;
+                case "/system/resource/print": resource(r); break;
+                case "/system/clock/print": clock(r); break;
+                case "/ping": ping(r); break;
+                case "/system/script/add": addNamed(r, scripts); break;
+                case "/system/script/print": print(r, scripts); break;
+                case "/system/script/remove": remove(r, scripts, "name"); break;
+                case "/system/script/run": runScript(r); break;
+                case "/system/script/environment/print": print(r, environment); break;
+                case "/system/script/environment/remove": remove(r, environment, "name"); break;
+                default: trap(r, "no such command");
+            }
+        }
+
+        /* ----- commands ----- */
+
+        private void cancel(Request r) throws IOException {
+            String target = r.attrs.get("tag");
+            if (target != null) cancelled.add(target);
+            done(r);
+        }
+
+        private void login(Request r) throws IOException {
+            String name = r.attrs.get("name");
+            String pass = r.attrs.get("password");
+            boolean ok = config.username.equals(name)
+                    && (config.password.isEmpty() || config.password.equals(pass));
+            if (!ok) {
+                trap(r, "invalid user name or password (6)");
+                return;
+            }
+            loggedIn = true;
+            done(r);
+        }
+
+        private void print(Request r, Table table) throws IOException {
+            String proplist = r.attrs.get(".proplist");
+            String[] props = proplist != null && !proplist.isEmpty() ? proplist.split(",") : null;
+            boolean countOnly = r.attrs.containsKey("count-only");
+
+            List<Map<String, String>> rows = table.select(r.query);
+            if (countOnly) {
+                reply(r, "!done", "=ret=" + rows.size());
+                return;
+            }
+            for (Map<String, String> row : rows) {
+                if (isCancelled(r)) {
+                    trapAndDone(r, "interrupted", "2");
+                    return;
+                }
+                List<String> words = new ArrayList<>(row.size() + 2);
+                words.add("!re");
+                if (props != null) {
+                    for (String p : props) {
+                        String v = row.get(p);
+                        if (v != null) words.add("=" + p + "=" + v);
+                    }
+                } else {
+                    for (Map.Entry<String, String> e : row.entrySet()) {
+                        words.add("=" + e.getKey() + "=" + e.getValue());
+                    }
+                }
+                if (r.tag != null) words.add(".tag=" + r.tag);
+                writeSentence(words);
+            }
+            done(r);
+        }
+
+        private void addUser(Request r) throws IOException {
+            String name = r.attrs.get("name");
+            if (name == null || name.isEmpty()) {
+                trap(r, "failure: name not specified");
+                return;
+            }
+            synchronized (users) {
+                if (users.find("name", name) != null) {
+                    trap(r, "failure: already have user with this name for this server");
+                    return;
+                }
+                Map<String, String> row = new LinkedHashMap<>();
+                row.put("server", "all");
+                row.putAll(r.attrs);
+                row.putIfAbsent("profile", "default");
+                row.put("uptime", "0s");
+                row.put("bytes-in", "0");
+                row.put("bytes-out", "0");
+                row.put("dynamic", "false");
+                row.putIfAbsent("disabled", "false");
+                String id = users.add(row);
+                reply(r, "!done", "=ret=" + id);
+            }
+        }
+
+        private void addNamed(Request r, Table table) throws IOException {
+            String name = r.attrs.get("name");
+            synchronized (table) {
+                if (name == null || table.find("name", name) != null) {
+                    trap(r, "failure: already have such name");
+                    return;
+                }
+                reply(r, "!done", "=ret=" + table.add(new LinkedHashMap<>(r.attrs)));
+            }
+        }
+
+        private void remove(Request r, Table table, String nameKey) throws IOException {
+            List<Map<String, String>> rows = target(r, table, nameKey);
+            if (rows == null) return;
+            for (Map<String, String> row : rows) table.remove(row.get(".id"));
+            done(r);
+        }
+
+        /**
+         * No RouterOS script interpreter here: run only checks the script
+         * exists and creates its ":global" variables (empty), which is
+         * enough to exercise upload / run / collect / cleanup.
+         */
+        private void runScript(Request r) throws IOException {
+            List<Map<String, String>> rows = target(r, scripts, "name");
+            if (rows == null) return;
+            String source = rows.get(0).getOrDefault("source", "");
+            for (String line : source.split("\n")) {
+                line = line.trim();
+                if (!line.startsWith(":global ")) continue;
+                String name = line.substring(8).trim().split("\\s+")[0];
+                synchronized (environment) {
+                    if (environment.find("name", name) != null) continue;
+                    Map<String, String> row = new LinkedHashMap<>();
+                    row.put("name", name);
+                    row.put("value", "");
+                    environment.add(row);
+                }
+            }
+            done(r);
+        }
+
+        private void setDisabled(Request r, String disabled) throws IOException {
+            List<Map<String, String>> rows = target(r, users, "name");
+            if (rows == null) return;
+            synchronized (users) {
+                for (Map<String, String> row : rows) row.put("disabled", disabled);
+            }
+            done(r);
+        }
+
+        private void set(Request r, Table table, String nameKey) throws IOException {
+            List<Map<String, String>> rows = target(r, table, nameKey);
+            if (rows == null) return;
+            synchronized (table) {
+                for (Map<String, String> row : rows) {
+                    for (Map.Entry<String, String> e : r.attrs.entrySet()) {
+                        String k = e.getKey();
+                        if (k.equals(".id") || k.equals("numbers")) continue;
+                        row.put(k, e.getValue());
+                    }
+                }
+            }
+            done(r);
+        }
+
+        /** Rows addressed by "=.id=" / "=numbers="; traps and returns null if any is missing. */
+        private List<Map<String, String>> target(Request r, Table table, String nameKey) throws IOException {
+            String ids = r.attrs.get(".id");
+            if (ids == null) ids = r.attrs.get("numbers");
+            if (ids == null) {
+                trap(r, "no such item");
+                return null;
+            }
+            List<Map<String, String>> rows = table.resolve(ids, nameKey);
+            if (rows == null) {
+                trap(r, "no such item");
+                return null;
+            }
+            return rows;
+        }
+
+        private void single(Request r, String key, String value) throws IOException {
+            reply(r, "!re", "=" + key + "=" + value);
+            done(r);
+        }
+
+        private void resource(Request r) throws IOException {
+            reply(r, "!re",
+                    "=uptime=3d4h5m6s", "=version=7.14 (stable)", "=cpu-load=" + ThreadLocalRandom.current().nextInt(100),
+                    "=free-memory=123456789", "=total-memory=268435456", "=cpu-count=4",
+                    "=board-name=RouterSim", "=architecture-name=x86_64");
+            done(r);
+        }
+
+        private void clock(Request r) throws IOException {
+            reply(r, "!re", "=time=12:00:00", "=date=2026-01-01", "=time-zone-name=UTC");
+            done(r);
+        }
+
+        /** Streams one !re per probe on a worker thread so /cancel can interrupt it. */
+        private void ping(Request r) {
+            final int count = parseInt(r.attrs.get("count"), 4);
+            final String host = r.attrs.getOrDefault("address", "0.0.0.0");
+            Thread t = new Thread(() -> {
+                try {
+                    int received = 0;
+                    long min = Long.MAX_VALUE, max = 0, sum = 0;
+                    for (int seq = 0; seq < count; seq++) {
+                        if (seq > 0) sleep(config.pingIntervalMs);
+                        if (isCancelled(r)) {
+                            trapAndDone(r, "interrupted", "2");
+                            return;
+                        }
+                        boolean lost = ThreadLocalRandom.current().nextInt(100) < 3;
+                        long rtt = 5 + ThreadLocalRandom.current().nextInt(40);
+                        if (!lost) {
+                            received++;
+                            min = Math.min(min, rtt);
+                            max = Math.max(max, rtt);
+                            sum += rtt;
+                        }
+                        List<String> w = new ArrayList<>();
+                        w.add("!re");
+                        w.add("=seq=" + seq);
+                        w.add("=host=" + host);
+                        if (lost) {
+                            w.add("=status=timeout");
+                        } else {
+                            w.add("=size=56");
+                            w.add("=ttl=64");
+                            w.add("=time=" + rtt + "ms");
+                        }
+                        w.add("=sent=" + (seq + 1));
+                        w.add("=received=" + received);
+                        w.add("=packet-loss=" + ((seq + 1 - received) * 100 / (seq + 1)));
+                        if (received > 0) {
+                            w.add("=min-rtt=" + min + "ms");
+                            w.add("=avg-rtt=" + (sum / received) + "ms");
+                            w.add("=max-rtt=" + max + "ms");
+                        }
+                        if (r.tag != null) w.add(".tag=" + r.tag);
+                        writeSentence(w);
+                    }
+                    done(r);
+                } catch (IOException ignored) {
+                    close();
+                }
+            }, "routersim-ping");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        /** Never answer unless the tag gets cancelled. */
+        private void stall(Request r) {
+            if (r.tag == null) return;
+            Thread t = new Thread(() -> {
+                try {
+                    while (socket.isConnected() && !socket.isClosed()) {
+                        if (isCancelled(r)) {
+                            trapAndDone(r, "interrupted", "2");
+                            return;
+                        }
+                        sleep(20);
+                    }
+                } catch (IOException ignored) {
+                    close();
+                }
+            }, "routersim-stall");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private boolean isCancelled(Request r) {
+            return r.tag != null && cancelled.remove(r.tag);
+        }
+
+        /* ----- replies ----- */
+
+        private void done(Request r) throws IOException {
+            reply(r, "!done");
+        }
+
+        private void trap(Request r, String message) throws IOException {
+            trapAndDone(r, message, null);
+        }
+
+        /** RouterOS follows every !trap with a !done for the same tag. */
+        private void trapAndDone(Request r, String message, String category) throws IOException {
+            synchronized (out) {
+                if (category != null) reply(r, "!trap", "=category=" + category, "=message=" + message);
+                else reply(r, "!trap", "=message=" + message);
+                done(r);
+            }
+        }
+
+        private void reply(Request r, String type, String... attrs) throws IOException {
+            List<String> words = new ArrayList<>(attrs.length + 2);
+            words.add(type);
+            for (String a : attrs) words.add(a);
+            if (r.tag != null) words.add(".tag=" + r.tag);
+            writeSentence(words);
+        }
+
+        private void delay() {
+            int ms = config.latencyMs;
+            if (config.jitterMs > 0) ms += ThreadLocalRandom.current().nextInt(config.jitterMs);
+            if (ms > 0) sleep(ms);
+        }
+
+        /* ----- wire ----- */
+
+        private List<String> readSentence() throws IOException {
+            List<String> words = new ArrayList<>();
+            while (true) {
+                int len;
+                try {
+                    len = MkCodec.readLength(in);
+                } catch (EOFException e) {
+                    if (words.isEmpty()) return null;
+                    throw e;
+                }
+                if (len == 0) return words;
+                byte[] data = new byte[len];
+                MkCodec.readFully(in, data, 0, len);
+                words.add(new String(data, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void writeSentence(List<String> words) throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+            for (String w : words) {
+                byte[] b = w.getBytes(StandardCharsets.UTF_8);
+                MkCodec.writeLength(buf, b.length);
+                buf.write(b, 0, b.length);
+            }
+            buf.write(0);
+            synchronized (out) {
+                buf.writeTo(out);
+                out.flush();
+            }
+        }
+    }
+
+    /** Token-bucket style throttle on the reply stream. */
+    private static final class Throttled extends OutputStream {
+        private final OutputStream out;
+        private final long bytesPerSec;
+        private final long startNanos = System.nanoTime();
+        private long sent;
+
+        Throttled(OutputStream out, long bytesPerSec) {
+            this.out = out;
+            this.bytesPerSec = bytesPerSec;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pace(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int chunk = (int) Math.max(512, bytesPerSec / 50);
+            while (len > 0) {
+                int n = Math.min(len, chunk);
+                pace(n);
+                out.write(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void pace(int n) {
+            sent += n;
+            long dueNanos = sent * 1_000_000_000L / bytesPerSec;
+            long aheadMs = (dueNanos - (System.nanoTime() - startNanos)) / 1_000_000L;
+            if (aheadMs > 0) sleep(aheadMs);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int parseInt(String s, int fallback) {
+        try {
+            return s == null ? fallback : Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /* =========================
+       ===== MAIN ==============
+       ========================= */
+
+    public static void main(String[] args) throws Exception {
+        Config c = Config.fromArgs(args);
+        RouterSim sim = new RouterSim(c).start();
+        System.out.println("RouterSim listening on " + c.bind + ":" + sim.getPort()
+                + " users=" + c.users + " active=" + c.active
+                + " latencyMs=" + c.latencyMs + " trapRate=" + c.trapRate);
+        Runtime.getRuntime().addShutdownHook(new Thread(sim::close));
+        Thread.currentThread().join();
+    }
+}
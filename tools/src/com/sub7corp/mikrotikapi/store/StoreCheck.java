@@ -0,0 +1,235 @@
+package com.sub7corp.mikrotikapi.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Self-check for the on-device file formats: round trips and the crash
+ * cases they have to survive (torn log tail, dat/idx from different
+ * compactions, damaged rows) and the op queue's dedupe and reopen.
+ * Runs in a temp directory; exits 1 on the
+ * first failed check.
+ *
+ *   ant store-check
+ */
+public class StoreCheck {
+
+    private static int passed;
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("mk-store-check").toFile();
+        try {
+            snapshotRoundTrip(dir(root, "roundtrip"));
+            snapshotTornLog(dir(root, "torn"));
+            snapshotDamagedLog(dir(root, "badlog"));
+            snapshotGenerationMismatch(dir(root, "generation"));
+            snapshotDamagedRow(dir(root, "damaged"));
+            snapshotOmit(dir(root, "omit"));
+            queueOrder(dir(root, "queue"));
+            System.out.println("store-check: " + passed + " checks passed");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /* =========================
+       ===== SNAPSHOT ==========
+       ========================= */
+
+    private static void snapshotRoundTrip(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").open();
+        s.replaceAll(rows(1000, "u"));
+        s.put(row("*5000", "new", "x"));
+        s.remove("*3");
+        s.commit();
+        s.close();
+
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("roundtrip size", s.size() == 1000);
+        check("roundtrip get", "u7".equals(s.getById("*7").get("name")));
+        check("roundtrip removed", s.getById("*3") == null);
+        check("roundtrip logged put", s.findByName("new") != null);
+        s.compact();
+        check("roundtrip after compact", s.size() == 1000 && s.getLogEntries() == 0);
+        s.close();
+    }
+
+    private static void snapshotTornLog(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").open();
+        s.replaceAll(rows(10, "u"));
+        s.put(row("*100", "a", ""));
+        s.put(row("*101", "b", ""));
+        s.commit();
+        s.close();
+
+        // crash in the middle of the last append
+        File log = new File(dir, "t.log");
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("torn log keeps complete entries", s.getById("*100") != null);
+        check("torn log drops the torn entry", s.getById("*101") == null && s.getLogEntries() == 1);
+        s.close();
+    }
+
+    private static void snapshotDamagedLog(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").open();
+        s.replaceAll(rows(10, "u"));
+        s.put(row("*100", "a", ""));
+        s.put(row("*101", "b", ""));
+        s.put(row("*102", "c", ""));
+        s.commit();
+        s.close();
+
+        // flip a byte inside the second entry's payload; its length stays plausible
+        File log = new File(dir, "t.log");
+        long second;
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(1);
+            second = 9 + raf.readInt();
+            raf.seek(second + 5 + 2);
+            int b = raf.read();
+            raf.seek(second + 5 + 2);
+            raf.write(b ^ 0x5a);
+        }
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("damaged log entry opens", s.getById("*100") != null && s.getLogEntries() == 1);
+        check("damaged log entry cut", s.getById("*101") == null && s.getById("*102") == null
+                && log.length() == second);
+        s.put(row("*103", "d", ""));
+        s.commit();
+        s.close();
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("damaged log appends after cut", s.getById("*103") != null && s.getLogEntries() == 2);
+        s.close();
+    }
+
+    private static void snapshotGenerationMismatch(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").open();
+        s.replaceAll(rows(10, "a"));
+        File oldIdx = new File(dir, "old.idx");
+        Files.copy(new File(dir, "t.idx").toPath(), oldIdx.toPath());
+        s.replaceAll(rows(500, "b"));
+        s.close();
+
+        // crash between the two renames: new dat, old idx
+        Files.copy(oldIdx.toPath(), new File(dir, "t.idx").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("mixed generations open empty", s.size() == 0 && s.rows().isEmpty());
+        check("mixed generations lookup", s.getById("*3") == null && s.findByName("b3") == null);
+        s.replaceAll(rows(5, "c"));
+        check("mixed generations rebuilt", "c4".equals(s.getById("*4").get("name")));
+        s.close();
+    }
+
+    private static void snapshotDamagedRow(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").open();
+        s.replaceAll(rows(20, "u"));
+        s.close();
+
+        // first row's length points far past the end of the file
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "t.dat"), "rw")) {
+            raf.seek(20);
+            raf.writeInt(0x7fffff00);
+        }
+        s = new SnapshotStore(dir, "t", "name").open();
+        check("damaged row lookup", s.getById("*0") == null);
+        check("damaged row store reset", s.size() == 0);
+        s.replaceAll(rows(3, "v"));
+        check("damaged row rebuilt", "v2".equals(s.getById("*2").get("name")));
+        s.close();
+    }
+
+    private static void snapshotOmit(File dir) throws IOException {
+        SnapshotStore s = new SnapshotStore(dir, "t", "name").omit("password").open();
+        List<Map<String, String>> rows = rows(50, "u");
+        for (Map<String, String> r : rows) r.put("password", "secret-" + r.get("name"));
+        s.replaceAll(rows);
+        Map<String, String> one = row("*900", "p", "");
+        one.put("password", "secret-p");
+        s.put(one);
+        s.commit();
+        check("omit in memory", !s.getById("*1").containsKey("password") && !s.getById("*900").containsKey("password"));
+        s.close();
+
+        boolean leaked = false;
+        for (File f : dir.listFiles()) {
+            leaked |= new String(Files.readAllBytes(f.toPath()), StandardCharsets.ISO_8859_1).contains("secret-");
+        }
+        check("omit on disk", !leaked);
+    }
+
+    /* =========================
+       ===== OP QUEUE ==========
+       ========================= */
+
+    private static void queueOrder(File dir) throws IOException {
+        File f = new File(dir, "ops.wal");
+        OpQueue q = new OpQueue(f).open();
+        boolean a = q.enqueue(null, OpQueue.DISABLE, "v1");
+        boolean b = q.enqueue(null, OpQueue.ENABLE, "v1");
+        boolean c = q.enqueue(null, OpQueue.DISABLE, "v1");
+        boolean d = q.enqueue(null, OpQueue.DISABLE, "v1");
+        check("queue keeps disable/enable/disable", a && b && c && q.size() == 3);
+        check("queue drops adjacent repeat", !d);
+        check("queue explicit key dedupe", q.enqueue("k1", OpQueue.REMOVE, "v2") && !q.enqueue("k1", OpQueue.REMOVE, "v2"));
+        q.close();
+
+        q = new OpQueue(f).open();
+        List<OpQueue.Op> ops = q.pending();
+        check("queue reopen order", ops.size() == 4
+                && OpQueue.DISABLE.equals(ops.get(0).getKind())
+                && OpQueue.ENABLE.equals(ops.get(1).getKind())
+                && OpQueue.DISABLE.equals(ops.get(2).getKind()));
+        q.clear();
+        check("queue clear keeps the log", q.size() == 0 && f.exists() && !new File(dir, "ops.wal.tmp").exists());
+        q.close();
+    }
+
+    /* =========================
+       ===== HELPERS ===========
+       ========================= */
+
+    private static List<Map<String, String>> rows(int n, String prefix) {
+        List<Map<String, String>> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(row("*" + i, prefix + i, "c" + (i % 7)));
+        return out;
+    }
+
+    private static Map<String, String> row(String id, String name, String comment) {
+        Map<String, String> r = new HashMap<>();
+        r.put(".id", id);
+        r.put("name", name);
+        r.put("comment", comment);
+        return r;
+    }
+
+    private static void check(String what, boolean ok) {
+        if (!ok) {
+            System.err.println("store-check FAILED: " + what);
+            System.exit(1);
+        }
+        passed++;
+    }
+
+    private static File dir(File root, String name) {
+        File d = new File(root, name);
+        d.mkdirs();
+        return d;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) delete(c);
+        f.delete();
+    }
+}